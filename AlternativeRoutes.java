@@ -0,0 +1,282 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The k shortest loopless routes between two intersections under the live
+ * weights, by Yen's algorithm: each new route deviates from the previous one
+ * at some spur intersection, after following it from the start, and the
+ * cheapest such deviation not found yet is the next route.
+ * <p>
+ * The spur searches use temporary masks over the shared snapshot instead of
+ * removing roads, and are spread over the pool, one spur intersection per
+ * task. One backward search from the destination gives exact remaining costs
+ * for the whole unmasked graph. The masks can only make routes longer, so
+ * those costs are an A* heuristic and a lower bound for every spur: a spur
+ * that cannot beat the routes already waiting is dropped unsearched, and one
+ * whose cheapest continuation avoids the masked intersections is taken from
+ * the backward tree without a search.
+ */
+public final class AlternativeRoutes {
+    private static final int INF = SearchWorkspace.UNREACHED;
+    private static final int PARALLEL_THRESHOLD = 16; // spur intersections per round before fanning out
+
+    private final CsrGraph graph;
+    private final Route[] routes;
+    private final long searches;
+
+    private AlternativeRoutes(CsrGraph graph, Route[] routes, long searches) {
+        this.graph = graph;
+        this.routes = routes;
+        this.searches = searches;
+    }
+
+    /** Up to k routes from s to t (dense indices, -1 if unknown), cheapest first. */
+    static AlternativeRoutes find(CsrGraph g, int s, int t, int k, ForkJoinPool pool) {
+        if (k <= 0) throw new IllegalArgumentException("k must be positive: " + k);
+        if (s < 0 || t < 0) return new AlternativeRoutes(g, new Route[0], 0);
+        int[] h = new int[g.nodeCount], next = new int[g.nodeCount];
+        PathSearch.reverseTree(g, t, h, next);
+        if (h[s] == INF) return new AlternativeRoutes(g, new Route[0], 1);
+
+        List<Route> found = new ArrayList<>(k);
+        found.add(Route.of(new int[]{s}, new int[0], 0, s, next, g));
+        Set<Route> seen = new HashSet<>();
+        seen.add(found.get(0));
+        PriorityQueue<Route> candidates = new PriorityQueue<>(
+                Comparator.comparingInt((Route r) -> r.cost).thenComparingLong(r -> r.order));
+        int workers = Math.max(1, pool.getParallelism());
+        Spur[] spurs = new Spur[workers];
+        long order = 0;
+
+        while (found.size() < k) {
+            Route last = found.get(found.size() - 1);
+            int bound = bound(candidates, k - found.size());
+            int[] rootCosts = new int[last.nodes.length];
+            for (int i = 1; i < rootCosts.length; i++) rootCosts[i] = rootCosts[i - 1] + g.weights[last.arcs[i - 1]];
+            Route[] deviations = new Route[last.nodes.length - 1];
+
+            AtomicInteger claim = new AtomicInteger();
+            int tasks = deviations.length;
+            int fanOut = tasks < PARALLEL_THRESHOLD ? 1 : Math.min(workers, tasks);
+            IntConsumer work = w -> {
+                Spur spur = spurs[w];
+                if (spur == null) spurs[w] = spur = new Spur(g.nodeCount);
+                for (int i = claim.getAndIncrement(); i < tasks; i = claim.getAndIncrement()) {
+                    deviations[i] = spur.deviate(g, h, next, t, found, last, i, rootCosts[i], bound);
+                }
+            };
+            if (fanOut == 1) work.accept(0);
+            else pool.submit(() -> IntStream.range(0, fanOut).parallel().forEach(work)).join();
+
+            for (Route r : deviations) {
+                if (r == null || !seen.add(r)) continue;
+                r.order = order++;
+                candidates.add(r);
+            }
+            Route best = candidates.poll();
+            if (best == null) break;
+            found.add(best);
+        }
+        long searches = 1;
+        for (Spur spur : spurs) if (spur != null) searches += spur.searches;
+        return new AlternativeRoutes(g, found.toArray(new Route[0]), searches);
+    }
+
+    // Cost of the needed-th cheapest waiting route: nothing dearer can still make the list
+    private static int bound(PriorityQueue<Route> candidates, int needed) {
+        if (candidates.size() < needed) return INF;
+        int[] costs = new int[candidates.size()];
+        int i = 0;
+        for (Route r : candidates) costs[i++] = r.cost;
+        Arrays.sort(costs);
+        return costs[needed - 1];
+    }
+
+    /** A route as dense nodes and the arcs between them. */
+    private static final class Route {
+        final int[] nodes;
+        final int[] arcs;
+        final int cost;
+        long order; // insertion order among candidates, for a deterministic tie-break
+
+        Route(int[] nodes, int[] arcs, int cost) {
+            this.nodes = nodes;
+            this.arcs = arcs;
+            this.cost = cost;
+        }
+
+        // The root nodes[0..] and arcs, extended from its last node along the backward tree to the destination
+        static Route of(int[] rootNodes, int[] rootArcs, int rootCost, int from, int[] next, CsrGraph g) {
+            int length = 0;
+            for (int at = from; next[at] >= 0; at = g.targets[next[at]]) length++;
+            int[] nodes = Arrays.copyOf(rootNodes, rootNodes.length + length);
+            int[] arcs = Arrays.copyOf(rootArcs, rootArcs.length + length);
+            int cost = rootCost, i = rootArcs.length;
+            for (int at = from; next[at] >= 0; at = g.targets[next[at]]) {
+                arcs[i] = next[at];
+                nodes[++i] = g.targets[next[at]];
+                cost += g.weights[next[at]];
+            }
+            return new Route(nodes, arcs, cost);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Route && Arrays.equals(nodes, ((Route) o).nodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(nodes);
+        }
+    }
+
+    /** One worker's masks. A node is masked while blocked[node] == stamp. */
+    private static final class Spur {
+        final int[] blocked;
+        int stamp;
+        int[] cut = new int[8]; // arcs out of the spur node taken by earlier routes with the same root
+        int cutCount;
+        long searches;
+
+        Spur(int n) {
+            blocked = new int[n];
+        }
+
+        /**
+         * The cheapest route that follows {@code last} up to its i-th node and
+         * then leaves it by an arc no earlier route with that root took, or
+         * null if there is none or it would cost more than {@code bound}.
+         */
+        Route deviate(CsrGraph g, int[] h, int[] next, int t, List<Route> found, Route last, int i,
+                      int rootCost, int bound) {
+            stamp++;
+            for (int j = 0; j <= i; j++) blocked[last.nodes[j]] = stamp;
+            cutCount = 0;
+            for (Route r : found) {
+                if (r.arcs.length > i && Arrays.equals(r.arcs, 0, i, last.arcs, 0, i)) {
+                    if (cutCount == cut.length) cut = Arrays.copyOf(cut, cutCount * 2);
+                    cut[cutCount++] = r.arcs[i];
+                }
+            }
+            int u = last.nodes[i];
+            long budget = bound == INF ? Long.MAX_VALUE : (long) bound - rootCost;
+
+            // The exact costs of the unmasked graph bound the spur from below
+            int bestArc = -1;
+            long best = Long.MAX_VALUE;
+            for (int a = g.offsets[u], end = g.offsets[u + 1]; a < end; a++) {
+                int v = g.targets[a];
+                if (blocked[v] == stamp || h[v] == INF || isCut(a)) continue;
+                long c = (long) g.weights[a] + h[v];
+                if (c < best) {
+                    best = c;
+                    bestArc = a;
+                }
+            }
+            if (bestArc < 0 || best > budget) return null;
+            int[] rootNodes = Arrays.copyOf(last.nodes, i + 1), rootArcs = Arrays.copyOf(last.arcs, i);
+            if (avoidsMask(g, next, g.targets[bestArc])) {
+                // The bound is reached, so nothing cheaper exists
+                int[] nodes = Arrays.copyOf(rootNodes, i + 2), arcs = Arrays.copyOf(rootArcs, i + 1);
+                nodes[i + 1] = g.targets[bestArc];
+                arcs[i] = bestArc;
+                return Route.of(nodes, arcs, rootCost + g.weights[bestArc], g.targets[bestArc], next, g);
+            }
+
+            // A* with the exact unmasked costs as the heuristic, given up once it cannot beat the bound
+            searches++;
+            SearchWorkspace ws = SearchWorkspace.forward(g.nodeCount);
+            IndexedMinHeap heap = ws.heap;
+            ws.set(u, 0, -1);
+            heap.insertOrDecrease(u, h[u]);
+            while (!heap.isEmpty()) {
+                if (heap.peekKey() > budget) return null;
+                int x = heap.poll();
+                int dx = ws.dist(x);
+                if (x == t) return join(g, rootNodes, rootArcs, rootCost, ws, u, t);
+                for (int a = g.offsets[x], end = g.offsets[x + 1]; a < end; a++) {
+                    int v = g.targets[a];
+                    if (blocked[v] == stamp || h[v] == INF || x == u && isCut(a)) continue;
+                    int d = dx + g.weights[a];
+                    if (d < ws.dist(v)) {
+                        ws.set(v, d, a);
+                        heap.insertOrDecrease(v, (double) d + h[v]);
+                    }
+                }
+            }
+            return null;
+        }
+
+        private boolean isCut(int arc) {
+            for (int i = 0; i < cutCount; i++) if (cut[i] == arc) return true;
+            return false;
+        }
+
+        // Whether the backward tree's route from v reaches the destination without touching a masked node
+        private boolean avoidsMask(CsrGraph g, int[] next, int v) {
+            for (int at = v; ; at = g.targets[next[at]]) {
+                if (blocked[at] == stamp) return false;
+                if (next[at] < 0) return true;
+            }
+        }
+
+        // The root followed by the search's route from u to t; the workspace records arcs as predecessors
+        private static Route join(CsrGraph g, int[] rootNodes, int[] rootArcs, int rootCost, SearchWorkspace ws,
+                                  int u, int t) {
+            int length = 0;
+            for (int at = t; at != u; at = source(g, ws.pred(at))) length++;
+            int[] nodes = Arrays.copyOf(rootNodes, rootNodes.length + length);
+            int[] arcs = Arrays.copyOf(rootArcs, rootArcs.length + length);
+            for (int at = t, i = length; at != u; at = source(g, ws.pred(at))) {
+                nodes[rootNodes.length + --i] = at;
+                arcs[rootArcs.length + i] = ws.pred(at);
+            }
+            return new Route(nodes, arcs, rootCost + ws.dist(t));
+        }
+
+        // Source of an arc, by binary search over the offsets
+        private static int source(CsrGraph g, int arc) {
+            int lo = 0, hi = g.nodeCount - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (g.offsets[mid] <= arc) lo = mid;
+                else hi = mid - 1;
+            }
+            return lo;
+        }
+    }
+
+    /** Routes found, at most the k asked for; 0 if the destination cannot be reached. */
+    public int size() {
+        return routes.length;
+    }
+
+    /** The route at a rank as intersection IDs in travel order, 0 being the shortest. */
+    public List<Integer> getRoute(int rank) {
+        int[] nodes = routes[rank].nodes;
+        List<Integer> path = new ArrayList<>(nodes.length);
+        for (int u : nodes) path.add(graph.nodeIds[u]);
+        return Collections.unmodifiableList(path);
+    }
+
+    /** Live travel time of the route at a rank, as of the snapshot the routes were found on. */
+    public int getCost(int rank) {
+        return routes[rank].cost;
+    }
+
+    /** Searches run: the backward one, plus one per spur the bound and the backward tree could not settle. */
+    public long getSearchCount() {
+        return searches;
+    }
+}
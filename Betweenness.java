@@ -0,0 +1,379 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Shortest-path betweenness of every road and intersection under the live
+ * weights: how many shortest routes between ordered pairs of intersections
+ * pass through it, with ties split evenly (Brandes' algorithm). Roads are
+ * ranked by their score, both directions of a two-way road together.
+ * <p>
+ * One single-source search runs per source. Sources are claimed dynamically
+ * by one worker per thread, each accumulating into its own arrays, which are
+ * summed per index afterwards. On large graphs a uniform sample of sources
+ * can stand in for all of them; the scores are then scaled up by
+ * nodes / samples, an unbiased estimate.
+ * <p>
+ * When a single road is added, removed or reweighted, {@link #update} only
+ * re-runs the sources whose shortest routes the road was or becomes part of:
+ * their old contributions are taken out and their new ones added, and every
+ * other source's contribution carries over unchanged.
+ */
+public final class Betweenness {
+    private static final int INF = Integer.MAX_VALUE;
+    private static final int PARALLEL_THRESHOLD = 16_384;
+
+    private final CsrGraph graph;
+    private final int requested;     // sources asked for; all of them if at least the node count
+    private final long seed;
+    private final int[] sources;     // dense indices; every node when exact
+    private final double[] nodeScores;
+    private final double[] arcScores;
+    private final long searches;
+    private final int[] roadFrom, roadTo;  // by rank
+    private final double[] roadScores;     // by rank
+    private final LongIntHashMap rankByRoad; // packed (from, to) of each direction -> rank
+
+    private Betweenness(CsrGraph g, int requested, long seed, int[] sources, double[] nodeScores,
+                        double[] arcScores, long searches) {
+        this.graph = g;
+        this.requested = requested;
+        this.seed = seed;
+        this.sources = sources;
+        this.nodeScores = nodeScores;
+        this.arcScores = arcScores;
+        this.searches = searches;
+
+        // One entry per road; both directions of a two-way road map to it
+        int m = g.arcCount();
+        int[] roadArcs = new int[m], roadSources = new int[m];
+        double[] scores = new double[m];
+        int roads = 0;
+        for (int u = 0; u < g.nodeCount; u++) {
+            for (int a = g.offsets[u]; a < g.offsets[u + 1]; a++) {
+                int reverse = g.reverseArcs[a];
+                if (reverse >= 0 && g.targets[a] < u) continue;
+                roadSources[roads] = u;
+                roadArcs[roads] = a;
+                scores[roads++] = arcScores[a] + (reverse >= 0 ? arcScores[reverse] : 0);
+            }
+        }
+        Integer[] order = new Integer[roads];
+        for (int r = 0; r < roads; r++) order[r] = r;
+        Arrays.sort(order, (x, y) -> Double.compare(scores[y], scores[x]));
+        roadFrom = new int[roads];
+        roadTo = new int[roads];
+        roadScores = new double[roads];
+        rankByRoad = new LongIntHashMap(roads * 2);
+        for (int rank = 0; rank < roads; rank++) {
+            int r = order[rank], arc = roadArcs[r];
+            roadFrom[rank] = g.nodeIds[roadSources[r]];
+            roadTo[rank] = g.nodeIds[g.targets[arc]];
+            roadScores[rank] = scores[r];
+            rankByRoad.put(LongIntHashMap.pack(roadFrom[rank], roadTo[rank]), rank);
+            if (g.reverseArcs[arc] >= 0) rankByRoad.put(LongIntHashMap.pack(roadTo[rank], roadFrom[rank]), rank);
+        }
+    }
+
+    /**
+     * @param samples sources to run; at least the node count means every
+     *                intersection, which gives exact scores
+     * @param seed    picks the sample, so the same seed gives the same estimate
+     */
+    static Betweenness compute(CsrGraph g, int samples, long seed, ForkJoinPool pool) {
+        if (samples <= 0) throw new IllegalArgumentException("samples must be positive: " + samples);
+        int n = g.nodeCount;
+        int[] sources = new int[n];
+        for (int i = 0; i < n; i++) sources[i] = i;
+        int k = Math.min(samples, n);
+        if (k < n) {
+            // Partial Fisher-Yates: the first k entries become a uniform sample
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = 0; i < k; i++) {
+                int j = i + random.nextInt(n - i);
+                int t = sources[i];
+                sources[i] = sources[j];
+                sources[j] = t;
+            }
+            sources = Arrays.copyOf(sources, k);
+        }
+        double[] nodeScores = new double[n], arcScores = new double[g.arcCount()];
+        accumulate(g, sources, sources.length, k == 0 ? 0 : (double) n / k, nodeScores, arcScores, pool);
+        return new Betweenness(g, samples, seed, sources, nodeScores, arcScores, sources.length);
+    }
+
+    /**
+     * Scores for {@code next}, a later snapshot of the same network. If it
+     * differs from this one in a single road, only the sources that road
+     * affects are searched again; otherwise everything is recomputed with the
+     * same sampling.
+     */
+    Betweenness update(CsrGraph next, ForkJoinPool pool) {
+        if (next == graph) return this;
+        int[] road = changedRoad(graph, next);
+        boolean exact = sources.length == graph.nodeCount;
+        // A sample is drawn from a fixed node set, so new intersections mean a new sample
+        if (road == null || !exact && next.nodeCount != graph.nodeCount
+                || exact != (requested >= next.nodeCount)) {
+            return compute(next, requested, seed, pool);
+        }
+        int[] affected = new int[sources.length];
+        int count = 0, searched = 0;
+        if (road.length > 0) {
+            int u = road[0], v = road[1];
+            int[] toU = distancesTo(graph, u), toV = distancesTo(graph, v);
+            int oldUV = arcWeight(graph, u, v, next), oldVU = arcWeight(graph, v, u, next);
+            int newUV = arcWeight(next, u, v, next), newVU = arcWeight(next, v, u, next);
+            for (int s : sources) {
+                int du = toU == null ? INF : toU[s], dv = toV == null ? INF : toV[s];
+                if (affects(du, dv, oldUV, newUV) || affects(dv, du, oldVU, newVU)) affected[count++] = s;
+            }
+            searched = 2;
+        }
+
+        double scale = exact ? 1 : (double) graph.nodeCount / sources.length;
+        double[] oldNodes = nodeScores.clone(), oldArcs = arcScores.clone();
+        accumulate(graph, affected, count, -scale, oldNodes, oldArcs, pool);
+
+        // Carry the rest over to the new numbering; intersections keep their indices and new ones come last
+        double[] nodes = Arrays.copyOf(oldNodes, next.nodeCount);
+        double[] arcs = new double[next.arcCount()];
+        for (int x = 0; x < next.nodeCount; x++) {
+            for (int a = next.offsets[x]; a < next.offsets[x + 1]; a++) {
+                int before = graph.arcBetween(next.nodeIds[x], next.nodeIds[next.targets[a]]);
+                if (before >= 0) arcs[a] = oldArcs[before];
+            }
+        }
+        int removed = count;
+        int[] rerun = affected;
+        if (exact) {
+            // New intersections had no routes before, so they only add contributions
+            rerun = Arrays.copyOf(affected, count + next.nodeCount - graph.nodeCount);
+            for (int x = graph.nodeCount; x < next.nodeCount; x++) rerun[count++] = x;
+        }
+        accumulate(next, rerun, count, scale, nodes, arcs, pool);
+        int[] nextSources = sources;
+        if (exact && next.nodeCount != graph.nodeCount) {
+            nextSources = new int[next.nodeCount];
+            for (int i = 0; i < nextSources.length; i++) nextSources[i] = i;
+        }
+        return new Betweenness(next, requested, seed, nextSources, nodes, arcs, searches + searched + removed + count);
+    }
+
+    // Whether a source at distance dx from x and dy from y routes over the arc x -> y before or after the change
+    private static boolean affects(int dx, int dy, int oldWeight, int newWeight) {
+        if (dx == INF) return false;
+        return oldWeight >= 0 && dx + oldWeight == dy || newWeight >= 0 && (long) dx + newWeight <= dy;
+    }
+
+    // Live weight of the arc x -> y (dense indices of next) in g, or -1 if g has no such arc
+    private static int arcWeight(CsrGraph g, int x, int y, CsrGraph next) {
+        int arc = g.arcBetween(next.nodeIds[x], next.nodeIds[y]);
+        return arc < 0 ? -1 : g.weights[arc];
+    }
+
+    /**
+     * The one road, as dense indices {u, v} of {@code after}, whose arcs in
+     * either direction were added, removed or reweighted between the two
+     * snapshots; empty if none was, and null if more than one was or the
+     * intersections were renumbered.
+     */
+    private static int[] changedRoad(CsrGraph before, CsrGraph after) {
+        if (after.nodeCount < before.nodeCount
+                || !Arrays.equals(before.nodeIds, 0, before.nodeCount, after.nodeIds, 0, before.nodeCount)) {
+            return null;
+        }
+        int[] road = new int[0];
+        int matched = 0;
+        for (int x = 0; x < after.nodeCount; x++) {
+            for (int a = after.offsets[x]; a < after.offsets[x + 1]; a++) {
+                int y = after.targets[a];
+                int b = before.arcBetween(after.nodeIds[x], after.nodeIds[y]);
+                if (b >= 0) matched++;
+                if (b >= 0 && before.weights[b] == after.weights[a]) continue;
+                if (road.length == 0) road = new int[]{x, y};
+                else if (!sameRoad(road, x, y)) return null;
+            }
+        }
+        if (matched < before.arcCount()) {
+            for (int x = 0; x < before.nodeCount; x++) {
+                for (int a = before.offsets[x]; a < before.offsets[x + 1]; a++) {
+                    int y = before.targets[a];
+                    if (after.findArc(x, y) >= 0) continue;
+                    if (road.length == 0) road = new int[]{x, y};
+                    else if (!sameRoad(road, x, y)) return null;
+                }
+            }
+        }
+        return road;
+    }
+
+    private static boolean sameRoad(int[] road, int x, int y) {
+        return road[0] == x && road[1] == y || road[0] == y && road[1] == x;
+    }
+
+    // Distance from every node to x (dense index) in g, or null if x is not in g
+    private static int[] distancesTo(CsrGraph g, int x) {
+        if (x >= g.nodeCount) return null;
+        int[] dist = new int[g.nodeCount];
+        PathSearch.reverseTree(g, x, dist, null);
+        return dist;
+    }
+
+    /** Adds {@code weight} times the dependencies of sources[0..count) on g into the score arrays. */
+    private static void accumulate(CsrGraph g, int[] sources, int count, double weight, double[] nodes,
+                                   double[] arcs, ForkJoinPool pool) {
+        if (count == 0) return;
+        int workers = Math.max(1, Math.min(pool.getParallelism(), count));
+        Worker[] pending = new Worker[workers];
+        AtomicInteger next = new AtomicInteger();
+        pool.submit(() -> IntStream.range(0, workers).parallel().forEach(w -> {
+            Worker worker = new Worker(g.nodeCount, g.arcCount());
+            for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) worker.source(g, sources[i]);
+            pending[w] = worker;
+        })).join();
+
+        parallel(pool, nodes.length, x -> {
+            double total = 0;
+            for (Worker worker : pending) total += worker.nodes[x];
+            nodes[x] += weight * total;
+        });
+        parallel(pool, arcs.length, a -> {
+            double total = 0;
+            for (Worker worker : pending) total += worker.arcs[a];
+            arcs[a] += weight * total;
+        });
+    }
+
+    private static void parallel(ForkJoinPool pool, int n, IntConsumer action) {
+        if (n < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < n; i++) action.accept(i);
+        } else {
+            pool.submit(() -> IntStream.range(0, n).parallel().forEach(action)).join();
+        }
+    }
+
+    /** One worker's single-source search state and private score accumulators. */
+    private static final class Worker {
+        final IndexedMinHeap heap = new IndexedMinHeap();
+        final int[] dist;
+        final double[] sigma;  // shortest routes from the source
+        final double[] delta;  // dependency of the source on each node
+        final int[] order;     // nodes in settling order
+        final double[] nodes;
+        final double[] arcs;
+
+        Worker(int n, int m) {
+            heap.ensureCapacity(n);
+            dist = new int[n];
+            Arrays.fill(dist, INF);
+            sigma = new double[n];
+            delta = new double[n];
+            order = new int[n];
+            nodes = new double[n];
+            arcs = new double[m];
+        }
+
+        void source(CsrGraph g, int s) {
+            int[] weights = g.weights;
+            dist[s] = 0;
+            sigma[s] = 1;
+            heap.insertOrDecrease(s, 0);
+            int settled = 0;
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                order[settled++] = u;
+                int du = dist[u];
+                double su = sigma[u];
+                for (int a = g.offsets[u], end = g.offsets[u + 1]; a < end; a++) {
+                    int v = g.targets[a];
+                    int d = du + weights[a];
+                    if (d < dist[v]) {
+                        dist[v] = d;
+                        sigma[v] = su;
+                        heap.insertOrDecrease(v, d);
+                    } else if (d == dist[v]) {
+                        sigma[v] += su;
+                    }
+                }
+            }
+
+            // Dependencies flow back along the arcs that lie on shortest routes, farthest nodes first
+            for (int i = settled - 1; i > 0; i--) {
+                int w = order[i];
+                double share = (1 + delta[w]) / sigma[w];
+                for (int j = g.inOffsets[w], end = g.inOffsets[w + 1]; j < end; j++) {
+                    int v = g.inSources[j], a = g.inArcs[j];
+                    if (dist[v] == INF || dist[v] + weights[a] != dist[w]) continue;
+                    double c = sigma[v] * share;
+                    arcs[a] += c;
+                    delta[v] += c;
+                }
+                nodes[w] += delta[w];
+            }
+            for (int i = 0; i < settled; i++) {
+                int u = order[i];
+                dist[u] = INF;
+                delta[u] = 0;
+            }
+        }
+    }
+
+    /** Whether every intersection was a source, rather than a sample. */
+    public boolean isExact() {
+        return sources.length == graph.nodeCount;
+    }
+
+    /** Intersections searched from; the scores are scaled up from these when sampled. */
+    public int getSourceCount() {
+        return sources.length;
+    }
+
+    /** Single-source searches run to get here, including those of the results this was updated from. */
+    public long getSearchCount() {
+        return searches;
+    }
+
+    public int roadCount() {
+        return roadFrom.length;
+    }
+
+    // The road at a rank, 0 carrying the most shortest routes; two-way roads are reported in one direction
+    public int getFrom(int rank) {
+        return roadFrom[rank];
+    }
+
+    public int getTo(int rank) {
+        return roadTo[rank];
+    }
+
+    /** Shortest routes through the road at a rank, in either direction. */
+    public double getScore(int rank) {
+        return roadScores[rank];
+    }
+
+    /** Rank of the road between two intersections, in either direction, or -1 if there is none. */
+    public int rankOf(int from, int to) {
+        return rankByRoad.get(LongIntHashMap.pack(from, to));
+    }
+
+    /** Shortest routes through the road between two intersections, in either direction, or -1 if there is none. */
+    public double getRoadScore(int from, int to) {
+        int rank = rankOf(from, to);
+        return rank < 0 ? -1 : roadScores[rank];
+    }
+
+    /** Shortest routes passing through an intersection, not counting those that start or end there; -1 if unknown. */
+    public double getIntersectionScore(int node) {
+        int u = graph.indexOf(node);
+        return u < 0 ? -1 : nodeScores[u];
+    }
+
+    // Requested sample size, so a cached result is only updated for the same request
+    int requestedSources() {
+        return requested;
+    }
+}
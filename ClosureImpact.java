@@ -0,0 +1,333 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * Criticality report for road closures: for every road, how much closing it
+ * (both directions, as {@link Graph#removeRoad} would) slows the trips of a
+ * sampled origin x destination matrix, averaged over several congestion
+ * draws. Roads are ranked by the trips a closure disconnects, then by the
+ * travel time it adds.
+ * <p>
+ * Each origin's shortest-path tree is built once per draw. Closing a road
+ * that is not on the tree changes nothing for that origin, so only the tree
+ * roads leading to some destination are evaluated, and for those only the
+ * subtree below the road can change: it is re-settled by a Dijkstra seeded
+ * from the arcs entering it, which stops once the destinations inside it
+ * are settled. Everything runs on private snapshots; the graph itself is
+ * never modified. Origins are claimed dynamically by one evaluator per
+ * worker thread.
+ */
+public final class ClosureImpact {
+    private final int draws;
+    private final int pairs;
+    private final int[] roadFrom, roadTo;      // by rank
+    private final double[] addedTime;          // by rank, mean over draws
+    private final double[] disconnected;       // by rank, mean over draws
+    private final LongIntHashMap rankByRoad;   // packed (from, to) of each direction -> rank
+    private final long searches;
+
+    private ClosureImpact(int draws, int pairs, int[] roadFrom, int[] roadTo, boolean[] twoWay, double[] addedTime,
+                          double[] disconnected, long searches) {
+        this.draws = draws;
+        this.pairs = pairs;
+        this.roadFrom = roadFrom;
+        this.roadTo = roadTo;
+        this.addedTime = addedTime;
+        this.disconnected = disconnected;
+        this.searches = searches;
+        rankByRoad = new LongIntHashMap(roadFrom.length * 2);
+        for (int r = 0; r < roadFrom.length; r++) {
+            rankByRoad.put(LongIntHashMap.pack(roadFrom[r], roadTo[r]), r);
+            if (twoWay[r]) rankByRoad.put(LongIntHashMap.pack(roadTo[r], roadFrom[r]), r);
+        }
+    }
+
+    /**
+     * @param model congestion model sampled for the draws; with {@code draws == 0}
+     *              only the live weights of {@code g} are used
+     */
+    static ClosureImpact analyze(CsrGraph g, int[] origins, int[] destinations, CongestionModel model,
+                                 int draws, long seed, ForkJoinPool pool) {
+        if (draws < 0) throw new IllegalArgumentException("draws must not be negative: " + draws);
+        int[] sources = dense(g, origins), targets = dense(g, destinations);
+
+        // One entry per road; both directions of a two-way road map to it
+        int m = g.arcCount();
+        int[] roadArcs = new int[m], roadSources = new int[m], arcRoads = new int[m];
+        int roadCount = 0;
+        for (int u = 0; u < g.nodeCount; u++) {
+            for (int a = g.offsets[u]; a < g.offsets[u + 1]; a++) {
+                int reverse = g.reverseArcs[a];
+                if (reverse >= 0 && g.targets[a] < u) continue;
+                roadSources[roadCount] = u;
+                roadArcs[roadCount] = a;
+                arcRoads[a] = roadCount;
+                if (reverse >= 0) arcRoads[reverse] = roadCount;
+                roadCount++;
+            }
+        }
+        int roads = roadCount;
+        AtomicLongArray delay = new AtomicLongArray(roads);
+        AtomicLongArray cut = new AtomicLongArray(roads);
+
+        int workers = Math.max(1, Math.min(pool.getParallelism(), sources.length));
+        Evaluator[] evaluators = new Evaluator[workers];
+        for (int w = 0; w < workers; w++) evaluators[w] = new Evaluator(g.nodeCount, targets, arcRoads);
+
+        int rounds = Math.max(1, draws);
+        for (int d = 0; d < rounds; d++) {
+            long draw = d;
+            CsrGraph gd = draws == 0 ? g : g.withWeights(g.baseWeights,
+                    pool.submit(() -> CongestionEngine.step(g, model, seed, draw)).join());
+            AtomicInteger next = new AtomicInteger();
+            pool.submit(() -> IntStream.range(0, workers).parallel().forEach(w -> {
+                Evaluator evaluator = evaluators[w];
+                for (int i = next.getAndIncrement(); i < sources.length; i = next.getAndIncrement()) {
+                    if (sources[i] >= 0) evaluator.origin(gd, sources[i], delay, cut);
+                }
+            })).join();
+        }
+
+        // Rank: disconnected trips first, then added travel time
+        Integer[] order = new Integer[roads];
+        for (int r = 0; r < roads; r++) order[r] = r;
+        Arrays.sort(order, (x, y) -> cut.get(x) != cut.get(y)
+                ? Long.compare(cut.get(y), cut.get(x)) : Long.compare(delay.get(y), delay.get(x)));
+        int[] from = new int[roads], to = new int[roads];
+        boolean[] twoWay = new boolean[roads];
+        double[] added = new double[roads], lost = new double[roads];
+        for (int rank = 0; rank < roads; rank++) {
+            int r = order[rank], arc = roadArcs[r];
+            from[rank] = g.nodeIds[roadSources[r]];
+            to[rank] = g.nodeIds[g.targets[arc]];
+            twoWay[rank] = g.reverseArcs[arc] >= 0;
+            added[rank] = (double) delay.get(r) / rounds;
+            lost[rank] = (double) cut.get(r) / rounds;
+        }
+        long searches = 0;
+        for (Evaluator e : evaluators) searches += e.searches;
+        return new ClosureImpact(rounds, origins.length * destinations.length, from, to, twoWay, added, lost, searches);
+    }
+
+    private static int[] dense(CsrGraph g, int[] ids) {
+        int[] dense = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) dense[i] = g.indexOf(ids[i]);
+        return dense;
+    }
+
+    /**
+     * Per-worker state. The origin's tree lives in the thread's forward
+     * workspace and is laid out in DFS preorder, so the subtree below any
+     * node v is {@code order[tin[v]..tout[v]-1]}; repairs use the backward one.
+     */
+    private static final class Evaluator {
+        final int[] targets;     // destination column -> dense index, -1 if unknown
+        final int[] arcRoads;
+        final int[] childStart, children, order, tin, tout, stack;
+        final boolean[] isTarget, onPath;
+        final int[] pathNodes;
+        final long[] columnsByTin; // (tin << 32 | column) of the reached destinations, sorted
+        long searches;
+
+        Evaluator(int n, int[] targets, int[] arcRoads) {
+            this.targets = targets;
+            this.arcRoads = arcRoads;
+            childStart = new int[n + 1];
+            children = new int[n];
+            order = new int[n];
+            tin = new int[n];
+            tout = new int[n];
+            stack = new int[n];
+            isTarget = new boolean[n];
+            onPath = new boolean[n];
+            pathNodes = new int[n];
+            columnsByTin = new long[targets.length];
+        }
+
+        void origin(CsrGraph g, int s, AtomicLongArray delay, AtomicLongArray cut) {
+            SearchWorkspace tree = SearchWorkspace.forward(g.nodeCount);
+            PathSearch.dijkstraToTargets(g, null, s, isTarget, 0, tree); // no targets: settles everything reachable
+            searches++;
+            layOut(g, tree, s);
+
+            int columns = 0;
+            for (int j = 0; j < targets.length; j++) {
+                int t = targets[j];
+                if (t >= 0 && tree.reached(t)) columnsByTin[columns++] = (long) tin[t] << 32 | j;
+            }
+            Arrays.sort(columnsByTin, 0, columns);
+
+            // Tree roads on the way to some destination; closing any other road changes nothing
+            int count = 0;
+            for (int k = 0; k < columns; k++) {
+                for (int x = targets[(int) columnsByTin[k]]; x != s && !onPath[x]; x = tree.pred(x)) {
+                    onPath[x] = true;
+                    pathNodes[count++] = x;
+                }
+            }
+            for (int k = 0; k < count; k++) {
+                int v = pathNodes[k];
+                onPath[v] = false;
+                repair(g, tree, v, g.findArc(tree.pred(v), v), columns, delay, cut);
+            }
+        }
+
+        // Numbers the reached nodes in DFS preorder from s
+        private void layOut(CsrGraph g, SearchWorkspace tree, int s) {
+            int n = g.nodeCount;
+            Arrays.fill(childStart, 0);
+            for (int x = 0; x < n; x++) {
+                if (x != s && tree.reached(x)) childStart[tree.pred(x) + 1]++;
+            }
+            for (int x = 0; x < n; x++) childStart[x + 1] += childStart[x];
+            System.arraycopy(childStart, 0, stack, 0, n); // fill cursors
+            for (int x = 0; x < n; x++) {
+                if (x != s && tree.reached(x)) children[stack[tree.pred(x)]++] = x;
+            }
+            int count = 0, top = 0;
+            stack[top++] = s;
+            while (top > 0) {
+                int x = stack[--top];
+                tin[x] = count;
+                tout[x] = count + 1;
+                order[count++] = x;
+                for (int c = childStart[x]; c < childStart[x + 1]; c++) stack[top++] = children[c];
+            }
+            // Children follow their parent in preorder, so one backward pass closes every subtree
+            for (int k = count - 1; k > 0; k--) {
+                int x = order[k], p = tree.pred(x);
+                if (tout[x] > tout[p]) tout[p] = tout[x];
+            }
+        }
+
+        /**
+         * Closes the road of tree arc {@code arc} into v and re-settles v's
+         * subtree, the only part of the tree whose distances can change.
+         */
+        private void repair(CsrGraph g, SearchWorkspace tree, int v, int arc, int columns,
+                            AtomicLongArray delay, AtomicLongArray cut) {
+            int lo = tin[v], hi = tout[v];
+            int first = lowerBound(columns, lo), last = lowerBound(columns, hi);
+            if (first == last) return;
+            int remaining = 0;
+            for (int k = first; k < last; k++) {
+                int t = targets[(int) columnsByTin[k]];
+                if (!isTarget[t]) {
+                    isTarget[t] = true;
+                    remaining++;
+                }
+            }
+
+            // Seed every subtree node with its best arc from outside, then settle inside the subtree
+            SearchWorkspace ws = SearchWorkspace.backward(g.nodeCount);
+            IndexedMinHeap heap = ws.heap;
+            int reverse = g.reverseArcs[arc];
+            for (int k = lo; k < hi; k++) {
+                int x = order[k];
+                int best = Integer.MAX_VALUE, via = -1;
+                for (int slot = g.inOffsets[x], end = g.inOffsets[x + 1]; slot < end; slot++) {
+                    int y = g.inSources[slot], in = g.inArcs[slot];
+                    if (in == arc || in == reverse || !tree.reached(y)) continue;
+                    if (tin[y] >= lo && tin[y] < hi) continue; // inside the subtree
+                    int d = tree.dist(y) + g.weights[in];
+                    if (d < best) {
+                        best = d;
+                        via = y;
+                    }
+                }
+                if (via >= 0) {
+                    ws.set(x, best, via);
+                    heap.insertOrDecrease(x, best);
+                }
+            }
+            while (!heap.isEmpty()) {
+                int x = heap.poll();
+                if (isTarget[x]) {
+                    isTarget[x] = false;
+                    if (--remaining == 0) break;
+                }
+                int dx = ws.dist(x);
+                for (int a = g.offsets[x], end = g.offsets[x + 1]; a < end; a++) {
+                    int z = g.targets[a];
+                    if (a == arc || a == reverse || !tree.reached(z) || tin[z] < lo || tin[z] >= hi) continue;
+                    int nd = dx + g.weights[a];
+                    if (nd < ws.dist(z)) {
+                        ws.set(z, nd, x);
+                        heap.insertOrDecrease(z, nd);
+                    }
+                }
+            }
+            searches++;
+
+            // Targets still marked were never settled: the closure cuts them off
+            long added = 0, lost = 0;
+            for (int k = first; k < last; k++) {
+                int t = targets[(int) columnsByTin[k]];
+                if (isTarget[t]) lost++;
+                else added += ws.dist(t) - tree.dist(t);
+            }
+            for (int k = first; k < last; k++) isTarget[targets[(int) columnsByTin[k]]] = false;
+            int road = arcRoads[arc];
+            if (added != 0) delay.addAndGet(road, added);
+            if (lost != 0) cut.addAndGet(road, lost);
+        }
+
+        // First index in columnsByTin[0..columns) whose tin is at least key
+        private int lowerBound(int columns, int key) {
+            int a = 0, b = columns;
+            while (a < b) {
+                int mid = (a + b) >>> 1;
+                if ((int) (columnsByTin[mid] >>> 32) < key) a = mid + 1;
+                else b = mid;
+            }
+            return a;
+        }
+    }
+
+    /** Number of roads in the report, which covers every road of the graph. */
+    public int roadCount() {
+        return roadFrom.length;
+    }
+
+    /** Congestion draws the impacts are averaged over. */
+    public int getDraws() {
+        return draws;
+    }
+
+    /** Origin x destination pairs in the sample. */
+    public int getSampledPairs() {
+        return pairs;
+    }
+
+    /** Searches run: one full tree per origin and draw, plus one subtree repair per road on it. */
+    public long getSearchCount() {
+        return searches;
+    }
+
+    // The road at a rank, 0 being the most critical; two-way roads are reported in one direction
+    public int getFrom(int rank) {
+        return roadFrom[rank];
+    }
+
+    public int getTo(int rank) {
+        return roadTo[rank];
+    }
+
+    /** Travel time the closure adds, summed over the sampled trips that stay connected. */
+    public double getAddedTravelTime(int rank) {
+        return addedTime[rank];
+    }
+
+    /** Sampled trips the closure leaves without a route. */
+    public double getDisconnectedPairs(int rank) {
+        return disconnected[rank];
+    }
+
+    /** Rank of the road between two intersections, in either direction, or -1 if there is none. */
+    public int rankOf(int from, int to) {
+        return rankByRoad.get(LongIntHashMap.pack(from, to));
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Applies a {@link CongestionModel} to every road in parallel. The arc range is
+ * cut into fixed-size shards, and each shard draws from its own
+ * SplittableRandom seeded from (master seed, tick, shard). Results therefore
+ * depend only on the seed and tick, never on thread count or scheduling.
+ */
+final class CongestionEngine {
+    private static final int SHARD_SIZE = 8192;
+
+    private CongestionEngine() {
+    }
+
+    /** Congestion factors for the next tick; {@code g} itself is not modified. */
+    static double[] step(CsrGraph g, CongestionModel model, long seed, long tick) {
+        CongestionModel bound = model instanceof RoadModel roads ? roads.on(g) : model;
+        int m = g.arcCount();
+        double[] next = g.congestion.clone();
+        int shards = (m + SHARD_SIZE - 1) / SHARD_SIZE;
+        IntStream shardRange = IntStream.range(0, shards);
+        if (shards > 1) shardRange = shardRange.parallel();
+        shardRange.forEach(shard -> {
+            SplittableRandom random = new SplittableRandom(mix(seed, tick, shard));
+            int end = Math.min(m, (shard + 1) * SHARD_SIZE);
+            for (int arc = shard * SHARD_SIZE; arc < end; arc++) {
+                int reverse = g.reverseArcs[arc];
+                // The lower-numbered direction owns the road, so each slot has one writer
+                if (reverse >= 0 && reverse < arc) continue;
+                double factor = bound.factor(arc, reverse, g.baseWeights[arc], g.congestion[arc], tick, random);
+                next[arc] = factor;
+                if (reverse >= 0) next[reverse] = factor;
+            }
+        });
+        return next;
+    }
+
+    private static long mix(long seed, long tick, int shard) {
+        long h = seed ^ (tick * 0x9E3779B97F4A7C15L) ^ (shard * 0xC2B2AE3D27D4EB4FL);
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.SplittableRandom;
+
+/**
+ * Decides the congestion factor of a road on each traffic tick. Both
+ * directions of a two-way road get the factor computed for {@code arc}.
+ * Implementations are called concurrently from several shards and must only
+ * draw randomness from the {@code random} they are handed.
+ */
+@FunctionalInterface
+public interface CongestionModel {
+    /**
+     * @param arc         the arc being updated
+     * @param reverseArc  the opposite direction of the same road, or -1 if one-way
+     * @param baseWeight  free-flow travel time of the arc
+     * @param current     the factor from the previous tick
+     * @param tick        number of ticks since the seed was set
+     */
+    double factor(int arc, int reverseArc, int baseWeight, double current, long tick, SplittableRandom random);
+
+    /** Independent uniform draw in [min, max) every tick; the default is 1.0 to 2.5. */
+    static CongestionModel uniform(double min, double max) {
+        return (arc, reverseArc, baseWeight, current, tick, random) -> min + random.nextDouble() * (max - min);
+    }
+
+    /**
+     * Daily profile: {@code hourly[h]} is the factor at hour h, interpolated
+     * linearly between hours and scaled by a random jitter of up to
+     * {@code jitter} either way. A tick advances the clock by {@code secondsPerTick}.
+     */
+    static CongestionModel timeOfDay(double[] hourly, int secondsPerTick, double jitter) {
+        double[] curve = hourly.clone();
+        return (arc, reverseArc, baseWeight, current, tick, random) -> {
+            double hour = (tick * secondsPerTick % 86400) / 3600.0 * curve.length / 24;
+            int h = (int) hour;
+            double frac = hour - h;
+            double base = curve[h] * (1 - frac) + curve[(h + 1) % curve.length] * frac;
+            return Math.max(1.0, base * (1 + jitter * (2 * random.nextDouble() - 1)));
+        };
+    }
+
+    /** A value per road, by the intersection IDs at its ends. */
+    @FunctionalInterface
+    interface RoadValues {
+        double get(int from, int to);
+    }
+
+    /**
+     * Bureau of Public Roads volume-delay function, 1 + alpha * (v / c)^beta,
+     * using the busier direction of the road. Volumes and capacities are read
+     * by road every tick, so callers can update them between ticks and they
+     * follow their roads through edits; {@code assignment::getFlow} gives the
+     * volumes of a {@link TrafficAssignment}. Roads are matched up when the
+     * graph ticks; called directly, without a graph to match arcs against,
+     * the model keeps the current factor.
+     */
+    static CongestionModel bpr(RoadValues volumes, RoadValues capacities, double alpha, double beta) {
+        return new RoadModel() {
+            @Override
+            public CongestionModel on(CsrGraph g) {
+                double[] ratio = new double[g.arcCount()];
+                for (int u = 0; u < g.nodeCount; u++) {
+                    for (int a = g.offsets[u]; a < g.offsets[u + 1]; a++) {
+                        int from = g.nodeIds[u], to = g.nodeIds[g.targets[a]];
+                        ratio[a] = volumes.get(from, to) / capacities.get(from, to);
+                    }
+                }
+                return (arc, reverseArc, baseWeight, current, tick, random) -> {
+                    double r = reverseArc >= 0 ? Math.max(ratio[arc], ratio[reverseArc]) : ratio[arc];
+                    return 1 + alpha * Math.pow(r, beta);
+                };
+            }
+
+            @Override
+            public double factor(int arc, int reverseArc, int baseWeight, double current, long tick,
+                                 SplittableRandom random) {
+                return current;
+            }
+        };
+    }
+}
@@ -0,0 +1,486 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Customizable contraction hierarchy over the road network.
+ * <p>
+ * Preprocessing looks only at topology: intersections are eliminated in
+ * nested dissection order, and every pair of higher-ranked neighbours of an
+ * eliminated node is joined by a shortcut. Because no witness searches are
+ * run, the shortcut set is valid for any weights. Customization then fills in
+ * shortcut costs from the live arc weights by relaxing lower triangles. It
+ * works level by level, with each level processed in parallel, so a congestion
+ * tick only costs one customization pass and never a new node ordering.
+ * <p>
+ * Queries walk the elimination tree: every node reachable upward from s is
+ * an ancestor of s, so the forward and backward "searches" just scan the two
+ * ancestor chains in rank order without a priority queue.
+ */
+final class ContractionHierarchy {
+    private static final int INF = Integer.MAX_VALUE / 2;
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    private final int[] topology; // CsrGraph.targets of the snapshot this was built for
+
+    // Hierarchy edge e joins low[e] to high[e] with rank(low) < rank(high);
+    // the edges whose lower end is x occupy slots upOffsets[x]..upOffsets[x+1]-1.
+    private final int[] upOffsets;
+    private final int[] low;
+    private final int[] high;
+    private final int[] upArc;   // original arc low -> high, or -1
+    private final int[] downArc; // original arc high -> low, or -1
+
+    // Downward lists: the edges whose upper end is v, sorted by their lower end.
+    // A lower triangle of edge {a, b} is a node x present in both lists.
+    private final int[] downOffsets;
+    private final int[] downNodes;
+    private final int[] downEdges;
+
+    private final int[] parent; // elimination tree: lowest-ranked upper neighbour, or -1
+
+    // Edges grouped by the level of their lower end; a level only reads lower levels
+    private final int[] levelOffsets;
+    private final int[] levelEdges;
+
+    private volatile Metric metric;
+
+    /** Shortcut costs for one weight snapshot, swapped in whole after customization. */
+    static final class Metric {
+        final long version;  // CsrGraph.version the costs were computed from
+        final int[] up;      // cost low -> high
+        final int[] down;    // cost high -> low
+        final int[] upVia;   // middle node of the shortcut behind up[e], or -1 for an original arc
+        final int[] downVia;
+
+        Metric(long version, int edges) {
+            this.version = version;
+            up = new int[edges];
+            down = new int[edges];
+            upVia = new int[edges];
+            downVia = new int[edges];
+        }
+    }
+
+    private ContractionHierarchy(CsrGraph g, int[][] upNeighbors, int[] rank) {
+        topology = g.targets;
+        int n = g.nodeCount;
+
+        upOffsets = new int[n + 1];
+        for (int x = 0; x < n; x++) upOffsets[x + 1] = upOffsets[x] + upNeighbors[x].length;
+        int m = upOffsets[n];
+        low = new int[m];
+        high = new int[m];
+        upArc = new int[m];
+        downArc = new int[m];
+        for (int x = 0; x < n; x++) {
+            for (int i = 0; i < upNeighbors[x].length; i++) {
+                int e = upOffsets[x] + i, u = upNeighbors[x][i];
+                low[e] = x;
+                high[e] = u;
+                upArc[e] = g.findArc(x, u);
+                downArc[e] = g.findArc(u, x);
+            }
+        }
+
+        // Edge ids grow with the lower end, so filling in id order keeps lists sorted
+        downOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) downOffsets[high[e] + 1]++;
+        for (int v = 0; v < n; v++) downOffsets[v + 1] += downOffsets[v];
+        downNodes = new int[m];
+        downEdges = new int[m];
+        int[] next = Arrays.copyOf(downOffsets, n);
+        for (int e = 0; e < m; e++) {
+            int slot = next[high[e]]++;
+            downNodes[slot] = low[e];
+            downEdges[slot] = e;
+        }
+
+        parent = new int[n];
+        for (int x = 0; x < n; x++) {
+            parent[x] = -1;
+            for (int u : upNeighbors[x]) {
+                if (parent[x] < 0 || rank[u] < rank[parent[x]]) parent[x] = u;
+            }
+        }
+
+        int[] byRank = new int[n];
+        for (int x = 0; x < n; x++) byRank[rank[x]] = x;
+        int[] level = new int[n];
+        int levels = 0;
+        for (int r = 0; r < n; r++) {
+            int x = byRank[r];
+            levels = Math.max(levels, level[x] + 1);
+            for (int u : upNeighbors[x]) level[u] = Math.max(level[u], level[x] + 1);
+        }
+        levelOffsets = new int[levels + 1];
+        levelEdges = new int[m];
+        for (int e = 0; e < m; e++) levelOffsets[level[low[e]] + 1]++;
+        for (int l = 0; l < levels; l++) levelOffsets[l + 1] += levelOffsets[l];
+        int[] fill = Arrays.copyOf(levelOffsets, levels);
+        for (int e = 0; e < m; e++) levelEdges[fill[level[low[e]]]++] = e;
+    }
+
+    /** Computes the node ordering and shortcut set for the topology of {@code g}. */
+    static ContractionHierarchy build(CsrGraph g) {
+        int n = g.nodeCount;
+        int[][] adj = new int[n][];
+        int[] size = new int[n];
+        int[] mark = new int[n];
+        Arrays.fill(mark, -1);
+        for (int v = 0; v < n; v++) {
+            adj[v] = new int[Math.max(4, g.offsets[v + 1] - g.offsets[v] + g.inOffsets[v + 1] - g.inOffsets[v])];
+            mark[v] = v;
+            for (int a = g.offsets[v]; a < g.offsets[v + 1]; a++) {
+                int u = g.targets[a];
+                if (mark[u] != v) {
+                    mark[u] = v;
+                    adj[v][size[v]++] = u;
+                }
+            }
+            for (int i = g.inOffsets[v]; i < g.inOffsets[v + 1]; i++) {
+                int u = g.inSources[i];
+                if (mark[u] != v) {
+                    mark[u] = v;
+                    adj[v][size[v]++] = u;
+                }
+            }
+        }
+
+        int[] order = new int[n];
+        int[] all = new int[n];
+        for (int v = 0; v < n; v++) all[v] = v;
+        new Dissection(g, adj, size).order(all, n, order, 0);
+
+        // Elimination game: remove nodes in order, turning each one's remaining
+        // neighbourhood into a clique; those neighbours are its upward edges
+        boolean[] eliminated = new boolean[n];
+        int[] rank = new int[n];
+        int[][] upNeighbors = new int[n][];
+        Arrays.fill(mark, -1);
+        int stamp = 0;
+        for (int r = 0; r < n; r++) {
+            int x = order[r];
+            eliminated[x] = true;
+            rank[x] = r;
+            int count = 0;
+            for (int i = 0; i < size[x]; i++) {
+                if (!eliminated[adj[x][i]]) adj[x][count++] = adj[x][i];
+            }
+            int[] up = Arrays.copyOf(adj[x], count);
+            upNeighbors[x] = up;
+            adj[x] = null;
+
+            for (int u : up) {
+                stamp++;
+                int live = 0;
+                for (int i = 0; i < size[u]; i++) {
+                    int w = adj[u][i];
+                    if (eliminated[w]) continue;
+                    adj[u][live++] = w;
+                    mark[w] = stamp;
+                }
+                size[u] = live;
+                for (int v : up) {
+                    if (v == u || mark[v] == stamp) continue;
+                    if (size[u] == adj[u].length) adj[u] = Arrays.copyOf(adj[u], size[u] * 2);
+                    adj[u][size[u]++] = v;
+                }
+            }
+        }
+        return new ContractionHierarchy(g, upNeighbors, rank);
+    }
+
+    /**
+     * Nested dissection ordering. Each node set is cut at the median of its
+     * longer coordinate axis, or of BFS depth when positions are unknown. The
+     * cut's boundary nodes on one side form the separator. Both halves are
+     * ordered first and the separator is ranked above them, which keeps the
+     * fill-in, and so the number of shortcuts, small on planar road networks.
+     */
+    private static final class Dissection {
+        private static final int LEAF_SIZE = 32;
+
+        private final CsrGraph g;
+        private final int[][] adj;
+        private final int[] size;
+        private final int[] side;  // stamp-coded membership of the set being split
+        private final int[] depth; // BFS scratch
+        private final boolean useCoordinates;
+        private int stamp;
+
+        Dissection(CsrGraph g, int[][] adj, int[] size) {
+            this.g = g;
+            this.adj = adj;
+            this.size = size;
+            side = new int[g.nodeCount];
+            depth = new int[g.nodeCount];
+            boolean known = true;
+            for (double c : g.coords) known &= !Double.isNaN(c);
+            useCoordinates = known;
+        }
+
+        // Writes the ranking of nodes[0..count) into out[from..from+count)
+        void order(int[] nodes, int count, int[] out, int from) {
+            if (count <= LEAF_SIZE) {
+                System.arraycopy(nodes, 0, out, from, count);
+                return;
+            }
+            double[] key = keys(nodes, count);
+            double[] sorted = Arrays.copyOf(key, count);
+            Arrays.sort(sorted);
+            double median = sorted[count / 2];
+
+            int low = ++stamp, high = ++stamp;
+            int lowCount = 0;
+            for (int i = 0; i < count; i++) {
+                boolean isLow = key[i] < median;
+                side[nodes[i]] = isLow ? low : high;
+                if (isLow) lowCount++;
+            }
+            if (lowCount == 0 || lowCount == count) {
+                // Every node has the same key: split arbitrarily
+                lowCount = count / 2;
+                for (int i = 0; i < count; i++) side[nodes[i]] = i < lowCount ? low : high;
+            }
+
+            int[] first = new int[count], second = new int[count], separator = new int[count];
+            int firstCount = 0, secondCount = 0, separatorCount = 0;
+            for (int i = 0; i < count; i++) {
+                int v = nodes[i];
+                if (side[v] == high) {
+                    second[secondCount++] = v;
+                    continue;
+                }
+                boolean boundary = false;
+                for (int j = 0; j < size[v] && !boundary; j++) boundary = side[adj[v][j]] == high;
+                if (boundary) separator[separatorCount++] = v;
+                else first[firstCount++] = v;
+            }
+            order(first, firstCount, out, from);
+            order(second, secondCount, out, from + firstCount);
+            System.arraycopy(separator, 0, out, from + firstCount + secondCount, separatorCount);
+        }
+
+        private double[] keys(int[] nodes, int count) {
+            double[] key = new double[count];
+            if (useCoordinates) {
+                double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < count; i++) {
+                    double x = g.coords[2 * nodes[i]], y = g.coords[2 * nodes[i] + 1];
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+                int axis = maxX - minX >= maxY - minY ? 0 : 1;
+                for (int i = 0; i < count; i++) key[i] = g.coords[2 * nodes[i] + axis];
+                return key;
+            }
+            // BFS twice, the second time from the farthest node found by the first
+            int member = ++stamp;
+            for (int i = 0; i < count; i++) side[nodes[i]] = member;
+            int far = bfs(nodes[0], member, nodes, count);
+            bfs(far, member, nodes, count);
+            for (int i = 0; i < count; i++) key[i] = depth[nodes[i]];
+            return key;
+        }
+
+        // Fills depth[] for members reachable from root (others get count) and returns the deepest
+        private int bfs(int root, int member, int[] nodes, int count) {
+            for (int i = 0; i < count; i++) depth[nodes[i]] = count;
+            int[] queue = new int[count];
+            int head = 0, tail = 0, last = root;
+            depth[root] = 0;
+            queue[tail++] = root;
+            while (head < tail) {
+                int v = queue[head++];
+                last = v;
+                for (int j = 0; j < size[v]; j++) {
+                    int u = adj[v][j];
+                    if (side[u] == member && depth[u] == count) {
+                        depth[u] = depth[v] + 1;
+                        queue[tail++] = u;
+                    }
+                }
+            }
+            return last;
+        }
+    }
+
+    /** True if this hierarchy was built for the topology of {@code g}. */
+    boolean matches(CsrGraph g) {
+        return g.targets == topology;
+    }
+
+    /**
+     * Shortcut costs for the weights of {@code g}. The latest metric is reused
+     * when its version matches; otherwise {@code g} is customized, and the
+     * result is kept if it is newer than the current one.
+     */
+    Metric metric(CsrGraph g) {
+        Metric current = metric;
+        if (current != null && current.version == g.version) return current;
+        synchronized (this) {
+            current = metric;
+            if (current != null && current.version == g.version) return current;
+            Metric next = customize(g);
+            if (current == null || next.version > current.version) metric = next;
+            return next;
+        }
+    }
+
+    // Recomputes all shortcut costs from the live weights of g
+    private Metric customize(CsrGraph g) {
+        int m = low.length;
+        Metric next = new Metric(g.version, m);
+        forEach(0, m, e -> {
+            next.up[e] = upArc[e] >= 0 ? g.weight(upArc[e]) : INF;
+            next.down[e] = downArc[e] >= 0 ? g.weight(downArc[e]) : INF;
+            next.upVia[e] = -1;
+            next.downVia[e] = -1;
+        });
+        for (int l = 0; l + 1 < levelOffsets.length; l++) {
+            forEach(levelOffsets[l], levelOffsets[l + 1], i -> relaxTriangles(next, levelEdges[i]));
+        }
+        return next;
+    }
+
+    // Edge e = {a, b}: relax a -> x -> b and b -> x -> a over every lower triangle x
+    private void relaxTriangles(Metric w, int e) {
+        int up = w.up[e], down = w.down[e], upVia = w.upVia[e], downVia = w.downVia[e];
+        int i = downOffsets[low[e]], iEnd = downOffsets[low[e] + 1];
+        int j = downOffsets[high[e]], jEnd = downOffsets[high[e] + 1];
+        while (i < iEnd && j < jEnd) {
+            int xi = downNodes[i], xj = downNodes[j];
+            if (xi < xj) {
+                i++;
+            } else if (xj < xi) {
+                j++;
+            } else {
+                int xa = downEdges[i++], xb = downEdges[j++];
+                int viaUp = Math.min(INF, w.down[xa] + w.up[xb]);
+                if (viaUp < up) {
+                    up = viaUp;
+                    upVia = xi;
+                }
+                int viaDown = Math.min(INF, w.down[xb] + w.up[xa]);
+                if (viaDown < down) {
+                    down = viaDown;
+                    downVia = xi;
+                }
+            }
+        }
+        w.up[e] = up;
+        w.down[e] = down;
+        w.upVia[e] = upVia;
+        w.downVia[e] = downVia;
+    }
+
+    // Hierarchy edge joining x to its upper neighbour v
+    private int edgeBelow(int v, int x) {
+        int slot = Arrays.binarySearch(downNodes, downOffsets[v], downOffsets[v + 1], x);
+        return downEdges[slot];
+    }
+
+    private static void forEach(int from, int to, IntConsumer action) {
+        if (to - from < PARALLEL_THRESHOLD) {
+            for (int i = from; i < to; i++) action.accept(i);
+        } else {
+            IntStream.range(from, to).parallel().forEach(action);
+        }
+    }
+
+    /**
+     * Scans the elimination-tree ancestors of s with upward costs and those of
+     * t with downward costs. Predecessors are hierarchy edges; the meeting node
+     * is left in {@code fw.meetingNode}. Returns -1 if t is unreachable.
+     */
+    int query(Metric w, int s, int t, SearchWorkspace fw, SearchWorkspace bw) {
+        fw.set(s, 0, -1);
+        bw.set(t, 0, -1);
+        scanAncestors(s, w.up, fw);
+        scanAncestors(t, w.down, bw);
+
+        int best = INF, meeting = -1;
+        for (int v = t; v != -1; v = parent[v]) {
+            if (fw.reached(v) && bw.reached(v) && fw.dist(v) + bw.dist(v) < best) {
+                best = fw.dist(v) + bw.dist(v);
+                meeting = v;
+            }
+        }
+        fw.meetingNode = meeting;
+        return meeting < 0 ? -1 : best;
+    }
+
+    private void scanAncestors(int start, int[] cost, SearchWorkspace ws) {
+        int settled = 0, relaxed = 0;
+        for (int u = start; u != -1; u = parent[u]) {
+            if (!ws.reached(u)) continue;
+            int du = ws.dist(u);
+            settled++;
+            for (int e = upOffsets[u]; e < upOffsets[u + 1]; e++) {
+                if (cost[e] >= INF) continue;
+                int v = high[e];
+                int nd = du + cost[e];
+                relaxed++;
+                if (nd < ws.dist(v)) ws.set(v, nd, e);
+            }
+        }
+        if (RoutingMetrics.ENABLED) {
+            // No heap: the elimination tree fixes the scan order
+            ws.settled = settled;
+            ws.relaxed = relaxed;
+        }
+    }
+
+    /** Expands the shortcuts found by the last {@link #query} into external intersection IDs. */
+    List<Integer> unpack(CsrGraph g, Metric w, int s, SearchWorkspace fw, SearchWorkspace bw) {
+        List<Integer> path = new ArrayList<>();
+        path.add(g.nodeIds[s]);
+
+        int depth = 0;
+        for (int v = fw.meetingNode; fw.pred(v) != -1; v = low[fw.pred(v)]) depth++;
+        int[] upward = new int[depth];
+        for (int v = fw.meetingNode, i = depth; fw.pred(v) != -1; v = low[fw.pred(v)]) {
+            upward[--i] = fw.pred(v);
+        }
+        int[] stack = new int[16];
+        for (int e : upward) stack = expand(g, w, e, true, path, stack);
+        for (int v = fw.meetingNode; bw.pred(v) != -1; v = low[bw.pred(v)]) {
+            stack = expand(g, w, bw.pred(v), false, path, stack);
+        }
+        return path;
+    }
+
+    // Appends the nodes after the start of edge e (traversed up or down) to path
+    private int[] expand(CsrGraph g, Metric w, int e, boolean up, List<Integer> path, int[] stack) {
+        int top = 0;
+        stack[top++] = e << 1 | (up ? 1 : 0);
+        while (top > 0) {
+            int item = stack[--top];
+            int edge = item >>> 1;
+            boolean isUp = (item & 1) == 1;
+            int via = isUp ? w.upVia[edge] : w.downVia[edge];
+            if (via < 0) {
+                path.add(g.nodeIds[isUp ? high[edge] : low[edge]]);
+                continue;
+            }
+            if (top + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+            // up:   low -> x (down along x-low), then x -> high (up along x-high)
+            // down: high -> x (down along x-high), then x -> low (up along x-low)
+            int xLow = edgeBelow(low[edge], via), xHigh = edgeBelow(high[edge], via);
+            if (isUp) {
+                stack[top++] = xHigh << 1 | 1;
+                stack[top++] = xLow << 1;
+            } else {
+                stack[top++] = xLow << 1 | 1;
+                stack[top++] = xHigh << 1;
+            }
+        }
+        return stack;
+    }
+}
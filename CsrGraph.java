@@ -0,0 +1,319 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compressed sparse row form of the road network. Intersections are mapped to
+ * dense indices {@code 0..nodeCount-1}; the roads leaving node {@code i} occupy
+ * arc slots {@code offsets[i]..offsets[i+1]-1} of the parallel arc arrays.
+ * <p>
+ * A CsrGraph is an immutable snapshot: its arrays are never written after
+ * construction. Weight changes build a new snapshot that shares the topology
+ * arrays, so a query that pins one instance sees one consistent version.
+ */
+final class CsrGraph {
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    static final CsrGraph EMPTY = new CsrGraph(new int[0], new IntIntHashMap(), new double[0],
+            new int[1], new int[0], new int[0], new double[0], TrafficProfiles.FLAT, null);
+
+    final long version;           // unique per snapshot, increasing in publication order
+    // Version of the latest snapshot in this topology's history whose live weights
+    // went down anywhere. A route found on an older snapshot is still shortest here
+    // if this is no newer than that snapshot and none of the route's arcs changed.
+    final long decreaseEpoch;
+    final int nodeCount;
+    final int[] nodeIds;          // dense index -> external intersection ID
+    final IntIntHashMap nodeIndex; // external intersection ID -> dense index
+    final double[] coords;        // x, y of node i at 2i, 2i+1; NaN when unknown
+    final int[] offsets;
+    final int[] targets;          // arc -> dense index of destination
+    final int[] baseWeights;
+    final double[] congestion;
+    final int[] weights;          // live weight (int) (baseWeight * congestion) per arc
+    // Reverse adjacency for backward searches: the arcs entering node v occupy
+    // slots inOffsets[v]..inOffsets[v+1]-1, naming the forward arc and its source.
+    final int[] inOffsets;
+    final int[] inArcs;
+    final int[] inSources;
+    final int[] reverseArcs;      // arc v -> u for arc u -> v, or -1 for a one-way road
+    // Packed (from ID, to ID) -> arc. Arc IDs are stable for the lifetime of a
+    // topology and are only renumbered when topology edits are compacted.
+    final LongIntHashMap arcIndex;
+    // Time-of-day profiles for time-dependent queries; arcProfiles is null until some arc has one
+    final TrafficProfiles profiles;
+    final int[] arcProfiles;
+
+    private volatile double heuristicScale = Double.NaN;    // computed on first A* query
+    private volatile double timeDependentScale = Double.NaN; // computed on first time-dependent A* query
+    private volatile double freeFlowScale = Double.NaN;     // computed on first use by a RouteTracker
+    private volatile SpatialIndex spatialIndex;               // built on first spatial query
+
+    private CsrGraph(int[] nodeIds, IntIntHashMap nodeIndex, double[] coords, int[] offsets,
+                     int[] targets, int[] baseWeights, double[] congestion,
+                     TrafficProfiles profiles, int[] arcProfiles) {
+        this.version = VERSIONS.incrementAndGet();
+        this.nodeCount = nodeIds.length;
+        this.nodeIds = nodeIds;
+        this.nodeIndex = nodeIndex;
+        this.coords = coords;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.baseWeights = baseWeights;
+        this.congestion = congestion;
+        this.profiles = profiles;
+        this.arcProfiles = arcProfiles;
+        this.weights = liveWeights(baseWeights, congestion);
+        this.decreaseEpoch = version;
+
+        int n = nodeCount, m = targets.length;
+        inOffsets = new int[n + 1];
+        inArcs = new int[m];
+        inSources = new int[m];
+        for (int a = 0; a < m; a++) inOffsets[targets[a] + 1]++;
+        for (int v = 0; v < n; v++) inOffsets[v + 1] += inOffsets[v];
+        int[] fill = Arrays.copyOf(inOffsets, n);
+        for (int u = 0; u < n; u++) {
+            for (int a = offsets[u]; a < offsets[u + 1]; a++) {
+                int slot = fill[targets[a]]++;
+                inArcs[slot] = a;
+                inSources[slot] = u;
+            }
+        }
+        arcIndex = new LongIntHashMap(m);
+        for (int u = 0; u < n; u++) {
+            for (int a = offsets[u]; a < offsets[u + 1]; a++) {
+                arcIndex.put(LongIntHashMap.pack(nodeIds[u], nodeIds[targets[a]]), a);
+            }
+        }
+        reverseArcs = new int[m];
+        for (int u = 0; u < n; u++) {
+            for (int a = offsets[u]; a < offsets[u + 1]; a++) reverseArcs[a] = findArc(targets[a], u);
+        }
+    }
+
+    // Reassembles a snapshot saved by GraphFile, derived arrays included, without rebuilding anything
+    CsrGraph(int[] nodeIds, IntIntHashMap nodeIndex, double[] coords, int[] offsets, int[] targets,
+             int[] baseWeights, double[] congestion, int[] inOffsets, int[] inArcs, int[] inSources,
+             int[] reverseArcs, LongIntHashMap arcIndex, TrafficProfiles profiles) {
+        this.version = VERSIONS.incrementAndGet();
+        this.nodeCount = nodeIds.length;
+        this.nodeIds = nodeIds;
+        this.nodeIndex = nodeIndex;
+        this.coords = coords;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.baseWeights = baseWeights;
+        this.congestion = congestion;
+        this.inOffsets = inOffsets;
+        this.inArcs = inArcs;
+        this.inSources = inSources;
+        this.reverseArcs = reverseArcs;
+        this.arcIndex = arcIndex;
+        this.profiles = profiles;
+        this.arcProfiles = null;
+        this.weights = liveWeights(baseWeights, congestion);
+        this.decreaseEpoch = version;
+    }
+
+    // Shares the topology of g with new coordinates, weights or profiles
+    private CsrGraph(CsrGraph g, double[] coords, int[] baseWeights, double[] congestion,
+                     TrafficProfiles profiles, int[] arcProfiles) {
+        this.version = VERSIONS.incrementAndGet();
+        this.nodeCount = g.nodeCount;
+        this.nodeIds = g.nodeIds;
+        this.nodeIndex = g.nodeIndex;
+        this.coords = coords;
+        this.offsets = g.offsets;
+        this.targets = g.targets;
+        this.inOffsets = g.inOffsets;
+        this.inArcs = g.inArcs;
+        this.inSources = g.inSources;
+        this.reverseArcs = g.reverseArcs;
+        this.arcIndex = g.arcIndex;
+        this.baseWeights = baseWeights;
+        this.congestion = congestion;
+        this.profiles = profiles;
+        this.arcProfiles = arcProfiles;
+        this.weights = baseWeights == g.baseWeights && congestion == g.congestion
+                ? g.weights : liveWeights(baseWeights, congestion);
+        this.spatialIndex = coords == g.coords ? g.spatialIndex : null;
+        this.decreaseEpoch = anyDecrease(g.weights, weights) ? version : g.decreaseEpoch;
+    }
+
+    private static boolean anyDecrease(int[] before, int[] after) {
+        if (before == after) return false;
+        for (int a = 0; a < after.length; a++) {
+            if (after[a] < before[a]) return true;
+        }
+        return false;
+    }
+
+    private static int[] liveWeights(int[] baseWeights, double[] congestion) {
+        int[] live = new int[baseWeights.length];
+        for (int a = 0; a < live.length; a++) live[a] = (int) (baseWeights[a] * congestion[a]);
+        return live;
+    }
+
+    /** A new snapshot with the same topology; the arrays must not be modified afterwards. */
+    CsrGraph withWeights(int[] baseWeights, double[] congestion) {
+        return new CsrGraph(this, coords, baseWeights, congestion, profiles, arcProfiles);
+    }
+
+    CsrGraph withCoords(double[] coords) {
+        return new CsrGraph(this, coords, baseWeights, congestion, profiles, arcProfiles);
+    }
+
+    CsrGraph withProfiles(TrafficProfiles profiles, int[] arcProfiles) {
+        return new CsrGraph(this, coords, baseWeights, congestion, profiles, arcProfiles);
+    }
+
+    int arcCount() {
+        return targets.length;
+    }
+
+    int indexOf(int id) {
+        return nodeIndex.get(id);
+    }
+
+    int weight(int arc) {
+        return weights[arc];
+    }
+
+    // Arc slot of the road u -> v (dense indices), or -1
+    int findArc(int u, int v) {
+        return arcIndex.get(LongIntHashMap.pack(nodeIds[u], nodeIds[v]));
+    }
+
+    // Arc slot of the road between two external intersection IDs, or -1
+    int arcBetween(int fromId, int toId) {
+        return arcIndex.get(LongIntHashMap.pack(fromId, toId));
+    }
+
+    /** A* heuristic scale for this snapshot's weights, computed once and cached. */
+    double heuristicScale() {
+        double scale = heuristicScale;
+        if (Double.isNaN(scale)) heuristicScale = scale = minCostPerUnitLength(weights);
+        return scale;
+    }
+
+    /** Grid index over the coordinates, built once and shared by snapshots with the same coordinates. */
+    SpatialIndex spatialIndex() {
+        SpatialIndex index = spatialIndex;
+        if (index == null) spatialIndex = index = SpatialIndex.build(coords, nodeCount);
+        return index;
+    }
+
+    /** Travel time for entering the arc at {@code time} seconds; constant unless the arc has a profile. */
+    int arrival(int arc, int time) {
+        int p = arcProfiles == null ? TrafficProfiles.NONE : arcProfiles[arc];
+        if (p == TrafficProfiles.NONE) return time + weights[arc];
+        return profiles.arrival(p, baseWeights[arc], time);
+    }
+
+    /**
+     * Like {@link #heuristicScale()}, but for the base weights, so it stays a
+     * lower bound for any later snapshot whose congestion factors are all at
+     * least 1.
+     */
+    double freeFlowScale() {
+        double scale = freeFlowScale;
+        if (Double.isNaN(scale)) freeFlowScale = scale = minCostPerUnitLength(baseWeights);
+        return scale;
+    }
+
+    /** Like {@link #heuristicScale()}, but a lower bound at any time of day. */
+    double timeDependentScale() {
+        double scale = timeDependentScale;
+        if (Double.isNaN(scale)) {
+            if (arcProfiles == null) {
+                scale = heuristicScale();
+            } else {
+                int[] fastest = weights.clone();
+                for (int a = 0; a < fastest.length; a++) {
+                    int p = arcProfiles[a];
+                    if (p != TrafficProfiles.NONE) {
+                        fastest[a] = (int) ((long) baseWeights[a] * profiles.minFactor[p] / TrafficProfiles.SCALE);
+                    }
+                }
+                scale = minCostPerUnitLength(fastest);
+            }
+            timeDependentScale = scale;
+        }
+        return scale;
+    }
+
+    /**
+     * Lower bound on travel cost per unit of straight-line distance under the
+     * given arc costs, or 0 when some intersection has no known position.
+     */
+    private double minCostPerUnitLength(int[] cost) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int u = 0; u < nodeCount; u++) {
+            double ux = coords[2 * u], uy = coords[2 * u + 1];
+            if (Double.isNaN(ux) || Double.isNaN(uy)) return 0;
+            for (int a = offsets[u]; a < offsets[u + 1]; a++) {
+                int v = targets[a];
+                double length = Math.hypot(coords[2 * v] - ux, coords[2 * v + 1] - uy);
+                if (length > 0) best = Math.min(best, cost[a] / length);
+            }
+        }
+        // Shave off a hair so rounding in hypot() can never make the bound inadmissible
+        return best == Double.POSITIVE_INFINITY ? 0 : Math.max(0, best * (1 - 1e-9));
+    }
+
+    /**
+     * Folds the pending edits into a fresh set of arrays. Surviving arcs keep
+     * their weights and congestion, and appear before new arcs of the same node.
+     */
+    static CsrGraph compact(CsrGraph base, GraphDelta delta) {
+        int n = base.nodeCount + delta.nodeCount;
+        int[] nodeIds = Arrays.copyOf(base.nodeIds, n);
+        IntIntHashMap nodeIndex = base.nodeIndex.copy();
+        double[] coords = Arrays.copyOf(base.coords, 2 * n);
+        for (int i = 0; i < delta.nodeCount; i++) {
+            nodeIds[base.nodeCount + i] = delta.nodes[i];
+            nodeIndex.put(delta.nodes[i], base.nodeCount + i);
+        }
+        System.arraycopy(delta.nodeCoords, 0, coords, 2 * base.nodeCount, 2 * delta.nodeCount);
+
+        int[] pendingSrc = new int[delta.arcCount];
+        int[] pendingDst = new int[delta.arcCount];
+        int[] offsets = new int[n + 1];
+        for (int u = 0; u < base.nodeCount; u++) {
+            for (int a = base.offsets[u]; a < base.offsets[u + 1]; a++) {
+                if (!delta.isRemoved(a)) offsets[u + 1]++;
+            }
+        }
+        for (int i = 0; i < delta.arcCount; i++) {
+            pendingSrc[i] = nodeIndex.get(delta.arcSrc[i]);
+            pendingDst[i] = nodeIndex.get(delta.arcDst[i]);
+            offsets[pendingSrc[i] + 1]++;
+        }
+        for (int u = 0; u < n; u++) offsets[u + 1] += offsets[u];
+
+        int m = offsets[n];
+        int[] targets = new int[m];
+        int[] baseWeights = new int[m];
+        double[] congestion = new double[m];
+        int[] arcProfiles = base.arcProfiles == null ? null : new int[m]; // new arcs start without one
+        int[] fill = Arrays.copyOf(offsets, n);
+        for (int u = 0; u < base.nodeCount; u++) {
+            for (int a = base.offsets[u]; a < base.offsets[u + 1]; a++) {
+                if (delta.isRemoved(a)) continue;
+                int slot = fill[u]++;
+                targets[slot] = base.targets[a];
+                baseWeights[slot] = base.baseWeights[a];
+                congestion[slot] = base.congestion[a];
+                if (arcProfiles != null) arcProfiles[slot] = base.arcProfiles[a];
+            }
+        }
+        for (int i = 0; i < delta.arcCount; i++) {
+            int slot = fill[pendingSrc[i]]++;
+            targets[slot] = pendingDst[i];
+            baseWeights[slot] = delta.arcWeight[i];
+            congestion[slot] = 1.0;
+        }
+        return new CsrGraph(nodeIds, nodeIndex, coords, offsets, targets, baseWeights, congestion,
+                base.profiles, arcProfiles);
+    }
+}
@@ -0,0 +1,313 @@
+import java.util.Arrays;
+
+/**
+ * Shortest route for one trip in progress, kept up to date with D* Lite
+ * (Koenig and Likhachev) instead of being recomputed. The search runs
+ * backward from the destination with an A* heuristic towards the vehicle,
+ * and keeps its distance estimates between calls: after the weights of some
+ * arcs change, only the intersections whose distance to the destination
+ * changes are expanded again, and the vehicle can move without invalidating
+ * the search.
+ * <p>
+ * All state is sparse: intersections get a slot when the search first
+ * touches them, so a route costs memory in proportion to the region it has
+ * searched, not the graph. A route belongs to one topology and is not
+ * thread-safe, but distinct routes can be updated concurrently.
+ */
+final class DynamicRoute {
+    private static final int INF = Integer.MAX_VALUE;
+    private static final long NOT_QUEUED = -1;
+
+    private CsrGraph graph;      // weights the search state reflects
+    private final int goal;
+    private final double scale;  // heuristic cost per unit length; must stay a lower bound
+    private int start;           // where the vehicle is
+    private int last;            // start at the last weight change, for the key modifier
+    private long km;
+
+    // Per touched intersection, by slot
+    private final IntIntHashMap slots = new IntIntHashMap();
+    private int[] nodes = new int[16];
+    private int[] g = new int[16];
+    private int[] rhs = new int[16];
+    private long[] queued = new long[16]; // key of the slot's live queue entry, or NOT_QUEUED
+    private int size;
+
+    // Binary heap with lazy deletion: an entry is live while it matches queued[slot]
+    private long[] heapKeys = new long[16];
+    private int[] heapSlots = new int[16];
+    private int heapSize;
+
+    private int expansions; // since the last call, for callers that report work done
+
+    /** Plans from s to t (dense indices); {@code scale} must bound the cost per unit length of every snapshot used. */
+    DynamicRoute(CsrGraph g, int s, int t, double scale) {
+        this.graph = g;
+        this.goal = t;
+        this.scale = scale;
+        this.start = s;
+        this.last = s;
+        int slot = slot(t);
+        rhs[slot] = 0;
+        queue(slot);
+        computeShortestPath();
+    }
+
+    double scale() {
+        return scale;
+    }
+
+    int start() {
+        return start;
+    }
+
+    int goal() {
+        return goal;
+    }
+
+    /** Intersections the search has touched so far. */
+    int stateSize() {
+        return size;
+    }
+
+    /** Intersections expanded by the last construction, move or update. */
+    int expansions() {
+        return expansions;
+    }
+
+    /**
+     * Cost from the vehicle's position to the destination, or -1 if it is
+     * unreachable. The search may stop with the start itself still queued,
+     * so this is its one-step lookahead value rather than its estimate.
+     */
+    int cost() {
+        int d = value(rhs, start);
+        return d == INF ? -1 : d;
+    }
+
+    /** The vehicle is now at intersection u (dense index), on the route or not. */
+    void moveTo(int u) {
+        expansions = 0;
+        if (u == start) return;
+        km += heuristic(last, u);
+        last = u;
+        start = u;
+        computeShortestPath();
+    }
+
+    /**
+     * Catches up with {@code next}, a snapshot of the same topology, given
+     * the arcs whose weights may differ from the ones seen so far and their
+     * source intersections. Returns whether any of them touched the search;
+     * if not, the route is unaffected.
+     */
+    boolean update(CsrGraph next, int[] arcs, int[] sources, int count) {
+        expansions = 0;
+        CsrGraph before = graph;
+        graph = next;
+        boolean touched = false;
+        for (int i = 0; i < count; i++) {
+            int u = sources[i];
+            int slot = slots.get(u);
+            // Untouched intersections only lead to unexplored ones, so their estimate stays infinite
+            if (slot < 0 || u == goal) continue;
+            int arc = arcs[i];
+            int gv = value(g, next.targets[arc]);
+            if (gv == INF) continue;
+            int oldWeight = before.weights[arc], newWeight = next.weights[arc];
+            if (oldWeight == newWeight) continue;
+            if (!touched) {
+                touched = true;
+                km += heuristic(last, start);
+                last = start;
+            }
+            if (newWeight < oldWeight) {
+                rhs[slot] = Math.min(rhs[slot], add(newWeight, gv));
+            } else if (rhs[slot] == add(oldWeight, gv)) {
+                rhs[slot] = bestSuccessor(u);
+            }
+            queue(slot);
+        }
+        if (touched) computeShortestPath();
+        return touched;
+    }
+
+    /** Arcs from the vehicle's position to the destination, or null if there is no route. */
+    int[] arcs() {
+        if (cost() < 0) return null;
+        int[] out = new int[16];
+        int count = 0;
+        for (int u = start; u != goal; ) {
+            int best = INF, bestArc = -1;
+            for (int a = graph.offsets[u], end = graph.offsets[u + 1]; a < end; a++) {
+                int d = add(graph.weights[a], value(g, graph.targets[a]));
+                if (d < best) {
+                    best = d;
+                    bestArc = a;
+                }
+            }
+            if (bestArc < 0 || count == graph.nodeCount) return null; // cannot happen once consistent
+            if (count == out.length) out = Arrays.copyOf(out, count * 2);
+            out[count++] = bestArc;
+            u = graph.targets[bestArc];
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    private void computeShortestPath() {
+        while (true) {
+            int top = peek();
+            if (top < 0) return;
+            int startSlot = slots.get(start);
+            int gs = startSlot < 0 ? INF : g[startSlot], rs = startSlot < 0 ? INF : rhs[startSlot];
+            if (heapKeys[0] >= key(gs, rs, start) && rs <= gs) return;
+            long oldKey = heapKeys[0];
+            long newKey = key(top);
+            if (oldKey < newKey) {
+                poll();
+                queued[top] = newKey;
+                push(newKey, top);
+                continue;
+            }
+            poll();
+            queued[top] = NOT_QUEUED;
+            expansions++;
+            int u = nodes[top];
+            if (g[top] > rhs[top]) {
+                g[top] = rhs[top];
+                for (int i = graph.inOffsets[u], end = graph.inOffsets[u + 1]; i < end; i++) {
+                    int p = graph.inSources[i];
+                    if (p == goal) continue;
+                    int ps = slot(p);
+                    int d = add(graph.weights[graph.inArcs[i]], g[top]);
+                    if (d < rhs[ps]) {
+                        rhs[ps] = d;
+                        queue(ps);
+                    }
+                }
+            } else {
+                int old = g[top];
+                g[top] = INF;
+                for (int i = graph.inOffsets[u], end = graph.inOffsets[u + 1]; i < end; i++) {
+                    int p = graph.inSources[i];
+                    if (p == goal) continue;
+                    int ps = slots.get(p);
+                    if (ps >= 0 && rhs[ps] == add(graph.weights[graph.inArcs[i]], old)) {
+                        rhs[ps] = bestSuccessor(p);
+                        queue(ps);
+                    }
+                }
+                if (u != goal) rhs[top] = bestSuccessor(u);
+                queue(top);
+            }
+        }
+    }
+
+    private int bestSuccessor(int u) {
+        int best = INF;
+        for (int a = graph.offsets[u], end = graph.offsets[u + 1]; a < end; a++) {
+            best = Math.min(best, add(graph.weights[a], value(g, graph.targets[a])));
+        }
+        return best;
+    }
+
+    // Puts an inconsistent slot in the queue under its current key, or takes a consistent one out
+    private void queue(int slot) {
+        if (g[slot] == rhs[slot]) {
+            queued[slot] = NOT_QUEUED;
+            return;
+        }
+        long key = key(slot);
+        if (queued[slot] == key) return;
+        queued[slot] = key;
+        push(key, slot);
+    }
+
+    private long key(int slot) {
+        return key(g[slot], rhs[slot], nodes[slot]);
+    }
+
+    // Lexicographic (min(g, rhs) + h + km, min(g, rhs)) packed into one long
+    private long key(int gValue, int rhsValue, int u) {
+        int k2 = Math.min(gValue, rhsValue);
+        long k1 = k2 == INF ? INF : Math.min(INF, k2 + heuristic(start, u) + km);
+        return k1 << 32 | k2;
+    }
+
+    // Floor of the scaled straight-line distance: integral, admissible and consistent
+    private long heuristic(int a, int b) {
+        if (scale <= 0) return 0;
+        double[] c = graph.coords;
+        return (long) (scale * Math.hypot(c[2 * a] - c[2 * b], c[2 * a + 1] - c[2 * b + 1]));
+    }
+
+    private int value(int[] values, int u) {
+        int slot = slots.get(u);
+        return slot < 0 ? INF : values[slot];
+    }
+
+    private static int add(int weight, int d) {
+        return d == INF ? INF : weight + d;
+    }
+
+    private int slot(int u) {
+        int slot = slots.get(u);
+        if (slot >= 0) return slot;
+        if (size == nodes.length) {
+            int n = size * 2;
+            nodes = Arrays.copyOf(nodes, n);
+            g = Arrays.copyOf(g, n);
+            rhs = Arrays.copyOf(rhs, n);
+            queued = Arrays.copyOf(queued, n);
+        }
+        slot = size++;
+        slots.put(u, slot);
+        nodes[slot] = u;
+        g[slot] = INF;
+        rhs[slot] = INF;
+        queued[slot] = NOT_QUEUED;
+        return slot;
+    }
+
+    // Slot with the smallest live key, discarding stale entries on the way; -1 if the queue is empty
+    private int peek() {
+        while (heapSize > 0 && queued[heapSlots[0]] != heapKeys[0]) poll();
+        return heapSize == 0 ? -1 : heapSlots[0];
+    }
+
+    private void push(long key, int slot) {
+        if (heapSize == heapKeys.length) {
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+            heapSlots = Arrays.copyOf(heapSlots, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapKeys[parent] <= key) break;
+            heapKeys[i] = heapKeys[parent];
+            heapSlots[i] = heapSlots[parent];
+            i = parent;
+        }
+        heapKeys[i] = key;
+        heapSlots[i] = slot;
+    }
+
+    private void poll() {
+        long key = heapKeys[--heapSize];
+        int slot = heapSlots[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) child++;
+            if (key <= heapKeys[child]) break;
+            heapKeys[i] = heapKeys[child];
+            heapSlots[i] = heapSlots[child];
+            i = child;
+        }
+        if (heapSize > 0) {
+            heapKeys[i] = key;
+            heapSlots[i] = slot;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.Arrays;
+
+/**
+ * 4-ary min-heap of primitive events. An event packs its time into the high
+ * bits and a 26-bit payload into the low bits, so the heap orders events by
+ * time and breaks ties by payload, which keeps runs deterministic.
+ */
+final class EventQueue {
+    static final int PAYLOAD_BITS = 26;
+    static final int MAX_PAYLOAD = (1 << PAYLOAD_BITS) - 1;
+    static final long MAX_TIME = Long.MAX_VALUE >>> PAYLOAD_BITS;
+
+    private long[] events = new long[64];
+    private int size;
+
+    static long event(long time, int payload) {
+        return time << PAYLOAD_BITS | payload;
+    }
+
+    static long timeOf(long event) {
+        return event >>> PAYLOAD_BITS;
+    }
+
+    static int payloadOf(long event) {
+        return (int) (event & MAX_PAYLOAD);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long peek() {
+        return events[0];
+    }
+
+    void add(long event) {
+        if (size == events.length) events = Arrays.copyOf(events, size * 2);
+        int slot = size++;
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 2;
+            if (events[parent] <= event) break;
+            events[slot] = events[parent];
+            slot = parent;
+        }
+        events[slot] = event;
+    }
+
+    long poll() {
+        long top = events[0];
+        long last = events[--size];
+        int slot = 0;
+        while (true) {
+            int first = (slot << 2) + 1;
+            if (first >= size) break;
+            int best = first;
+            for (int c = first + 1, end = Math.min(first + 4, size); c < end; c++) {
+                if (events[c] < events[best]) best = c;
+            }
+            if (events[best] >= last) break;
+            events[slot] = events[best];
+            slot = best;
+        }
+        events[slot] = last;
+        return top;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
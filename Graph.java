@@ -1,129 +1,714 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
-class Edge {
-    int destination;
-    int baseWeight;
-    double congestionFactor;
+/**
+ * Road network with live congestion. Reads run lock-free against the latest
+ * published {@link CsrGraph} snapshot; every write happens under the graph's
+ * monitor and publishes a new snapshot (copy-on-write), so a route query pins
+ * one consistent version of the weights for its whole search.
+ */
+public class Graph {
+    private volatile CsrGraph current = CsrGraph.EMPTY; // last published snapshot
+    private volatile boolean dirty;                     // delta holds unpublished topology edits
+    private final GraphDelta delta = new GraphDelta();  // guarded by this
+    private CongestionModel congestionModel = CongestionModel.uniform(1.0, 2.5); // guarded by this
+    private long congestionSeed = new SplittableRandom().nextLong();          // guarded by this
+    private long tick;                                                         // guarded by this
+    private volatile ContractionHierarchy hierarchy;    // null until first needed
+    // Demand used by redistributeTraffic; null until set, in which case a uniform demand is derived
+    private int[] demandOrigins, demandDestinations;    // guarded by this
+    private double[] demandTrips;                       // guarded by this
+    private double roadCapacity = DEFAULT_ROAD_CAPACITY; // guarded by this
+    private GraphJournal journal;                       // null unless edits are journaled; guarded by this
+    private Moves batchMoves;                           // non-null during a replay or import; guarded by this
+    private volatile Betweenness betweenness;           // last computed, updated by the next computation
+
+    private static final double DEFAULT_ROAD_CAPACITY = 100;
+    private static final int DEFAULT_DEMAND_ZONES = 64;
+    private static final int DEFAULT_BETWEENNESS_SOURCES = 512;
+    private static final long BETWEENNESS_SEED = 0x9E3779B97F4A7C15L; // fixed, so repeated samples agree
 
-    Edge(int destination, int baseWeight) {
-        this.destination = destination;
-        this.baseWeight = baseWeight;
-        this.congestionFactor = 1.0;
+    public synchronized void loadCityLayout(Map<Integer, double[]> positions, List<int[]> connections) {
+        GraphJournal j = journal;
+        journal = null; // bulk loads go into a journal checkpoint, not one record per edit
+        current = CsrGraph.EMPTY.withProfiles(current.profiles, null); // defined profiles stay valid
+        delta.clear();
+        for (Map.Entry<Integer, double[]> entry : positions.entrySet()) {
+            addIntersection(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+        for (int[] conn : connections) {
+            addRoad(conn[0], conn[1], conn[2]);
+        }
+        compacted();
+        journal = j;
+        if (j != null) j.rebase(current);
     }
 
-    public int getWeight() {
-        return (int) (baseWeight * congestionFactor);
+    /** Replaces the graph with one written by {@link #saveGraphFile}; traffic profiles are not part of the file. */
+    public synchronized void loadGraphFile(Path file) throws IOException {
+        current = GraphFile.read(file, current.profiles);
+        delta.clear();
+        dirty = false;
+        if (journal != null) journal.rebase(current);
     }
 
-    public void updateCongestion(double factor) {
-        this.congestionFactor = factor;
+    public void saveGraphFile(Path file) throws IOException {
+        GraphFile.write(snapshot(), file);
     }
-}
 
-public class Graph {
-    private final Map<Integer, List<Edge>> adjacencyList;
-    private final Random rand = new Random();
+    /**
+     * Adds the roads and positions of a plain-text edge list, read one line at
+     * a time: {@code src dst weight} per road and {@code v id x y} per position.
+     * DIMACS .gr and .co files are accepted as they are.
+     */
+    public synchronized void importEdgeList(Path file) throws IOException {
+        GraphJournal j = journal;
+        journal = null;
+        batchMoves = new Moves();
+        try {
+            GraphFile.importEdgeList(this, file);
+        } finally {
+            endBatch();
+            journal = j;
+            if (j != null) j.rebase(current);
+        }
+    }
+
+    synchronized void attachJournal(GraphJournal journal) {
+        this.journal = journal;
+    }
 
-    public Graph() {
-        adjacencyList = new HashMap<>();
+    synchronized void detachJournal(GraphJournal journal) {
+        if (this.journal == journal) this.journal = null;
     }
 
-    public void loadCityLayout(Map<Integer, double[]> positions, List<int[]> connections) {
-        adjacencyList.clear();
-        for (int id : positions.keySet()) {
-            addIntersection(id);
+    /**
+     * Applies journaled edits as one batch. Topology edits collect in the delta
+     * as usual, but weight edits and moves of published intersections go into
+     * tables rather than each copying the weight or coordinate array, and one
+     * snapshot is published at the end.
+     */
+    synchronized void replay(GraphJournal.Source source) throws IOException {
+        LongIntHashMap weights = new LongIntHashMap();
+        batchMoves = new Moves();
+        CsrGraph published;
+        try {
+            replayInto(source, weights);
+        } finally {
+            published = endBatch();
         }
-        for (int[] conn : connections) {
-            addRoad(conn[0], conn[1], conn[2]);
+        if (weights.size() == 0) return;
+        CsrGraph g = published;
+        int[] baseWeights = g.baseWeights.clone();
+        weights.forEach((road, weight) -> baseWeights[g.arcBetween((int) (road >>> 32), (int) road)] = weight);
+        current = g.withWeights(baseWeights, g.congestion);
+    }
+
+    // Replays the source's edits, collecting weight edits in the table; caller holds the lock
+    private void replayInto(GraphJournal.Source source, LongIntHashMap weights) throws IOException {
+        source.replayInto(new GraphJournal.Edits() {
+            @Override
+            public void addIntersection(int id, double x, double y) {
+                if (Double.isNaN(x)) addNode(id);
+                else Graph.this.addIntersection(id, x, y);
+            }
+
+            @Override
+            public void addRoad(int src, int dest, int weight) {
+                Graph.this.addRoad(src, dest, weight);
+            }
+
+            @Override
+            public void removeRoad(int src, int dest) {
+                removeArc(src, dest);
+                removeArc(dest, src);
+                weights.remove(LongIntHashMap.pack(src, dest));
+                weights.remove(LongIntHashMap.pack(dest, src));
+            }
+
+            @Override
+            public void setBaseWeight(int from, int to, int weight) {
+                if (hasArc(from, to)) weights.put(LongIntHashMap.pack(from, to), weight);
+            }
+
+            @Override
+            public void setRoadWeight(int src, int dest, int weight) {
+                setBaseWeight(src, dest, weight);
+                setBaseWeight(dest, src, weight);
+            }
+        });
+    }
+
+    // Publishes the delta and the batch's moves as one snapshot
+    private CsrGraph endBatch() {
+        Moves moves = batchMoves;
+        batchMoves = null;
+        CsrGraph g = compacted();
+        if (moves != null && moves.size() > 0) current = g = g.withCoords(moves.applyTo(g));
+        return g;
+    }
+
+    /** Last position of each published intersection moved during a batch, keyed by ID. */
+    private static final class Moves {
+        private final IntIntHashMap slots = new IntIntHashMap(); // intersection ID -> slot in places
+        private double[] places = new double[16];                // slot -> x, y
+
+        int size() {
+            return slots.size();
+        }
+
+        void put(int id, double x, double y) {
+            int slot = slots.get(id);
+            if (slot < 0) {
+                slot = slots.size();
+                slots.put(id, slot);
+                if (2 * slot == places.length) places = Arrays.copyOf(places, 4 * slot);
+            }
+            places[2 * slot] = x;
+            places[2 * slot + 1] = y;
+        }
+
+        // g's coordinates with the moves applied
+        double[] applyTo(CsrGraph g) {
+            double[] coords = g.coords.clone();
+            for (int u = 0; u < g.nodeCount; u++) {
+                int slot = slots.get(g.nodeIds[u]);
+                if (slot < 0) continue;
+                coords[2 * u] = places[2 * slot];
+                coords[2 * u + 1] = places[2 * slot + 1];
+            }
+            return coords;
         }
     }
 
-    public void removeRoad(int src, int dest) {
-        adjacencyList.get(src).removeIf(edge -> edge.destination == dest);
-        adjacencyList.get(dest).removeIf(edge -> edge.destination == src);
+    public synchronized void removeRoad(int src, int dest) {
+        boolean removed = removeArc(src, dest) | removeArc(dest, src);
+        if (!removed) {
+            System.out.println("No road between " + src + " and " + dest + ".");
+            return;
+        }
+        dirty = !delta.isEmpty();
+        if (journal != null) journal.append(GraphJournal.REMOVE_ROAD, src, dest, 0);
         System.out.println("Road between " + src + " and " + dest + " removed.");
     }
 
-    public void addIntersection(int node) {
-        adjacencyList.putIfAbsent(node, new ArrayList<>());
+    // Whether there was an arc to remove
+    private boolean removeArc(int src, int dest) {
+        if (delta.removePendingArc(src, dest)) return true;
+        int arc = current.arcBetween(src, dest);
+        if (arc < 0 || delta.isRemoved(arc)) return false;
+        delta.removeArc(arc);
+        return true;
+    }
+
+    public synchronized void addIntersection(int node) {
+        if (addNode(node) && journal != null) journal.appendIntersection(node, Double.NaN, Double.NaN);
     }
 
-    public void addRoad(int src, int dest, int weight) {
-        adjacencyList.putIfAbsent(src, new ArrayList<>());
-        adjacencyList.putIfAbsent(dest, new ArrayList<>());
-        if (!roadExists(src, dest)) {
-            adjacencyList.get(src).add(new Edge(dest, weight));
-            adjacencyList.get(dest).add(new Edge(src, weight));
+    // Adds the intersection without a position unless it exists; caller holds the lock
+    private boolean addNode(int node) {
+        if (current.indexOf(node) >= 0 || delta.nodeSet.containsKey(node)) return false;
+        delta.addNode(node, Double.NaN, Double.NaN);
+        dirty = true;
+        return true;
+    }
+
+    // Adds the intersection, or moves it if it already exists
+    public synchronized void addIntersection(int node, double x, double y) {
+        int u = current.indexOf(node);
+        int pending = delta.nodeSet.get(node);
+        if (u >= 0 && batchMoves != null) {
+            batchMoves.put(node, x, y);
+        } else if (u >= 0) {
+            double[] coords = current.coords.clone();
+            coords[2 * u] = x;
+            coords[2 * u + 1] = y;
+            current = current.withCoords(coords);
+        } else if (pending >= 0) {
+            delta.nodeCoords[2 * pending] = x;
+            delta.nodeCoords[2 * pending + 1] = y;
+        } else {
+            delta.addNode(node, x, y);
+            dirty = true;
         }
+        if (journal != null) journal.appendIntersection(node, x, y);
     }
 
-    private boolean roadExists(int src, int dest) {
-        return adjacencyList.getOrDefault(src, new ArrayList<>())
-                .stream().anyMatch(e -> e.destination == dest);
+    public synchronized void addRoad(int src, int dest, int weight) {
+        addNode(src);
+        addNode(dest);
+        if (!hasArc(src, dest)) {
+            delta.addArc(src, dest, weight);
+            delta.addArc(dest, src, weight);
+            dirty = true;
+            if (journal != null) journal.append(GraphJournal.ADD_ROAD, src, dest, weight);
+        }
     }
 
-    public void updateTrafficConditions() {
-        for (List<Edge> edges : adjacencyList.values()) {
-            for (Edge edge : edges) {
-                double newCongestionFactor = 1.0 + (rand.nextDouble() * 1.5);
-                edge.updateCongestion(newCongestionFactor);
-            }
+    public boolean roadExists(int src, int dest) {
+        return snapshot().arcBetween(src, dest) >= 0;
+    }
+
+    // Like roadExists, but sees pending edits without compacting them; caller holds the lock
+    private boolean hasArc(int src, int dest) {
+        if (delta.hasArc(src, dest)) return true;
+        int arc = current.arcBetween(src, dest);
+        return arc >= 0 && !delta.isRemoved(arc);
+    }
+
+    /**
+     * The latest consistent version of the graph. Lock-free unless topology
+     * edits are waiting to be compacted, in which case they are published first.
+     */
+    CsrGraph snapshot() {
+        if (!dirty) return current;
+        synchronized (this) {
+            return compacted();
+        }
+    }
+
+    // Folds pending topology edits into a new snapshot; caller holds the lock
+    private CsrGraph compacted() {
+        if (!delta.isEmpty()) {
+            current = CsrGraph.compact(current, delta);
+            delta.clear();
+        }
+        dirty = false;
+        return current;
+    }
+
+    /**
+     * Builds the contraction hierarchy used by {@link RouteMode#CONTRACTION_HIERARCHY}.
+     * The node ordering depends only on topology; later congestion updates just
+     * re-customize the shortcut costs.
+     */
+    public void prepareContractionHierarchy() {
+        CsrGraph g = snapshot();
+        hierarchyFor(g).metric(g);
+    }
+
+    // Rebuilds the hierarchy when the topology has changed since it was built
+    private ContractionHierarchy hierarchyFor(CsrGraph g) {
+        ContractionHierarchy ch = hierarchy;
+        if (ch != null && ch.matches(g)) return ch;
+        synchronized (this) {
+            ch = hierarchy;
+            if (ch != null && ch.matches(g)) return ch;
+            ch = ContractionHierarchy.build(g);
+            // A query pinned to an outdated topology must not evict the current hierarchy
+            if (current.targets == g.targets) hierarchy = ch;
+            return ch;
         }
-        System.out.println("Traffic conditions updated.");
+    }
+
+    // Eagerly re-customizes after a congestion tick so queries don't pay for it
+    private void customizeHierarchy(CsrGraph g) {
+        ContractionHierarchy ch = hierarchy;
+        if (ch != null && ch.matches(g)) ch.metric(g);
+    }
+
+    public synchronized void updateTrafficConditions() {
+        long started = RoutingMetrics.ENABLED ? System.nanoTime() : 0;
+        CsrGraph g = compacted();
+        double[] congestion = CongestionEngine.step(g, congestionModel, congestionSeed, tick++);
+        current = g.withWeights(g.baseWeights, congestion);
+        customizeHierarchy(current);
+        if (RoutingMetrics.ENABLED) RoutingMetrics.recordTrafficUpdate(System.nanoTime() - started);
+    }
+
+    /**
+     * Installs externally computed congestion factors, such as a simulation's
+     * occupancy-based ones. Returns false, leaving the graph alone, if the
+     * topology is no longer the one the factors were computed for.
+     */
+    synchronized boolean applyCongestion(int[] topology, double[] congestion) {
+        CsrGraph g = compacted();
+        if (g.targets != topology) return false;
+        current = g.withWeights(g.baseWeights, congestion);
+        customizeHierarchy(current);
+        return true;
+    }
+
+    public synchronized void setCongestionModel(CongestionModel model) {
+        congestionModel = Objects.requireNonNull(model);
+    }
+
+    // Restarts the tick counter so the same seed replays the same congestion sequence
+    public synchronized void setCongestionSeed(long seed) {
+        congestionSeed = seed;
+        tick = 0;
     }
 
     public List<Integer> findShortestPath(int start, int end) {
-        Map<Integer, Integer> prev = new HashMap<>();
-        Map<Integer, Integer> distances = new HashMap<>();
-        PriorityQueue<int[]> pq = new PriorityQueue<>(Comparator.comparingInt(a -> a[1]));
-
-        pq.offer(new int[]{start, 0});
-        distances.put(start, 0);
-
-        while (!pq.isEmpty()) {
-            int[] current = pq.poll();
-            int node = current[0], cost = current[1];
-
-            if (node == end) break;
-
-            for (Edge edge : adjacencyList.getOrDefault(node, new ArrayList<>())) {
-                int newDist = cost + edge.getWeight();
-                if (!distances.containsKey(edge.destination) || newDist < distances.get(edge.destination)) {
-                    distances.put(edge.destination, newDist);
-                    prev.put(edge.destination, node);
-                    pq.offer(new int[]{edge.destination, newDist});
-                }
+        return findShortestPath(start, end, RouteMode.DIJKSTRA);
+    }
+
+    public List<Integer> findShortestPath(int start, int end, RouteMode mode) {
+        return findShortestPath(snapshot(), start, end, mode);
+    }
+
+    /**
+     * Shortest path with the weights seen through {@code overlay}, or the live
+     * weights if it is null. Overlaid queries bypass any {@link RouteCache}.
+     * Contraction hierarchies are built for the live weights, so they cannot
+     * answer overlaid queries.
+     *
+     * @throws IllegalArgumentException for {@link RouteMode#CONTRACTION_HIERARCHY} with an overlay
+     */
+    public List<Integer> findShortestPath(int start, int end, RouteMode mode, WeightOverlay overlay) {
+        return findShortestPath(snapshot(), start, end, mode, overlay);
+    }
+
+    public AlternativeRoutes findAlternativeRoutes(int start, int end, int k) {
+        return findAlternativeRoutes(start, end, k, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Up to k loopless routes from start to end under the live weights,
+     * cheapest first; the first is a shortest path. The graph is not
+     * modified: roads are masked per search. Spur searches run on the pool.
+     */
+    public AlternativeRoutes findAlternativeRoutes(int start, int end, int k, ForkJoinPool pool) {
+        CsrGraph g = snapshot();
+        return AlternativeRoutes.find(g, g.indexOf(start), g.indexOf(end), k, pool);
+    }
+
+    // Routes on a pinned snapshot, so callers can tell which version the path belongs to
+    List<Integer> findShortestPath(CsrGraph g, int start, int end, RouteMode mode) {
+        return findShortestPath(g, start, end, mode, null);
+    }
+
+    List<Integer> findShortestPath(CsrGraph g, int start, int end, RouteMode mode, WeightOverlay overlay) {
+        if (overlay != null && overlay.isEmpty()) overlay = null;
+        if (overlay != null && mode == RouteMode.CONTRACTION_HIERARCHY) {
+            throw new IllegalArgumentException("contraction hierarchies cannot route with a weight overlay");
+        }
+        int s = g.indexOf(start), t = g.indexOf(end);
+        if (s < 0 || t < 0) return Collections.emptyList();
+
+        long started = RoutingMetrics.ENABLED ? System.nanoTime() : 0;
+        SearchWorkspace fw = SearchWorkspace.forward(g.nodeCount);
+        SearchWorkspace bw = mode == RouteMode.DIJKSTRA || mode == RouteMode.A_STAR
+                ? null : SearchWorkspace.backward(g.nodeCount);
+        List<Integer> path = route(g, overlay == null ? null : overlay.resolve(g), s, t, mode, fw, bw);
+        if (RoutingMetrics.ENABLED) RoutingMetrics.recordSearch(mode, System.nanoTime() - started, fw, bw);
+        return path;
+    }
+
+    private List<Integer> route(CsrGraph g, WeightOverlay.Resolved ov, int s, int t, RouteMode mode,
+                                SearchWorkspace fw, SearchWorkspace bw) {
+        if (mode == RouteMode.CONTRACTION_HIERARCHY) {
+            ContractionHierarchy ch = hierarchyFor(g);
+            ContractionHierarchy.Metric metric = ch.metric(g);
+            if (ch.query(metric, s, t, fw, bw) < 0) return Collections.emptyList();
+            return ch.unpack(g, metric, s, fw, bw);
+        }
+        double scale = mode == RouteMode.A_STAR || mode == RouteMode.BIDIRECTIONAL_A_STAR
+                ? (ov == null ? g.heuristicScale() : ov.heuristicScale(g)) : 0;
+        int cost = switch (mode) {
+            case DIJKSTRA -> PathSearch.dijkstra(g, ov, s, t, fw);
+            case A_STAR -> PathSearch.aStar(g, ov, s, t, scale, fw);
+            case BIDIRECTIONAL -> PathSearch.bidirectional(g, ov, s, t, 0, fw, bw);
+            case BIDIRECTIONAL_A_STAR -> PathSearch.bidirectional(g, ov, s, t, scale, fw, bw);
+            case CONTRACTION_HIERARCHY -> throw new AssertionError(mode);
+        };
+        if (cost < 0) return Collections.emptyList();
+        return PathSearch.path(g, fw, t);
+    }
+
+    /**
+     * Stores a daily congestion profile and returns its ID for
+     * {@link #setTrafficProfile}. The factor at each breakpoint multiplies a
+     * road's base weight and is interpolated linearly in between, wrapping at
+     * midnight. Curves are quantised to whole minutes and 1/1024 of a factor,
+     * and identical curves share one ID.
+     *
+     * @param minuteOfDay strictly increasing breakpoints in minutes after midnight (0..1439)
+     * @param factors     congestion factor at each breakpoint
+     */
+    public synchronized int defineTrafficProfile(int[] minuteOfDay, double[] factors) {
+        TrafficProfiles.Curve curve = TrafficProfiles.Curve.of(minuteOfDay, factors);
+        TrafficProfiles profiles = current.profiles.with(curve);
+        if (profiles != current.profiles) current = current.withProfiles(profiles, current.arcProfiles);
+        return profiles.idOf(curve);
+    }
+
+    /**
+     * Makes time-dependent queries charge the road from -> to its base weight
+     * times the profile's factor at the time it is entered. Other queries are
+     * unaffected. Profile 0 is flat and restores the live weight.
+     */
+    public void setTrafficProfile(int from, int to, int profile) {
+        setTrafficProfiles(new int[]{from}, new int[]{to}, new int[]{profile});
+    }
+
+    /** Bulk form of {@link #setTrafficProfile}, publishing one snapshot for all the roads. */
+    public synchronized void setTrafficProfiles(int[] from, int[] to, int[] profiles) {
+        CsrGraph g = compacted();
+        int[] arcProfiles = g.arcProfiles == null ? new int[g.arcCount()] : g.arcProfiles.clone();
+        for (int i = 0; i < from.length; i++) {
+            if (profiles[i] < 0 || profiles[i] >= g.profiles.count) {
+                throw new IllegalArgumentException("Unknown traffic profile: " + profiles[i]);
             }
+            int arc = g.arcBetween(from[i], to[i]);
+            if (arc >= 0) arcProfiles[arc] = profiles[i];
         }
+        current = g.withProfiles(g.profiles, arcProfiles);
+    }
 
-        List<Integer> path = new ArrayList<>();
-        for (Integer at = end; at != null; at = prev.get(at)) {
-            path.add(at);
+    public TimedRoute findEarliestArrival(int start, int end, int departureTime) {
+        return findEarliestArrival(start, end, departureTime, RouteMode.A_STAR);
+    }
+
+    /**
+     * Earliest arrival at {@code end} when leaving {@code start} at
+     * {@code departureTime} seconds (e.g. 8 * 3600 + 15 * 60 for 08:15 on day 0),
+     * with each road charged its travel time at the moment it is entered.
+     * Roads without a profile cost their live weight. Supports
+     * {@link RouteMode#DIJKSTRA} and {@link RouteMode#A_STAR}.
+     */
+    public TimedRoute findEarliestArrival(int start, int end, int departureTime, RouteMode mode) {
+        if (departureTime < 0) throw new IllegalArgumentException("Negative departure time: " + departureTime);
+        if (mode != RouteMode.DIJKSTRA && mode != RouteMode.A_STAR) {
+            throw new IllegalArgumentException("Time-dependent queries support DIJKSTRA and A_STAR, not " + mode);
         }
-        Collections.reverse(path);
-        return path.isEmpty() || path.get(0) != start ? Collections.emptyList() : path;
+        CsrGraph g = snapshot();
+        int s = g.indexOf(start), t = g.indexOf(end);
+        if (s < 0 || t < 0) return TimedRoute.NONE;
+
+        SearchWorkspace ws = SearchWorkspace.forward(g.nodeCount);
+        double scale = mode == RouteMode.A_STAR ? g.timeDependentScale() : 0;
+        if (PathSearch.timeDependent(g, s, t, departureTime, scale, ws) < 0) return TimedRoute.NONE;
+        return TimedRoute.of(g, ws, t);
+    }
+
+    /**
+     * Travel times from every origin to every destination, computed with one
+     * one-to-many search per origin on the common ForkJoinPool.
+     */
+    public TravelTimeMatrix computeTravelTimeMatrix(int[] origins, int[] destinations, boolean includePaths) {
+        return computeTravelTimeMatrix(origins, destinations, includePaths, ForkJoinPool.commonPool());
+    }
+
+    public TravelTimeMatrix computeTravelTimeMatrix(int[] origins, int[] destinations, boolean includePaths,
+                                                    ForkJoinPool pool) {
+        return TravelTimeMatrix.compute(snapshot(), null, origins, destinations, includePaths, pool);
+    }
+
+    /** Travel times with the weights seen through {@code overlay}; unreachable where it closes every route. */
+    public TravelTimeMatrix computeTravelTimeMatrix(int[] origins, int[] destinations, boolean includePaths,
+                                                    WeightOverlay overlay, ForkJoinPool pool) {
+        return TravelTimeMatrix.compute(snapshot(), overlay, origins, destinations, includePaths, pool);
+    }
+
+    // Position of the intersection as {x, y}, or null if it is unknown or unplaced
+    public double[] getPosition(int node) {
+        CsrGraph g = snapshot();
+        int u = g.indexOf(node);
+        if (u < 0 || Double.isNaN(g.coords[2 * u])) return null;
+        return new double[]{g.coords[2 * u], g.coords[2 * u + 1]};
+    }
+
+    /** The intersection nearest to (x, y), e.g. to snap a GPS fix onto the network, or null if none is placed. */
+    public Integer nearestIntersection(double x, double y) {
+        return nearestIntersection(x, y, Double.POSITIVE_INFINITY);
     }
 
-    public Map<Integer, List<Edge>> getGraph() {
-        return adjacencyList;
+    /** Like {@link #nearestIntersection(double, double)}, but null unless one lies within {@code maxDistance}. */
+    public Integer nearestIntersection(double x, double y, double maxDistance) {
+        CsrGraph g = snapshot();
+        int u = g.spatialIndex().nearest(x, y, maxDistance);
+        return u < 0 ? null : g.nodeIds[u];
     }
 
+    /** Whether any intersection lies strictly within {@code radius} of (x, y); stops at the first one found. */
+    public boolean hasIntersectionWithin(double x, double y, double radius) {
+        return snapshot().spatialIndex().anyWithin(x, y, radius);
+    }
+
+    public int[] getIntersectionsWithin(double x, double y, double radius) {
+        CsrGraph g = snapshot();
+        int[] found = g.spatialIndex().within(x, y, radius);
+        for (int i = 0; i < found.length; i++) found[i] = g.nodeIds[found[i]];
+        return found;
+    }
+
+    // Intersections whose position lies inside the rectangle, such as a viewport
+    public int[] getIntersectionsInRange(double minX, double minY, double maxX, double maxY) {
+        CsrGraph g = snapshot();
+        int[] found = new int[g.nodeCount];
+        int count = g.spatialIndex().range(minX, minY, maxX, maxY, found);
+        for (int i = 0; i < count; i++) found[i] = g.nodeIds[found[i]];
+        return Arrays.copyOf(found, count);
+    }
+
+    public int[] getIntersections() {
+        return snapshot().nodeIds.clone();
+    }
+
+    public int[] getNeighbors(int node) {
+        CsrGraph g = snapshot();
+        int u = g.indexOf(node);
+        if (u < 0) return new int[0];
+        int[] neighbors = new int[g.offsets[u + 1] - g.offsets[u]];
+        for (int i = 0; i < neighbors.length; i++) {
+            neighbors[i] = g.nodeIds[g.targets[g.offsets[u] + i]];
+        }
+        return neighbors;
+    }
+
+    // Base weight of the directed road from -> to, or -1 if there is none
+    public int getBaseWeight(int from, int to) {
+        CsrGraph g = snapshot();
+        int arc = g.arcBetween(from, to);
+        return arc < 0 ? -1 : g.baseWeights[arc];
+    }
+
+    public synchronized void setBaseWeight(int from, int to, int weight) {
+        CsrGraph g = compacted();
+        int arc = g.arcBetween(from, to);
+        if (arc < 0) return;
+        int[] baseWeights = g.baseWeights.clone();
+        baseWeights[arc] = weight;
+        current = g.withWeights(baseWeights, g.congestion);
+        if (journal != null) journal.append(GraphJournal.SET_BASE_WEIGHT, from, to, weight);
+    }
+
+    // Sets both directions of a two-way road in one snapshot
+    public synchronized void setRoadWeight(int src, int dest, int weight) {
+        CsrGraph g = compacted();
+        int forward = g.arcBetween(src, dest), backward = g.arcBetween(dest, src);
+        if (forward < 0 && backward < 0) return;
+        int[] baseWeights = g.baseWeights.clone();
+        if (forward >= 0) baseWeights[forward] = weight;
+        if (backward >= 0) baseWeights[backward] = weight;
+        current = g.withWeights(baseWeights, g.congestion);
+        if (journal != null) journal.append(GraphJournal.SET_ROAD_WEIGHT, src, dest, weight);
+    }
+
+    /**
+     * Sets the origin-destination demand that {@link #redistributeTraffic}
+     * assigns, as a row-major origins x destinations matrix of trips, with a
+     * capacity shared by every road.
+     */
+    public synchronized void setTravelDemand(int[] origins, int[] destinations, double[] trips, double roadCapacity) {
+        if (trips.length != origins.length * destinations.length) {
+            throw new IllegalArgumentException("Demand must have one entry per origin-destination pair");
+        }
+        demandOrigins = origins.clone();
+        demandDestinations = destinations.clone();
+        demandTrips = trips.clone();
+        this.roadCapacity = roadCapacity;
+    }
+
+    /**
+     * Assigns the demand to user equilibrium (Frank-Wolfe with BPR travel
+     * times) and publishes the resulting congestion, so routing sees the
+     * equilibrium travel times. Shortest-path trees are built in parallel
+     * on the common ForkJoinPool.
+     */
+    public TrafficAssignment assignTraffic(int[] origins, int[] destinations, double[] trips, double roadCapacity,
+                                           double relativeGap, int maxIterations) {
+        CsrGraph g = snapshot();
+        TrafficAssignment assignment = TrafficAssignment.solve(g, origins, destinations, trips, roadCapacity,
+                relativeGap, maxIterations, ForkJoinPool.commonPool());
+        applyCongestion(assignment.topology(), assignment.congestionFactors());
+        return assignment;
+    }
+
+    /**
+     * Ranks every road by the impact of closing it on trips between the
+     * sampled intersections, without modifying the graph. Each closure is
+     * evaluated under {@code congestionDraws} draws of the congestion model
+     * seeded with the current congestion seed, or under the live weights
+     * alone if that is 0.
+     */
+    public ClosureImpact analyzeClosures(int[] origins, int[] destinations, int congestionDraws,
+                                         ForkJoinPool pool) {
+        CongestionModel model;
+        long seed;
+        synchronized (this) {
+            model = congestionModel;
+            seed = congestionSeed;
+        }
+        return ClosureImpact.analyze(snapshot(), origins, destinations, model, congestionDraws, seed, pool);
+    }
+
+    /** Closure impacts between up to 64 evenly spread intersections, on the common ForkJoinPool. */
+    public ClosureImpact analyzeClosures(int congestionDraws) {
+        int[] ids = snapshot().nodeIds;
+        int zones = Math.min(ids.length, DEFAULT_DEMAND_ZONES);
+        int[] zoneIds = new int[zones];
+        for (int i = 0; i < zones; i++) zoneIds[i] = ids[(int) ((long) i * ids.length / zones)];
+        return analyzeClosures(zoneIds, zoneIds, congestionDraws, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Shortest-path betweenness of every road and intersection under the live
+     * weights, from {@code sources} sampled intersections, or exact if that is
+     * at least the intersection count. The last result is kept: if the graph
+     * has changed in one road since, for example by a single {@link #addRoad}
+     * or {@link #removeRoad}, only the searches that road affects are re-run.
+     */
+    public Betweenness computeBetweenness(int sources, ForkJoinPool pool) {
+        CsrGraph g = snapshot();
+        Betweenness last = betweenness;
+        Betweenness result = last != null && last.requestedSources() == sources
+                ? last.update(g, pool) : Betweenness.compute(g, sources, BETWEENNESS_SEED, pool);
+        betweenness = result;
+        return result;
+    }
+
+    /** Betweenness from up to 512 sampled intersections, on the common ForkJoinPool. */
+    public Betweenness computeBetweenness() {
+        return computeBetweenness(DEFAULT_BETWEENNESS_SOURCES, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Re-balances congestion by assigning the travel demand to equilibrium.
+     * Without a demand from {@link #setTravelDemand}, one trip is assumed
+     * between every pair of up to 64 evenly spread intersections.
+     */
     public void redistributeTraffic() {
-        for (List<Edge> edges : adjacencyList.values()) {
-            for (Edge edge : edges) {
-                if (edge.getWeight() > 20) {
-                    edge.updateCongestion(1.0); // Reset to normal
-                }
+        long started = RoutingMetrics.ENABLED ? System.nanoTime() : 0;
+        int[] origins, destinations;
+        double[] trips;
+        double capacity;
+        synchronized (this) {
+            if (demandTrips != null) {
+                origins = demandOrigins;
+                destinations = demandDestinations;
+                trips = demandTrips;
+            } else {
+                int[] ids = compacted().nodeIds;
+                int zones = Math.min(ids.length, DEFAULT_DEMAND_ZONES);
+                origins = new int[zones];
+                for (int i = 0; i < zones; i++) origins[i] = ids[(int) ((long) i * ids.length / zones)];
+                destinations = origins;
+                trips = new double[zones * zones];
+                Arrays.fill(trips, 1.0);
             }
+            capacity = roadCapacity;
         }
-        System.out.println("Redistributed traffic: Heavy congestion eased.");
+        TrafficAssignment assignment = assignTraffic(origins, destinations, trips, capacity, 1e-3, 50);
+        if (RoutingMetrics.ENABLED) RoutingMetrics.recordRedistribution(System.nanoTime() - started);
+        System.out.printf("Redistributed traffic: equilibrium after %d iterations, relative gap %.4f%n",
+                assignment.getIterations(), assignment.getRelativeGap());
     }
 
     public int getLiveWeightBetween(int from, int to) {
-        return adjacencyList.getOrDefault(from, new ArrayList<>()).stream()
-            .filter(e -> e.destination == to)
-            .findFirst()
-            .map(Edge::getWeight)
-            .orElse(0);
+        CsrGraph g = snapshot();
+        int arc = g.arcBetween(from, to);
+        return arc < 0 ? 0 : g.weight(arc);
+    }
+
+    // Live weight as seen through the overlay; 0 for a missing road, -1 for one the overlay closes
+    public int getLiveWeightBetween(int from, int to, WeightOverlay overlay) {
+        CsrGraph g = snapshot();
+        int arc = g.arcBetween(from, to);
+        if (arc < 0) return 0;
+        return overlay == null ? g.weight(arc) : overlay.weight(from, to, g.weight(arc));
     }
 }
@@ -0,0 +1,88 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Small mutable buffer of topology edits made since the last compaction.
+ * New intersections and roads are appended here by external ID, removed roads
+ * are flagged by their arc slot in the current {@link CsrGraph}.
+ */
+final class GraphDelta {
+    int[] nodes = new int[16];
+    double[] nodeCoords = new double[32]; // x, y pairs; NaN when unknown
+    int nodeCount;
+    final IntIntHashMap nodeSet = new IntIntHashMap();
+
+    int[] arcSrc = new int[16];
+    int[] arcDst = new int[16];
+    int[] arcWeight = new int[16];
+    int arcCount;
+    final LongIntHashMap arcIndex = new LongIntHashMap(); // packed (src, dst) -> pending slot
+
+    final BitSet removedArcs = new BitSet();
+    int removedCount;
+
+    boolean isEmpty() {
+        return nodeCount == 0 && arcCount == 0 && removedCount == 0;
+    }
+
+    void addNode(int id, double x, double y) {
+        if (nodeCount == nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodeCount * 2);
+            nodeCoords = Arrays.copyOf(nodeCoords, nodeCount * 4);
+        }
+        nodeSet.put(id, nodeCount);
+        nodeCoords[2 * nodeCount] = x;
+        nodeCoords[2 * nodeCount + 1] = y;
+        nodes[nodeCount++] = id;
+    }
+
+    boolean hasArc(int src, int dst) {
+        return arcIndex.get(LongIntHashMap.pack(src, dst)) != LongIntHashMap.MISSING;
+    }
+
+    void addArc(int src, int dst, int weight) {
+        if (arcCount == arcSrc.length) {
+            arcSrc = Arrays.copyOf(arcSrc, arcCount * 2);
+            arcDst = Arrays.copyOf(arcDst, arcCount * 2);
+            arcWeight = Arrays.copyOf(arcWeight, arcCount * 2);
+        }
+        arcIndex.put(LongIntHashMap.pack(src, dst), arcCount);
+        arcSrc[arcCount] = src;
+        arcDst[arcCount] = dst;
+        arcWeight[arcCount] = weight;
+        arcCount++;
+    }
+
+    boolean removePendingArc(int src, int dst) {
+        int slot = arcIndex.remove(LongIntHashMap.pack(src, dst));
+        if (slot == LongIntHashMap.MISSING) return false;
+        int last = --arcCount;
+        if (slot != last) {
+            arcSrc[slot] = arcSrc[last];
+            arcDst[slot] = arcDst[last];
+            arcWeight[slot] = arcWeight[last];
+            arcIndex.put(LongIntHashMap.pack(arcSrc[slot], arcDst[slot]), slot);
+        }
+        return true;
+    }
+
+    void removeArc(int arc) {
+        if (!removedArcs.get(arc)) {
+            removedArcs.set(arc);
+            removedCount++;
+        }
+    }
+
+    boolean isRemoved(int arc) {
+        return removedCount > 0 && removedArcs.get(arc);
+    }
+
+    void clear() {
+        nodeCount = 0;
+        nodeSet.clear();
+        arcCount = 0;
+        arcIndex.clear();
+        removedArcs.clear();
+        removedCount = 0;
+    }
+}
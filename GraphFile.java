@@ -0,0 +1,294 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary on-disk form of a {@link CsrGraph}: a fixed header followed by the
+ * snapshot's arrays exactly as they sit in memory, little-endian, each
+ * section starting on an 8-byte boundary.
+ * <pre>
+ *   header       magic, version, n, m, hash table shapes   64 bytes
+ *   nodeIds      int[n]
+ *   coords       double[2n]
+ *   offsets      int[n + 1]
+ *   targets      int[m]
+ *   baseWeights  int[m]
+ *   congestion   double[m]
+ *   inOffsets    int[n + 1]
+ *   inArcs       int[m]
+ *   inSources    int[m]
+ *   reverseArcs  int[m]
+ *   nodeIndex    int[c] keys, int[c] values
+ *   arcIndex     long[d] keys, int[d] values
+ * </pre>
+ * Reading maps the file and bulk-copies each section into a heap array, so
+ * nothing is parsed, hashed or rebuilt. Traffic profiles are not stored.
+ */
+final class GraphFile {
+    private static final long MAGIC = 0x3148504152474654L; // "TFGRAPH1" read little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int CHUNK = 1 << 26; // elements per mapping, well under the 2 GB limit
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private GraphFile() {
+    }
+
+    static void write(CsrGraph g, Path file) throws IOException {
+        int n = g.nodeCount, m = g.arcCount();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Sink out = new Sink(channel);
+            out.buffer.putLong(MAGIC).putInt(VERSION).putInt(n).putInt(m)
+                    .putInt(g.nodeIndex.keys().length).putInt(g.nodeIndex.size()).putInt(g.nodeIndex.freeValue())
+                    .putInt(g.arcIndex.keys().length).putInt(g.arcIndex.size()).putInt(g.arcIndex.freeValue());
+            out.buffer.position(HEADER_BYTES);
+            out.ints(g.nodeIds);
+            out.doubles(g.coords, 2 * n);
+            out.ints(g.offsets);
+            out.ints(g.targets);
+            out.ints(g.baseWeights);
+            out.doubles(g.congestion, m);
+            out.ints(g.inOffsets);
+            out.ints(g.inArcs);
+            out.ints(g.inSources);
+            out.ints(g.reverseArcs);
+            out.ints(g.nodeIndex.keys());
+            out.ints(g.nodeIndex.values());
+            out.longs(g.arcIndex.keys());
+            out.ints(g.arcIndex.values());
+            out.flush();
+        }
+    }
+
+    static CsrGraph read(Path file, TrafficProfiles profiles) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) throw new IOException(file + ": not a graph file");
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ORDER);
+            if (header.getLong() != MAGIC) throw new IOException(file + ": not a graph file");
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException(file + ": unsupported graph file version " + version);
+            int n = header.getInt(), m = header.getInt();
+            int nodeCapacity = header.getInt(), nodeSize = header.getInt(), nodeFree = header.getInt();
+            int arcCapacity = header.getInt(), arcSize = header.getInt(), arcFree = header.getInt();
+            if (n < 0 || m < 0 || Integer.bitCount(nodeCapacity) != 1 || Integer.bitCount(arcCapacity) != 1
+                    || nodeSize != n || arcSize != m) {
+                throw new IOException(file + ": corrupt graph file header");
+            }
+            long expected = HEADER_BYTES + aligned(4L * n) + aligned(16L * n) + 2 * aligned(4L * (n + 1))
+                    + 5 * aligned(4L * m) + aligned(8L * m) + 2 * aligned(4L * nodeCapacity)
+                    + aligned(8L * arcCapacity) + aligned(4L * arcCapacity);
+            if (channel.size() != expected) throw new IOException(file + ": truncated graph file");
+
+            Source in = new Source(channel, HEADER_BYTES);
+            int[] nodeIds = in.ints(n);
+            double[] coords = in.doubles(2 * n);
+            int[] offsets = in.ints(n + 1);
+            int[] targets = in.ints(m);
+            int[] baseWeights = in.ints(m);
+            double[] congestion = in.doubles(m);
+            int[] inOffsets = in.ints(n + 1);
+            int[] inArcs = in.ints(m);
+            int[] inSources = in.ints(m);
+            int[] reverseArcs = in.ints(m);
+            int[] nodeKeys = in.ints(nodeCapacity);
+            int[] nodeValues = in.ints(nodeCapacity);
+            long[] arcKeys = in.longs(arcCapacity);
+            int[] arcValues = in.ints(arcCapacity);
+            if (offsets[n] != m || inOffsets[n] != m) throw new IOException(file + ": corrupt graph file");
+            return new CsrGraph(nodeIds, IntIntHashMap.restore(nodeKeys, nodeValues, nodeSize, nodeFree),
+                    coords, offsets, targets, baseWeights, congestion, inOffsets, inArcs, inSources, reverseArcs,
+                    LongIntHashMap.restore(arcKeys, arcValues, arcSize, arcFree), profiles);
+        }
+    }
+
+    /**
+     * Streams a plain-text edge list into the graph one line at a time.
+     * Lines are {@code src dst weight} for a two-way road, optionally prefixed
+     * with {@code a}, or {@code v id x y} for an intersection's position.
+     * Blank lines and lines starting with {@code #}, {@code c} or {@code p}
+     * are skipped, so DIMACS .gr and .co files load as they are. Repeated
+     * roads, such as the two directions of a DIMACS arc pair, are added once.
+     */
+    static void importEdgeList(Graph graph, Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            Tokens line = new Tokens();
+            int lineNumber = 0;
+            for (String text; (text = reader.readLine()) != null; ) {
+                lineNumber++;
+                line.reset(text);
+                if (!line.next()) continue;
+                char kind = text.charAt(line.start);
+                try {
+                    if (kind == '#' || ((kind == 'c' || kind == 'p') && line.length() == 1)) continue;
+                    if (kind == 'v' && line.length() == 1) {
+                        int id = line.nextInt();
+                        double x = line.nextDouble(), y = line.nextDouble();
+                        graph.addIntersection(id, x, y);
+                        continue;
+                    }
+                    int src = kind == 'a' && line.length() == 1 ? line.nextInt() : line.intValue();
+                    int dst = line.nextInt(), weight = line.nextInt();
+                    graph.addRoad(src, dst, weight);
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + lineNumber + ": malformed line: " + text);
+                }
+            }
+        }
+    }
+
+    private static long aligned(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    // Whitespace-separated fields of one line, parsed without splitting the string
+    private static final class Tokens {
+        private String text;
+        private int start, end;
+
+        void reset(String text) {
+            this.text = text;
+            start = end = 0;
+        }
+
+        boolean next() {
+            start = end;
+            while (start < text.length() && Character.isWhitespace(text.charAt(start))) start++;
+            end = start;
+            while (end < text.length() && !Character.isWhitespace(text.charAt(end))) end++;
+            return end > start;
+        }
+
+        int length() {
+            return end - start;
+        }
+
+        int intValue() {
+            return Integer.parseInt(text, start, end, 10);
+        }
+
+        int nextInt() {
+            if (!next()) throw new NumberFormatException("missing field");
+            return intValue();
+        }
+
+        double nextDouble() {
+            if (!next()) throw new NumberFormatException("missing field");
+            return Double.parseDouble(text.substring(start, end));
+        }
+    }
+
+    // Buffered little-endian writer over a channel
+    private static final class Sink {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ORDER);
+        private final FileChannel channel;
+
+        Sink(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void ints(int[] a) throws IOException {
+            for (int i = 0; i < a.length; ) {
+                int count = Math.min(a.length - i, room(4));
+                buffer.asIntBuffer().put(a, i, count);
+                buffer.position(buffer.position() + 4 * count);
+                i += count;
+            }
+            align();
+        }
+
+        void longs(long[] a) throws IOException {
+            for (int i = 0; i < a.length; ) {
+                int count = Math.min(a.length - i, room(8));
+                buffer.asLongBuffer().put(a, i, count);
+                buffer.position(buffer.position() + 8 * count);
+                i += count;
+            }
+            align();
+        }
+
+        void doubles(double[] a, int length) throws IOException {
+            for (int i = 0; i < length; ) {
+                int count = Math.min(length - i, room(8));
+                buffer.asDoubleBuffer().put(a, i, count);
+                buffer.position(buffer.position() + 8 * count);
+                i += count;
+            }
+            align();
+        }
+
+        // Whole elements of the given width that fit, draining the buffer first if none do
+        private int room(int width) throws IOException {
+            if (buffer.remaining() < width) drain();
+            return buffer.remaining() / width;
+        }
+
+        private void align() throws IOException {
+            while ((buffer.position() & 7) != 0) buffer.put((byte) 0);
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        void flush() throws IOException {
+            drain();
+            channel.force(false);
+        }
+    }
+
+    // Sequential reader that maps one section at a time and bulk-copies it onto the heap
+    private static final class Source {
+        private final FileChannel channel;
+        private long position;
+
+        Source(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        int[] ints(int length) throws IOException {
+            int[] a = new int[length];
+            for (int i = 0; i < length; i += CHUNK) {
+                int count = Math.min(CHUNK, length - i);
+                map(4L * count).asIntBuffer().get(a, i, count);
+            }
+            position = aligned(position);
+            return a;
+        }
+
+        long[] longs(int length) throws IOException {
+            long[] a = new long[length];
+            for (int i = 0; i < length; i += CHUNK) {
+                int count = Math.min(CHUNK, length - i);
+                map(8L * count).asLongBuffer().get(a, i, count);
+            }
+            position = aligned(position);
+            return a;
+        }
+
+        double[] doubles(int length) throws IOException {
+            double[] a = new double[length];
+            for (int i = 0; i < length; i += CHUNK) {
+                int count = Math.min(CHUNK, length - i);
+                map(8L * count).asDoubleBuffer().get(a, i, count);
+            }
+            position = aligned(position);
+            return a;
+        }
+
+        private ByteBuffer map(long bytes) throws IOException {
+            ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes).order(ORDER);
+            position += bytes;
+            return section;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead log of graph edits, stored in a directory as
+ * numbered generations: {@code checkpoint-N.graph} holds the whole graph in
+ * {@link GraphFile} form and {@code journal-N.log} the edits made after it.
+ * <p>
+ * Edits are encoded under the graph's lock, so the log order is the order in
+ * which they were applied, into an in-memory batch. A background thread
+ * writes and fsyncs the batch every commit interval, so any number of edits
+ * share one fsync; {@link #sync()} forces the pending batch out immediately.
+ * {@link #checkpoint()} starts a new generation, after which older files are
+ * deleted and recovery only has to replay the new, short log.
+ * <p>
+ * Each record is a type byte, its fixed-size payload and a CRC32C of both.
+ * Recovery stops at the first incomplete or damaged record at the end of the
+ * newest log, which is what a crash in the middle of a write leaves behind.
+ */
+public final class GraphJournal implements AutoCloseable {
+    static final byte ADD_INTERSECTION = 1; // id, x, y (NaN when unplaced)
+    static final byte ADD_ROAD = 2;         // src, dest, weight
+    static final byte REMOVE_ROAD = 3;      // src, dest
+    static final byte SET_BASE_WEIGHT = 4;  // from, to, weight
+    static final byte SET_ROAD_WEIGHT = 5;  // src, dest, weight
+
+    /** Receives replayed edits; implemented by {@link Graph#replay}. */
+    interface Edits {
+        void addIntersection(int id, double x, double y);
+
+        void addRoad(int src, int dest, int weight);
+
+        void removeRoad(int src, int dest);
+
+        void setBaseWeight(int from, int to, int weight);
+
+        void setRoadWeight(int src, int dest, int weight);
+    }
+
+    interface Source {
+        void replayInto(Edits edits) throws IOException;
+    }
+
+    private static final int DEFAULT_COMMIT_MILLIS = 20;
+    private static final int BATCH_BYTES = 64 * 1024; // wake the writer early once a batch is this large
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final Path directory;
+    private final Graph graph;
+    private final long commitMillis;
+    private final Object io = new Object();    // held while writing or switching log files
+    private final Thread writer;
+    private final CRC32C checksum = new CRC32C(); // guarded by this
+
+    private ByteBuffer filling = ByteBuffer.allocate(BATCH_BYTES).order(ORDER); // guarded by this
+    private ByteBuffer draining = ByteBuffer.allocate(BATCH_BYTES).order(ORDER); // guarded by io
+    private long appended, durable;            // record counts; guarded by this
+    private IOException failure;               // first write error, reported by sync and close; guarded by this
+    private boolean closed;                    // guarded by this
+    private FileChannel log;                   // guarded by io
+    private int generation;                    // guarded by io
+
+    private GraphJournal(Path directory, Graph graph, long commitMillis) {
+        this.directory = directory;
+        this.graph = graph;
+        this.commitMillis = commitMillis;
+        this.writer = new Thread(this::writeLoop, "graph-journal");
+        writer.setDaemon(true);
+    }
+
+    /** Opens the journal in {@code directory} with the default commit interval; see below. */
+    public static GraphJournal open(Path directory, Graph graph) throws IOException {
+        return open(directory, graph, DEFAULT_COMMIT_MILLIS);
+    }
+
+    /**
+     * Recovers the graph from the journal in {@code directory} and starts
+     * logging its edits. If the directory holds no checkpoint yet, the graph's
+     * current contents become the first one. Edits are durable at most
+     * {@code commitMillis} after they are made, or once {@link #sync()} returns.
+     */
+    public static GraphJournal open(Path directory, Graph graph, long commitMillis) throws IOException {
+        Files.createDirectories(directory);
+        GraphJournal journal = new GraphJournal(directory, graph, commitMillis);
+        journal.recover();
+        graph.attachJournal(journal);
+        journal.writer.start();
+        return journal;
+    }
+
+    private void recover() throws IOException {
+        int newest = 0;
+        List<Integer> logs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int n = generationOf(name, "checkpoint-", ".graph");
+                if (n > newest) newest = n;
+                n = generationOf(name, "journal-", ".log");
+                if (n > 0) logs.add(n);
+            }
+        }
+        synchronized (io) {
+            if (newest == 0) {
+                generation = 1;
+                writeCheckpoint(graph.snapshot(), generation);
+                log = openLog(generation, false);
+                return;
+            }
+            int base = newest;
+            graph.loadGraphFile(checkpoint(base));
+            logs.removeIf(n -> n < base);
+            logs.sort(null);
+            int last = logs.isEmpty() ? newest : logs.get(logs.size() - 1);
+            graph.replay(edits -> {
+                for (int n : logs) replayLog(n, n == last, edits);
+            });
+            generation = last;
+            log = openLog(generation, true);
+        }
+        deleteBefore(newest);
+    }
+
+    // Applies one log's records; a damaged tail is cut off if this is the newest log, and fatal otherwise
+    private void replayLog(int n, boolean newest, Edits edits) throws IOException {
+        Path file = logFile(n);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ORDER);
+            CRC32C crc = new CRC32C();
+            int good = 0;
+            while (records.hasRemaining()) {
+                byte type = records.get(good);
+                int length = payloadLength(type);
+                if (length < 0 || records.remaining() < 1 + length + 4) break;
+                crc.reset();
+                crc.update(records.slice(good, 1 + length));
+                if ((int) crc.getValue() != records.getInt(good + 1 + length)) break;
+                records.position(good + 1);
+                switch (type) {
+                    case ADD_INTERSECTION -> edits.addIntersection(records.getInt(), records.getDouble(), records.getDouble());
+                    case ADD_ROAD -> edits.addRoad(records.getInt(), records.getInt(), records.getInt());
+                    case REMOVE_ROAD -> edits.removeRoad(records.getInt(), records.getInt());
+                    case SET_BASE_WEIGHT -> edits.setBaseWeight(records.getInt(), records.getInt(), records.getInt());
+                    case SET_ROAD_WEIGHT -> edits.setRoadWeight(records.getInt(), records.getInt(), records.getInt());
+                    default -> throw new AssertionError(type);
+                }
+                good += 1 + length + 4;
+                records.position(good);
+            }
+            if (good < channel.size()) {
+                if (!newest) throw new IOException(file + ": damaged record at offset " + good);
+                channel.truncate(good);
+            }
+        }
+    }
+
+    private static int payloadLength(byte type) {
+        return switch (type) {
+            case ADD_INTERSECTION -> 20;
+            case REMOVE_ROAD -> 8;
+            case ADD_ROAD, SET_BASE_WEIGHT, SET_ROAD_WEIGHT -> 12;
+            default -> -1;
+        };
+    }
+
+    // Called by Graph with its lock held, so records are logged in the order they are applied
+    void append(byte type, int a, int b, int c) {
+        synchronized (this) {
+            ByteBuffer out = reserve(1 + payloadLength(type) + 4);
+            int start = out.position();
+            out.put(type).putInt(a).putInt(b);
+            if (type != REMOVE_ROAD) out.putInt(c);
+            seal(out, start);
+        }
+    }
+
+    void appendIntersection(int id, double x, double y) {
+        synchronized (this) {
+            ByteBuffer out = reserve(1 + 20 + 4);
+            int start = out.position();
+            out.put(ADD_INTERSECTION).putInt(id).putDouble(x).putDouble(y);
+            seal(out, start);
+        }
+    }
+
+    // Caller holds this
+    private ByteBuffer reserve(int bytes) {
+        if (filling.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(filling.capacity() * 2).order(ORDER);
+            filling = larger.put(filling.flip());
+        }
+        return filling;
+    }
+
+    // Caller holds this
+    private void seal(ByteBuffer out, int start) {
+        checksum.reset();
+        checksum.update(out.array(), start, out.position() - start);
+        out.putInt((int) checksum.getValue());
+        appended++;
+        if (out.position() >= BATCH_BYTES) notifyAll();
+    }
+
+    /** Blocks until every edit made so far is on disk. */
+    public void sync() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        flush(target);
+    }
+
+    // Writes and fsyncs the pending batch unless another flush already covered target
+    private void flush(long target) throws IOException {
+        synchronized (io) {
+            long upTo;
+            synchronized (this) {
+                if (failure != null) throw failure;
+                if (durable >= target) return;
+                ByteBuffer batch = filling;
+                filling = draining;
+                draining = batch;
+                upTo = appended;
+            }
+            try {
+                draining.flip();
+                while (draining.hasRemaining()) log.write(draining);
+                log.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (failure == null) failure = e;
+                }
+                throw e;
+            } finally {
+                draining.clear();
+            }
+            synchronized (this) {
+                durable = upTo;
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            long target;
+            synchronized (this) {
+                try {
+                    if (!closed && filling.position() < BATCH_BYTES) wait(commitMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) return;
+                target = appended;
+            }
+            try {
+                flush(target);
+            } catch (IOException e) {
+                return; // recorded in failure
+            }
+        }
+    }
+
+    /**
+     * Starts a new generation: the current graph is written to a fresh
+     * checkpoint and later edits go to a fresh log, after which the files of
+     * earlier generations are deleted. Edits can continue while the
+     * checkpoint is being written.
+     */
+    public void checkpoint() throws IOException {
+        CsrGraph g;
+        int next;
+        synchronized (graph) { // no edit can land between the snapshot and the switch of logs
+            g = graph.snapshot();
+            next = rollOver();
+        }
+        writeCheckpoint(g, next);
+        deleteBefore(next);
+    }
+
+    // Called by Graph, with its lock held, after it replaced its whole contents. The
+    // checkpoint is complete before the new log starts, so a crash in between
+    // recovers the graph as it was before the replacement.
+    void rebase(CsrGraph g) {
+        try {
+            int next;
+            synchronized (io) {
+                sync();
+                writeCheckpoint(g, generation + 1);
+                log.close();
+                log = openLog(next = ++generation, false);
+            }
+            deleteBefore(next);
+        } catch (IOException e) {
+            synchronized (this) {
+                if (failure == null) failure = e;
+            }
+        }
+    }
+
+    // Flushes the current log and switches to the next generation's; caller holds the graph lock
+    private int rollOver() throws IOException {
+        synchronized (io) {
+            sync();
+            log.close();
+            log = openLog(++generation, false);
+            return generation;
+        }
+    }
+
+    private void writeCheckpoint(CsrGraph g, int n) throws IOException {
+        Path partial = directory.resolve("checkpoint-" + n + ".partial");
+        GraphFile.write(g, partial);
+        Files.move(partial, checkpoint(n), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Removes the checkpoints and logs that generation n has made obsolete
+    private void deleteBefore(int n) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int c = generationOf(name, "checkpoint-", ".graph"), l = generationOf(name, "journal-", ".log");
+                if ((c > 0 && c < n) || (l > 0 && l < n)) Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private FileChannel openLog(int n, boolean append) throws IOException {
+        return FileChannel.open(logFile(n), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private Path checkpoint(int n) {
+        return directory.resolve("checkpoint-" + n + ".graph");
+    }
+
+    private Path logFile(int n) {
+        return directory.resolve("journal-" + n + ".log");
+    }
+
+    // Generation number in a file name like "journal-12.log", or 0 if the name does not match
+    private static int generationOf(String name, String prefix, String suffix) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) return 0;
+        try {
+            return Integer.parseInt(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Stops logging, making every edit so far durable first. */
+    @Override
+    public void close() throws IOException {
+        graph.detachJournal(this);
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            sync();
+        } finally {
+            synchronized (io) {
+                log.close();
+            }
+        }
+    }
+}
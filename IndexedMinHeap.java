@@ -0,0 +1,108 @@
+import java.util.Arrays;
+
+/**
+ * 4-ary min-heap over the items {@code 0..capacity-1} with decrease-key.
+ * Each item is in the heap at most once, so searches never pop stale entries.
+ */
+final class IndexedMinHeap {
+    private int[] items = new int[16];      // heap slot -> item
+    private double[] keys = new double[16]; // heap slot -> key
+    private int[] slots = new int[0];       // item -> heap slot, or -1
+    private int size;
+
+    void ensureCapacity(int capacity) {
+        if (slots.length < capacity) {
+            int old = slots.length;
+            slots = Arrays.copyOf(slots, capacity);
+            Arrays.fill(slots, old, capacity, -1);
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int item) {
+        return slots[item] >= 0;
+    }
+
+    double peekKey() {
+        return keys[0];
+    }
+
+    int peek() {
+        return items[0];
+    }
+
+    /** Inserts the item, or lowers its key if it is already queued with a larger one. */
+    boolean insertOrDecrease(int item, double key) {
+        int slot = slots[item];
+        if (slot < 0) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            siftUp(size++, item, key);
+            return true;
+        }
+        if (key < keys[slot]) {
+            siftUp(slot, item, key);
+            return true;
+        }
+        return false;
+    }
+
+    int poll() {
+        int top = items[0];
+        slots[top] = -1;
+        if (--size > 0) siftDown(0, items[size], keys[size]);
+        return top;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) slots[items[i]] = -1;
+        size = 0;
+    }
+
+    private void siftUp(int slot, int item, double key) {
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 2;
+            if (keys[parent] <= key) break;
+            move(parent, slot);
+            slot = parent;
+        }
+        place(slot, item, key);
+    }
+
+    private void siftDown(int slot, int item, double key) {
+        while (true) {
+            int first = (slot << 2) + 1;
+            if (first >= size) break;
+            int best = first;
+            int last = Math.min(first + 4, size);
+            for (int c = first + 1; c < last; c++) {
+                if (keys[c] < keys[best]) best = c;
+            }
+            if (keys[best] >= key) break;
+            move(best, slot);
+            slot = best;
+        }
+        place(slot, item, key);
+    }
+
+    private void move(int from, int to) {
+        items[to] = items[from];
+        keys[to] = keys[from];
+        slots[items[to]] = to;
+    }
+
+    private void place(int slot, int item, double key) {
+        items[slot] = item;
+        keys[slot] = key;
+        slots[item] = slot;
+    }
+}
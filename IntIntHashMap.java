@@ -0,0 +1,128 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing int -> int map with linear probing. Used to map external
+ * intersection IDs to dense array indices without boxing.
+ */
+final class IntIntHashMap {
+    static final int MISSING = -1;
+
+    private static final int FREE = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private boolean hasFreeKey; // FREE itself is a legal key, stored out of line
+    private int freeValue;
+
+    IntIntHashMap() {
+        this(16);
+    }
+
+    IntIntHashMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int key) {
+        if (key == FREE) return hasFreeKey ? freeValue : MISSING;
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) return values[i];
+            if (k == FREE) return MISSING;
+        }
+    }
+
+    boolean containsKey(int key) {
+        return get(key) != MISSING;
+    }
+
+    void put(int key, int value) {
+        if (key == FREE) {
+            if (!hasFreeKey) size++;
+            hasFreeKey = true;
+            freeValue = value;
+            return;
+        }
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != FREE && keys[i] != key) i = (i + 1) & mask;
+        if (keys[i] == FREE) {
+            keys[i] = key;
+            if (++size * 2 > keys.length) {
+                values[i] = value;
+                rehash(keys.length << 1);
+                return;
+            }
+        }
+        values[i] = value;
+    }
+
+    // Reassembles a table saved by GraphFile; freeValue is MISSING when FREE is not a key
+    static IntIntHashMap restore(int[] keys, int[] values, int size, int freeValue) {
+        IntIntHashMap m = new IntIntHashMap(4);
+        m.keys = keys;
+        m.values = values;
+        m.size = size;
+        m.hasFreeKey = freeValue != MISSING;
+        m.freeValue = freeValue;
+        return m;
+    }
+
+    // Raw table state for GraphFile; the arrays are shared, not copied
+    int[] keys() {
+        return keys;
+    }
+
+    int[] values() {
+        return values;
+    }
+
+    int freeValue() {
+        return hasFreeKey ? freeValue : MISSING;
+    }
+
+    IntIntHashMap copy() {
+        IntIntHashMap c = new IntIntHashMap(4);
+        c.keys = keys.clone();
+        c.values = values.clone();
+        c.size = size;
+        c.hasFreeKey = hasFreeKey;
+        c.freeValue = freeValue;
+        return c;
+    }
+
+    void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+        hasFreeKey = false;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys, oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int k = oldKeys[j];
+            if (k == FREE) continue;
+            int i = mix(k) & mask;
+            while (keys[i] != FREE) i = (i + 1) & mask;
+            keys[i] = k;
+            values[i] = oldValues[j];
+        }
+    }
+
+    private static int mix(int x) {
+        int h = x * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of durations in nanoseconds, in the style of
+ * HdrHistogram. Values below 128 get exact buckets; above that, each
+ * power-of-two range is split into 64 buckets, so every recorded value is
+ * known to within 1/64 (about 1.6%). Values are clamped at 2^40 ns (about 18
+ * minutes). Counts are striped across threads so concurrent recorders rarely
+ * touch the same cache line.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(
+            Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+
+    void record(long nanos) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.getAndIncrement(stripe * BUCKETS + bucketOf(Math.max(0, Math.min(nanos, MAX_VALUE))));
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+    }
+
+    /** Folds the stripes into one array of bucket counts. Not atomic with respect to concurrent recording. */
+    long[] buckets() {
+        long[] merged = new long[BUCKETS];
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int b = 0; b < BUCKETS; b++) merged[b] += counts.get(stripe * BUCKETS + b);
+        }
+        return merged;
+    }
+
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /** Largest value that falls into bucket b. */
+    static long highestIn(int b) {
+        if (b < 2 * SUB_BUCKETS) return b;
+        int shift = b / SUB_BUCKETS - 1;
+        return ((long) (b - shift * SUB_BUCKETS + 1) << shift) - 1;
+    }
+
+    /** Midpoint of bucket b, used for means. */
+    static double midpointOf(int b) {
+        if (b < 2 * SUB_BUCKETS) return b;
+        int shift = b / SUB_BUCKETS - 1;
+        long lowest = (long) (b - shift * SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) - 1) / 2.0;
+    }
+
+    /** Value at quantile q (0..1) of the merged counts; 0 when empty. */
+    static long valueAt(long[] buckets, long total, double q) {
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int b = 0; b < buckets.length; b++) {
+            seen += buckets[b];
+            if (seen >= rank) return highestIn(b);
+        }
+        return highestIn(buckets.length - 1);
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing long -> int map with linear probing and backward-shift
+ * deletion. Keys are usually a road packed as {@code (long) src << 32 | dst}.
+ */
+final class LongIntHashMap {
+    static final int MISSING = -1;
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private boolean hasFreeKey;
+    private int freeValue;
+
+    LongIntHashMap() {
+        this(16);
+    }
+
+    LongIntHashMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    static long pack(int src, int dst) {
+        return ((long) src << 32) | (dst & 0xFFFFFFFFL);
+    }
+
+    // Reassembles a table saved by GraphFile; freeValue is MISSING when FREE is not a key
+    static LongIntHashMap restore(long[] keys, int[] values, int size, int freeValue) {
+        LongIntHashMap m = new LongIntHashMap(2);
+        m.keys = keys;
+        m.values = values;
+        m.size = size;
+        m.hasFreeKey = freeValue != MISSING;
+        m.freeValue = freeValue;
+        return m;
+    }
+
+    // Raw table state for GraphFile; the arrays are shared, not copied
+    long[] keys() {
+        return keys;
+    }
+
+    int[] values() {
+        return values;
+    }
+
+    int freeValue() {
+        return hasFreeKey ? freeValue : MISSING;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(long key) {
+        if (key == FREE) return hasFreeKey ? freeValue : MISSING;
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) return values[i];
+            if (k == FREE) return MISSING;
+        }
+    }
+
+    void put(long key, int value) {
+        if (key == FREE) {
+            if (!hasFreeKey) size++;
+            hasFreeKey = true;
+            freeValue = value;
+            return;
+        }
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != FREE && keys[i] != key) i = (i + 1) & mask;
+        values[i] = value;
+        if (keys[i] == FREE) {
+            keys[i] = key;
+            if (++size * 2 > keys.length) rehash(keys.length << 1);
+        }
+    }
+
+    int remove(long key) {
+        if (key == FREE) {
+            if (!hasFreeKey) return MISSING;
+            hasFreeKey = false;
+            size--;
+            return freeValue;
+        }
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != key) {
+            if (keys[i] == FREE) return MISSING;
+            i = (i + 1) & mask;
+        }
+        int removed = values[i];
+        size--;
+        // Shift later entries of the probe run back so lookups never stop early
+        for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            int home = mix(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = FREE;
+        return removed;
+    }
+
+    interface Visitor {
+        void visit(long key, int value);
+    }
+
+    void forEach(Visitor visitor) {
+        if (hasFreeKey) visitor.visit(FREE, freeValue);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) visitor.visit(keys[i], values[i]);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+        hasFreeKey = false;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long k = oldKeys[j];
+            if (k == FREE) continue;
+            int i = mix(k) & mask;
+            while (keys[i] != FREE) i = (i + 1) & mask;
+            keys[i] = k;
+            values[i] = oldValues[j];
+        }
+    }
+
+    private static int mix(long x) {
+        long h = x * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -1,31 +1,40 @@
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.*;
-import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 import javafx.animation.*;
 import javafx.scene.effect.Glow;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class MainGUI extends Application {
-    private final Pane graphPane = new Pane(); // only for nodes and roads
     private final Graph graph = new Graph();
-    private final Map<Integer, Circle> nodes = new HashMap<>();
-    private final Map<String, Line> roads = new HashMap<>();
-    private final Map<String, Text> roadLabels = new HashMap<>();
+    private final RoadCanvas roadCanvas = new RoadCanvas(graph); // draws the nodes and roads
+    private final RouteCache routeCache = new RouteCache(graph, 256);
+    // Searches run off the FX thread; results come back through Platform.runLater
+    private final RouteService routeService = new RouteService(routeCache, 2, Platform::runLater);
     private Integer startNode = null;
     private Integer endNode = null;
     private final boolean[] placingMode = {false};
     private final boolean[] comparisonMode = {false};
-    private final Map<String, Integer> snapshotWeights = new HashMap<>();
+    private CsrGraph comparisonBase; // graph as it was when the comparison view was turned on
     private final Label travelTimeLabel = new Label("Total Travel Time: —");
+    private final AtomicReference<SimulationSample> latestSample = new AtomicReference<>();
+    private Thread simulationWorker; // null while the simulation is off
+    // Scenario -> route of each ambulance still on its way; their colors stay until the last one arrives
+    private final Map<WeightOverlay, List<Integer>> activeEmergencies = new LinkedHashMap<>();
 
+    private static final Color[] ALTERNATIVE_COLORS = {Color.DEEPSKYBLUE, Color.ORANGE, Color.MEDIUMPURPLE};
+    private static final int MAX_SIMULATED_TRIPS = 5000; // trips in flight the simulation feeder keeps topped up to
     private static final int WINDOW_WIDTH = 1200;
     private static final int WINDOW_HEIGHT = 600;
 
@@ -47,12 +56,16 @@ public class MainGUI extends Application {
         Button editRoadBtn = new Button("Edit Road");
         Button redistributeBtn = new Button("Redistribute Traffic");
         Button compareViewBtn = new Button("Comparison View: OFF");
+        Button centralityBtn = new Button("Road Centrality");
+        Button alternativesBtn = new Button("Alternative Routes");
+        Button simulateBtn = new Button("Simulate Traffic: OFF");
 
         Label instructions = new Label(
             "Instructions:\n" +
             "• Click two intersections to select a path.\n" +
             "• Use buttons to add/edit roads or simulate.\n" +
             "• Use 'Place Mode' to add new intersections.\n" +
+            "• Drag to pan, scroll to zoom.\n" +
             "• Press ESC to reset selection."
         );
         instructions.setWrapText(true);
@@ -63,15 +76,15 @@ public class MainGUI extends Application {
         controlPanel.getChildren().addAll(
             instructions,
             travelTimeLabel,
-            findPathButton, removeRoadButton, emergencyButton,
+            findPathButton, alternativesBtn, removeRoadButton, emergencyButton,
             placeIntersectionBtn, addRoadButton, editRoadBtn,
-            redistributeBtn, compareViewBtn,
+            redistributeBtn, compareViewBtn, centralityBtn, simulateBtn,
             bottomSpacer
         );
 
         BorderPane mainLayout = new BorderPane();
         mainLayout.setLeft(controlPanel);
-        mainLayout.setCenter(graphPane);
+        mainLayout.setCenter(roadCanvas);
 
         Scene scene = new Scene(mainLayout, WINDOW_WIDTH, WINDOW_HEIGHT, Color.WHITE);
         primaryStage.setTitle("Traffic Network Simulation");
@@ -83,8 +96,22 @@ public class MainGUI extends Application {
         // === Button Actions ===
         // Button to compute and highlight shortest path between selected nodes
         findPathButton.setOnAction(e -> {
-            if (startNode != null && endNode != null)
-                highlightShortestPath(startNode, endNode);
+            if (startNode != null && endNode != null) {
+                travelTimeLabel.setText("Total Travel Time: routing…");
+                routeService.findShortestPath(startNode, endNode).thenAccept(this::highlightShortestPath)
+                        .exceptionally(this::routingFailed);
+            }
+        });
+
+        // Button to show up to three routes between the selected nodes with their live travel times;
+        // found by the route service without modifying the graph
+        alternativesBtn.setOnAction(e -> {
+            if (startNode != null && endNode != null) {
+                int from = startNode, to = endNode;
+                travelTimeLabel.setText("Total Travel Time: routing…");
+                routeService.submit(() -> graph.findAlternativeRoutes(from, to, ALTERNATIVE_COLORS.length))
+                        .thenAccept(this::highlightAlternatives).exceptionally(this::routingFailed);
+            }
         });
 
         // Button to remove an existing road between two selected nodes
@@ -98,8 +125,11 @@ public class MainGUI extends Application {
 
         // Button to simulate an emergency event:
         emergencyButton.setOnAction(e -> {
-            if (startNode != null && endNode != null)
-                simulateEmergency(startNode, endNode);
+            if (startNode != null && endNode != null) {
+                travelTimeLabel.setText("Total Travel Time: routing…");
+                routeService.findShortestPath(startNode, endNode).thenAccept(this::simulateEmergency)
+                        .exceptionally(this::routingFailed);
+            }
         });
 
         // Toggle intersection placement mode (free-click placement)
@@ -112,9 +142,7 @@ public class MainGUI extends Application {
         // Prompts user for a travel time value between 5 and 30
         addRoadButton.setOnAction(e -> {
             if (startNode != null && endNode != null && !startNode.equals(endNode)) {
-                String key = startNode + "-" + endNode;
-                String reverseKey = endNode + "-" + startNode;
-                if (roads.containsKey(key) || roads.containsKey(reverseKey)) {
+                if (graph.roadExists(startNode, endNode) || graph.roadExists(endNode, startNode)) {
                     System.out.println("Road already exists.");
                     return;
                 }
@@ -135,10 +163,6 @@ public class MainGUI extends Application {
                         }
 
                         graph.addRoad(startNode, endNode, weight);
-                        Map<Integer, double[]> pos = new HashMap<>();
-                        for (var entry : nodes.entrySet())
-                            pos.put(entry.getKey(), new double[]{entry.getValue().getCenterX(), entry.getValue().getCenterY()});
-                        addRoad(startNode, endNode, weight, pos);
                         updateRoadColors();
                     } catch (Exception ex) {
                         System.out.println("Invalid input.");
@@ -168,19 +192,10 @@ public class MainGUI extends Application {
                         }
 
                         // Update both directions of the undirected edge
-                        for (Edge edge : graph.getGraph().get(startNode)) {
-                            if (edge.destination == endNode) edge.baseWeight = newWeight;
-                        }
-                        for (Edge edge : graph.getGraph().get(endNode)) {
-                            if (edge.destination == startNode) edge.baseWeight = newWeight;
-                        }
+                        graph.setRoadWeight(startNode, endNode, newWeight);
 
-                        // Update weight label on GUI
+                        // Recolor and relabel on GUI
                         updateRoadColors();
-                        if (roadLabels.containsKey(startNode + "-" + endNode))
-                            roadLabels.get(startNode + "-" + endNode).setText(String.valueOf(newWeight));
-                        if (roadLabels.containsKey(endNode + "-" + startNode))
-                            roadLabels.get(endNode + "-" + startNode).setText(String.valueOf(newWeight));
 
                     } catch (NumberFormatException ex) {
                         System.out.println("Invalid input.");
@@ -206,30 +221,20 @@ public class MainGUI extends Application {
             comparisonMode[0] = !comparisonMode[0];
             compareViewBtn.setText("Comparison View: " + (comparisonMode[0] ? "ON" : "OFF"));
             if (comparisonMode[0]) {
-                // Save current weights
-                snapshotWeights.clear();
-                for (var entry : graph.getGraph().entrySet()) {
-                    int src = entry.getKey();
-                    for (Edge edge : entry.getValue()) {
-                        snapshotWeights.put(src + "-" + edge.destination, edge.getWeight());
-                    }
-                }
+                // Save current weights; snapshots are immutable, so keeping one is enough
+                comparisonBase = graph.snapshot();
             } else {
                 // Compare with snapshot and color edges based on change
-                for (String key : roads.keySet()) {
-                    String[] parts = key.split("-");
-                    int src = Integer.parseInt(parts[0]);
-                    int dst = Integer.parseInt(parts[1]);
-                    int before = snapshotWeights.getOrDefault(key, -1);
-                    int after = graph.getGraph().get(src).stream()
-                        .filter(edge -> edge.destination == dst).findFirst().map(Edge::getWeight).orElse(before);
-                    if (after > before) roads.get(key).setStroke(Color.DARKRED);
-                    else if (after < before) roads.get(key).setStroke(Color.DARKGREEN);
-                    else roads.get(key).setStroke(Color.GRAY);
-                }
+                roadCanvas.highlightChangesSince(comparisonBase);
+                comparisonBase = null;
             }
         });
 
+        // Button to color roads by how many shortest routes use them, until the next recolor;
+        // computed by the route service, and incrementally after a single road edit
+        centralityBtn.setOnAction(e -> routeService.submit(graph::computeBetweenness)
+                .thenAccept(roadCanvas::highlightBetweenness).exceptionally(this::routingFailed));
+
         // ESCAPE key reset
         scene.setOnKeyPressed(e -> {
             switch (e.getCode()) {
@@ -237,25 +242,19 @@ public class MainGUI extends Application {
             }
         });
 
-        // Click to place intersection
-        graphPane.setOnMouseClicked(e -> {
+        // Click an intersection to select it, or click elsewhere to place one
+        roadCanvas.setOnIntersectionClicked(this::handleNodeClick);
+        roadCanvas.setOnBackgroundClicked((x, y) -> {
             if (placingMode[0]) {
-                double x = e.getX();
-                double y = e.getY();
-
                 // Prevent placing node too close to any existing node (min distance: 25 pixels)
-                for (Circle existing : nodes.values()) {
-                    double dx = existing.getCenterX() - x;
-                    double dy = existing.getCenterY() - y;
-                    if (Math.sqrt(dx * dx + dy * dy) < 25) {
-                        System.out.println("Too close to existing intersection.");
-                        return;
-                    }
+                if (graph.hasIntersectionWithin(x, y, 25)) {
+                    System.out.println("Too close to existing intersection.");
+                    return;
                 }
 
-                int id = nodes.size() + 1;
-                graph.addIntersection(id);
-                addIntersection(id, x, y);
+                int id = graph.getIntersections().length + 1;
+                graph.addIntersection(id, x, y);
+                roadCanvas.refresh();
             }
         });
 
@@ -266,6 +265,72 @@ public class MainGUI extends Application {
         }));
         t.setCycleCount(Timeline.INDEFINITE);
         t.play();
+
+        // Button to toggle the vehicle simulation:
+        // - ON: congestion comes from simulated vehicles instead of the random timer
+        // - OFF: stops the simulation and resumes the timer
+        simulateBtn.setOnAction(e -> {
+            if (simulationWorker == null) {
+                t.pause();
+                simulationWorker = startSimulation(failed -> {
+                    if (simulationWorker != failed) return; // turned off and on again meanwhile
+                    simulationWorker = null;
+                    t.play();
+                    simulateBtn.setText("Simulate Traffic: OFF");
+                });
+            } else {
+                simulationWorker.interrupt();
+                simulationWorker = null;
+                t.play();
+            }
+            simulateBtn.setText("Simulate Traffic: " + (simulationWorker != null ? "ON" : "OFF"));
+        });
+
+        // Every frame, draw whatever changed in the graph; a new simulation sample also clears highlights,
+        // unless they show an emergency still under way
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (latestSample.getAndSet(null) != null && activeEmergencies.isEmpty()) updateRoadColors();
+                else roadCanvas.refresh();
+            }
+        }.start();
+    }
+
+    // Runs the headless simulation on a background thread at 300x real time, feeding it random trips;
+    // if it fails, onFailure gets the worker on the FX thread
+    private Thread startSimulation(Consumer<Thread> onFailure) {
+        int[] ids = graph.getIntersections();
+        TrafficSimulation sim = new TrafficSimulation(graph);
+        sim.setSampleInterval(30);
+        sim.addObserver(latestSample::set);
+        Thread worker = new Thread(() -> {
+            Random rand = new Random();
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    long now = sim.getTime();
+                    // Top up to a bounded number of trips in flight, so a long run stays the same size
+                    for (int i = 0; i < 20 && ids.length > 0 && sim.getPendingTrips() < MAX_SIMULATED_TRIPS; i++) {
+                        sim.addVehicle(ids[rand.nextInt(ids.length)], ids[rand.nextInt(ids.length)], now + rand.nextInt(30));
+                    }
+                    sim.runUntil(now + 30);
+                    Thread.sleep(100);
+                }
+            } catch (InterruptedException ex) {
+                // Turned off
+            } catch (RuntimeException ex) {
+                System.err.println("Traffic simulation stopped: " + ex);
+                ex.printStackTrace();
+                Thread failed = Thread.currentThread();
+                Platform.runLater(() -> {
+                    travelTimeLabel.setText("Simulation stopped: " + ex.getMessage());
+                    onFailure.accept(failed);
+                });
+            }
+        }, "traffic-simulation");
+        worker.setDaemon(true);
+        worker.start();
+        return worker;
     }
 
     private void placeIntersectionsAndRoads() {
@@ -303,195 +368,69 @@ public class MainGUI extends Application {
             }
         }
 
-        // Load into graph structure
+        // Load into graph structure; the canvas draws it on the next frame
         graph.loadCityLayout(positions, connections);
-
-        // First add roads
-        for (int[] conn : connections) {
-            addRoad(conn[0], conn[1], conn[2], positions);
-        }
-
-        // Then add nodes (so they appear on top)
-        for (Map.Entry<Integer, double[]> entry : positions.entrySet()) {
-            addIntersection(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
-        }
-    }
-
-    private void addIntersection(int id, double x, double y) {
-        Circle node = new Circle(x, y, 8, Color.BLUE);
-        node.setStroke(Color.BLACK);
-        node.setStrokeWidth(1);
-
-        Tooltip.install(node, new Tooltip("Intersection " + id));
-
-        node.setOnMouseEntered(e -> {
-            node.setScaleX(1.3);
-            node.setScaleY(1.3);
-            node.setEffect(new Glow(0.5));
-        });
-
-        node.setOnMouseExited(e -> {
-            node.setScaleX(1.0);
-            node.setScaleY(1.0);
-            node.setEffect(null);
-        });
-
-        node.setOnMouseClicked(e -> handleNodeClick(id, e));
-
-        nodes.put(id, node);
-        graphPane.getChildren().add(node);
-        node.toFront(); // Ensure node appears above roads
     }
 
     // Node click handler for selecting start and end nodes for pathfinding or road editing
-    private void handleNodeClick(int nodeId, MouseEvent event) {
+    private void handleNodeClick(int nodeId) {
         if (placingMode[0]) return;
+        routeService.cancel(); // a route for the old selection is no longer wanted
 
         if (startNode == null) {
-            startNode = nodeId;
-            Circle node = nodes.get(startNode);
-            node.setFill(Color.ORANGE); // Highlight fill
-            node.setStroke(Color.BLACK);
-            node.setStrokeWidth(3);
-            node.setEffect(new Glow(0.3));
+            startNode = nodeId; // drawn orange
         } else if (endNode == null) {
             if (nodeId == startNode) return;
-            endNode = nodeId;
-            Circle node = nodes.get(endNode);
-            node.setFill(Color.RED); // Highlight fill
-            node.setStroke(Color.BLACK);
-            node.setStrokeWidth(3);
-            node.setEffect(new Glow(0.5));
+            endNode = nodeId;   // drawn red
         } else {
             resetNodeSelection(); // reset previous
             startNode = nodeId;
-            Circle node = nodes.get(startNode);
-            node.setFill(Color.ORANGE);
-            node.setStroke(Color.BLACK);
-            node.setStrokeWidth(3);
-            node.setEffect(new Glow(0.3));
         }
+        roadCanvas.setSelection(startNode, endNode);
+    }
+
+    // Reports a query that failed instead of leaving "routing…" up; cancelled ones are left alone
+    private Void routingFailed(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (!(cause instanceof CancellationException)) travelTimeLabel.setText("Routing failed: " + cause);
+        return null;
     }
 
     private void resetNodeSelection() {
-        if (startNode != null && nodes.containsKey(startNode)) {
-            Circle node = nodes.get(startNode);
-            node.setFill(Color.BLUE);        // Reset fill
-            node.setStroke(Color.BLACK);     // Reset stroke
-            node.setStrokeWidth(1);          // Reset width
-            node.setEffect(null);            // Remove glow
-        }
-        if (endNode != null && nodes.containsKey(endNode)) {
-            Circle node = nodes.get(endNode);
-            node.setFill(Color.BLUE);
-            node.setStroke(Color.BLACK);
-            node.setStrokeWidth(1);
-            node.setEffect(null);
-        }
+        routeService.cancel();
         startNode = null;
         endNode = null;
+        roadCanvas.setSelection(null, null);
     }
 
-    private void addRoad(int src, int dest, int weight, Map<Integer, double[]> pos) {
-        double[] a = pos.get(src), b = pos.get(dest);
-        Line line = new Line(a[0], a[1], b[0], b[1]);
-        updateRoadColor(line, weight);
-
-        double mx = (a[0] + b[0]) / 2, my = (a[1] + b[1]) / 2;
-        Text label = new Text(mx + 5, my - 5, String.valueOf(weight)); // slight offset
-
-        graphPane.getChildren().addAll(line, label);
-        line.toBack();
-        label.toBack();
-        roads.put(src + "-" + dest, line);
-        roads.put(dest + "-" + src, line);
-        roadLabels.put(src + "-" + dest, label);
-        roadLabels.put(dest + "-" + src, label);
-    }
-
-    private void updateRoadColor(Line road, int w) {
-        if (w <= 8) road.setStroke(Color.GREEN);
-        else if (w <= 15) road.setStroke(Color.YELLOW);
-        else road.setStroke(Color.RED);
-        road.setStrokeWidth(Math.min(6, 1.5 + w / 5.0));
-    }
-
+    // Colors every road by its live weight again, dropping path and comparison highlights
     private void updateRoadColors() {
-        Set<String> seen = new HashSet<>(); // Track which edge we've already updated
-
-        for (String key : roads.keySet()) {
-            String[] pair = key.split("-");
-            int src = Integer.parseInt(pair[0]);
-            int dst = Integer.parseInt(pair[1]);
-
-            // Avoid updating both src-dst and dst-src redundantly
-            String undirectedKey = Math.min(src, dst) + "-" + Math.max(src, dst);
-            if (seen.contains(undirectedKey)) continue;
-            seen.add(undirectedKey);
-
-            graph.getGraph().getOrDefault(src, new ArrayList<>()).stream()
-                .filter(edge -> edge.destination == dst)
-                .findFirst()
-                .ifPresent(edge -> {
-                    int liveWeight = edge.getWeight();
-
-                    // Update visual line color
-                    updateRoadColor(roads.get(key), liveWeight);
-
-                    // Update only ONE label (either key or reverse)
-                    if (roadLabels.containsKey(key)) {
-                        roadLabels.get(key).setText(String.valueOf(liveWeight));
-                    } else if (roadLabels.containsKey(dst + "-" + src)) {
-                        roadLabels.get(dst + "-" + src).setText(String.valueOf(liveWeight));
-                    }
-                });
-        }
+        roadCanvas.clearHighlights();
+        roadCanvas.refresh();
     }
 
     private void removeRoad(int src, int dest) {
         graph.removeRoad(src, dest);
-        String key = src + "-" + dest, rev = dest + "-" + src;
-        if (roads.containsKey(key)) {
-            graphPane.getChildren().removeAll(roads.get(key), roadLabels.get(key));
-            roads.remove(key);
-            roads.remove(rev);
-            roadLabels.remove(key);
-            roadLabels.remove(rev);
-        }
     }
 
-    private void highlightShortestPath(int s, int e) {
-        List<Integer> path = graph.findShortestPath(s, e);
+    // Runs on the FX thread once the route service has found the path
+    private void highlightShortestPath(List<Integer> path) {
         if (path.isEmpty()) {
             travelTimeLabel.setText("Total Travel Time: 0 (no path found)");
         } else {
             int totalTime = 0;
 
-            roads.values().forEach(r -> {
-                r.setStroke(Color.LIGHTGRAY);
-                r.setStrokeWidth(2);
-            });
+            roadCanvas.dimRoads(Color.LIGHTGRAY);
 
             for (int i = 0; i < path.size() - 1; i++) {
                 int from = path.get(i);
                 int to = path.get(i + 1);
 
-                String key1 = from + "-" + to;
-                String key2 = to + "-" + from;
-                Line r = roads.getOrDefault(key1, roads.get(key2));
-                if (r != null) {
-                    r.setStroke(Color.DEEPSKYBLUE);
-                    r.setStrokeWidth(4);
-                }
+                roadCanvas.highlightRoad(from, to, Color.DEEPSKYBLUE);
 
                 int liveWeight = graph.getLiveWeightBetween(from, to);
                 totalTime += liveWeight;
 
-                String labelKey = roadLabels.containsKey(key1) ? key1 : key2;
-                if (roadLabels.containsKey(labelKey)) {
-                    roadLabels.get(labelKey).setText(String.valueOf(liveWeight));
-                }
-
                 System.out.println("Edge from " + from + " to " + to + " has live weight: " + liveWeight);
             }
 
@@ -499,76 +438,73 @@ public class MainGUI extends Application {
         }
     }
 
-    private void simulateEmergency(int s, int e) {
-       List<Integer> path = graph.findShortestPath(s, e);
+    // Draws the alternatives in their own colors, the cheapest last so it stays on top where they share roads
+    private void highlightAlternatives(AlternativeRoutes routes) {
+        if (routes.size() == 0) {
+            travelTimeLabel.setText("Total Travel Time: 0 (no path found)");
+            return;
+        }
+        roadCanvas.dimRoads(Color.LIGHTGRAY);
+        StringBuilder times = new StringBuilder("Travel Times:");
+        for (int i = routes.size() - 1; i >= 0; i--) {
+            List<Integer> path = routes.getRoute(i);
+            for (int j = 0; j < path.size() - 1; j++) {
+                roadCanvas.highlightRoad(path.get(j), path.get(j + 1), ALTERNATIVE_COLORS[i]);
+            }
+        }
+        for (int i = 0; i < routes.size(); i++) times.append(i == 0 ? " " : " / ").append(routes.getCost(i));
+        travelTimeLabel.setText(times.toString());
+    }
+
+    private void simulateEmergency(List<Integer> path) {
        if (path.isEmpty()) {
            travelTimeLabel.setText("Total Travel Time: 0 (no path found)");
            return;
        }
    
-       // === Backup original weights ===
-       Map<String, Integer> originalWeights = new HashMap<>();
+       // === Emergency scenario as an overlay; the shared graph is never modified ===
+       WeightOverlay.Builder scenario = WeightOverlay.builder();
        Set<Integer> pathNodes = new HashSet<>(path);
    
-       int totalTime = 0; // To accumulate travel time
-   
-       // Lower weight for emergency path, and store
+       // Lower weight for emergency path
        for (int i = 0; i < path.size() - 1; i++) {
            int from = path.get(i);
            int to = path.get(i + 1);
-   
-           for (Edge edge : graph.getGraph().get(from)) {
-               if (edge.destination == to) {
-                   String key = from + "-" + to;
-                   if (!originalWeights.containsKey(key))
-                       originalWeights.put(key, edge.baseWeight);
-                   edge.baseWeight = Math.max(5, edge.baseWeight - 10);
-               }
-           }
-   
-           for (Edge edge : graph.getGraph().get(to)) {
-               if (edge.destination == from) {
-                   String key = to + "-" + from;
-                   if (!originalWeights.containsKey(key))
-                       originalWeights.put(key, edge.baseWeight);
-                   edge.baseWeight = Math.max(5, edge.baseWeight - 10);
-               }
-           }
-   
-           totalTime += graph.getLiveWeightBetween(from, to); // Live weight for this edge
+           lowerForEmergency(scenario, from, to);
+           lowerForEmergency(scenario, to, from);
        }
    
-       // Display updated total time
-       travelTimeLabel.setText("Total Travel Time (Emergency): " + totalTime);
-   
        // Increase weight (congestion) on roads adjacent to path nodes
        for (int node : pathNodes) {
-           for (Edge edge : graph.getGraph().get(node)) {
-               int neighbor = edge.destination;
+           for (int neighbor : graph.getNeighbors(node)) {
                if (!pathNodes.contains(neighbor)) {
-                   String key = node + "-" + neighbor;
-                   if (!originalWeights.containsKey(key)) {
-                       originalWeights.put(key, edge.baseWeight);
-                       edge.baseWeight += 5; // simulate detoured traffic
-                   }
+                   int weight = graph.getBaseWeight(node, neighbor);
+                   if (weight > 0) scenario.scale(node, neighbor, (weight + 5) / (double) weight); // simulate detoured traffic
                }
            }
        }
+       WeightOverlay emergency = scenario.build();
    
-       updateRoadColors();
+       int totalTime = 0; // To accumulate travel time
+       for (int i = 0; i < path.size() - 1; i++) {
+           totalTime += Math.max(0, graph.getLiveWeightBetween(path.get(i), path.get(i + 1), emergency));
+       }
    
+       // Display updated total time
+       travelTimeLabel.setText("Total Travel Time (Emergency): " + totalTime);
+   
+       // Show the scenario's congestion until the ambulance arrives
+       activeEmergencies.put(emergency, path);
+       showEmergencies();
+
        // === Animate Ambulance ===
        Path p = new Path();
-       double[] start = {nodes.get(path.get(0)).getCenterX(), nodes.get(path.get(0)).getCenterY()};
+       double[] start = graph.getPosition(path.get(0));
        p.getElements().add(new MoveTo(start[0], start[1]));
    
        for (int i = 1; i < path.size(); i++) {
-           Circle n = nodes.get(path.get(i));
-           p.getElements().add(new LineTo(n.getCenterX(), n.getCenterY()));
-   
-           String k = path.get(i - 1) + "-" + path.get(i);
-           if (roads.containsKey(k))
-               roads.get(k).setStroke(Color.FIREBRICK);
+           double[] n = graph.getPosition(path.get(i));
+           p.getElements().add(new LineTo(n[0], n[1]));
        }
    
        Rectangle ambulance = new Rectangle(20, 12, Color.RED);
@@ -577,31 +513,40 @@ public class MainGUI extends Application {
        ambulance.setStroke(Color.WHITE);
        ambulance.setStrokeWidth(1.5);
        ambulance.setEffect(new Glow(0.7));
-       graphPane.getChildren().add(ambulance);
+       roadCanvas.overlay().getChildren().add(ambulance);
    
        PathTransition anim = new PathTransition(Duration.seconds(5), p, ambulance);
        anim.setOnFinished(ev -> {
-           graphPane.getChildren().remove(ambulance);
-   
-           // === Restore all original weights ===
-           for (Map.Entry<String, Integer> entry : originalWeights.entrySet()) {
-               String[] parts = entry.getKey().split("-");
-               int from = Integer.parseInt(parts[0]);
-               int to = Integer.parseInt(parts[1]);
-               int original = entry.getValue();
-   
-               for (Edge edge : graph.getGraph().get(from)) {
-                   if (edge.destination == to) {
-                       edge.baseWeight = original;
-                   }
-               }
-           }
-   
-           updateRoadColors();
+           roadCanvas.overlay().getChildren().remove(ambulance);
+           activeEmergencies.remove(emergency);
+           showEmergencies();
        });
    
        anim.play();
     }
+
+    // Recolors the roads, then draws each running emergency's scenario and route over them
+    private void showEmergencies() {
+        updateRoadColors();
+        activeEmergencies.forEach((scenario, route) -> {
+            roadCanvas.highlightOverlay(scenario);
+            for (int i = 1; i < route.size(); i++) {
+                roadCanvas.highlightRoad(route.get(i - 1), route.get(i), Color.FIREBRICK, 0);
+            }
+        });
+    }
+
+    // Base weight max(5, w - 10), expressed as a factor so it also applies to the congested live weight
+    private void lowerForEmergency(WeightOverlay.Builder scenario, int from, int to) {
+        int weight = graph.getBaseWeight(from, to);
+        if (weight > 0) scenario.scale(from, to, Math.max(5, weight - 10) / (double) weight);
+    }
+
+    @Override
+    public void stop() {
+        routeService.close();
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -0,0 +1,149 @@
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of the {@link RoutingMetrics} counters. Each part is
+ * read separately, so a snapshot taken under load may be off by the queries
+ * that were in flight while it was taken.
+ */
+public final class MetricsSnapshot {
+    private final Map<RouteMode, Search> searches;
+    private final Latency trafficUpdates;
+    private final Latency redistributions;
+
+    MetricsSnapshot(Map<RouteMode, Search> searches, Latency trafficUpdates, Latency redistributions) {
+        this.searches = Collections.unmodifiableMap(new EnumMap<>(searches));
+        this.trafficUpdates = trafficUpdates;
+        this.redistributions = redistributions;
+    }
+
+    public Search getSearch(RouteMode mode) {
+        return searches.get(mode);
+    }
+
+    public Map<RouteMode, Search> getSearches() {
+        return searches;
+    }
+
+    public Latency getTrafficUpdates() {
+        return trafficUpdates;
+    }
+
+    public Latency getRedistributions() {
+        return redistributions;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<RouteMode, Search> entry : searches.entrySet()) {
+            sb.append(String.format("%-24s %s%n", entry.getKey(), entry.getValue()));
+        }
+        sb.append(String.format("%-24s %s%n", "updateTrafficConditions", trafficUpdates));
+        sb.append(String.format("%-24s %s%n", "redistributeTraffic", redistributions));
+        return sb.toString();
+    }
+
+    /** Duration distribution of one kind of operation. Times are in microseconds. */
+    public static class Latency {
+        private final long count;
+        private final double mean, p50, p90, p99, p999, max;
+
+        Latency(long[] buckets) {
+            long total = 0;
+            double sum = 0;
+            int last = -1;
+            for (int b = 0; b < buckets.length; b++) {
+                if (buckets[b] == 0) continue;
+                total += buckets[b];
+                sum += buckets[b] * LatencyHistogram.midpointOf(b);
+                last = b;
+            }
+            count = total;
+            mean = total == 0 ? 0 : sum / total / 1000;
+            p50 = LatencyHistogram.valueAt(buckets, total, 0.50) / 1000.0;
+            p90 = LatencyHistogram.valueAt(buckets, total, 0.90) / 1000.0;
+            p99 = LatencyHistogram.valueAt(buckets, total, 0.99) / 1000.0;
+            p999 = LatencyHistogram.valueAt(buckets, total, 0.999) / 1000.0;
+            max = last < 0 ? 0 : LatencyHistogram.highestIn(last) / 1000.0;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMicros() {
+            return mean;
+        }
+
+        public double getP50Micros() {
+            return p50;
+        }
+
+        public double getP90Micros() {
+            return p90;
+        }
+
+        public double getP99Micros() {
+            return p99;
+        }
+
+        public double getP999Micros() {
+            return p999;
+        }
+
+        public double getMaxMicros() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("n=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                    count, mean, p50, p90, p99, p999, max);
+        }
+    }
+
+    /**
+     * Latency plus search effort for one route mode. The indexed heap never
+     * holds stale entries, so improvements to queued nodes are counted as
+     * decrease-keys rather than as extra pushes and stale pops.
+     */
+    public static final class Search extends Latency {
+        private final long nodesSettled, edgesRelaxed, heapPushes, decreaseKeys;
+
+        Search(long[] buckets, long nodesSettled, long edgesRelaxed, long heapPushes, long decreaseKeys) {
+            super(buckets);
+            this.nodesSettled = nodesSettled;
+            this.edgesRelaxed = edgesRelaxed;
+            this.heapPushes = heapPushes;
+            this.decreaseKeys = decreaseKeys;
+        }
+
+        public long getNodesSettled() {
+            return nodesSettled;
+        }
+
+        public long getEdgesRelaxed() {
+            return edgesRelaxed;
+        }
+
+        public long getHeapPushes() {
+            return heapPushes;
+        }
+
+        public long getDecreaseKeys() {
+            return decreaseKeys;
+        }
+
+        private double perQuery(long total) {
+            return getCount() == 0 ? 0 : (double) total / getCount();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s settled/q=%.1f relaxed/q=%.1f pushes/q=%.1f decreases/q=%.1f", super.toString(),
+                    perQuery(nodesSettled), perQuery(edgesRelaxed), perQuery(heapPushes), perQuery(decreaseKeys));
+        }
+    }
+}
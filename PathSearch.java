@@ -0,0 +1,312 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Point-to-point shortest path queries over a {@link CsrGraph}. All per-query
+ * state lives in a {@link SearchWorkspace}, so a query allocates nothing but
+ * the path it returns.
+ */
+final class PathSearch {
+    private PathSearch() {
+    }
+
+    /** Plain Dijkstra from s to t (dense indices). Returns the cost, or -1 if t is unreachable. */
+    static int dijkstra(CsrGraph g, int s, int t, SearchWorkspace ws) {
+        return dijkstra(g, null, s, t, ws);
+    }
+
+    /** Dijkstra with the weights seen through {@code ov}; null means the live weights. */
+    static int dijkstra(CsrGraph g, WeightOverlay.Resolved ov, int s, int t, SearchWorkspace ws) {
+        IndexedMinHeap heap = ws.heap;
+        ws.set(s, 0, -1);
+        heap.insertOrDecrease(s, 0);
+        int result = -1, settled = 0, relaxed = 0, improved = 1;
+
+        while (!heap.isEmpty()) {
+            int node = heap.poll();
+            int cost = ws.dist(node);
+            settled++;
+            if (node == t) {
+                result = cost;
+                break;
+            }
+
+            for (int arc = g.offsets[node], end = g.offsets[node + 1]; arc < end; arc++) {
+                int next = g.targets[arc];
+                int w = weight(g, ov, arc);
+                if (w < 0) continue; // closed by the overlay
+                int newDist = cost + w;
+                relaxed++;
+                if (newDist < ws.dist(next)) {
+                    ws.set(next, newDist, node);
+                    heap.insertOrDecrease(next, newDist);
+                    improved++;
+                }
+            }
+        }
+        if (RoutingMetrics.ENABLED) ws.countHeapSearch(settled, relaxed, improved);
+        return result;
+    }
+
+    /**
+     * One-to-many Dijkstra from s that stops as soon as every node with
+     * {@code isTarget[v]} has been settled, or the reachable graph runs out.
+     * Afterwards {@code ws.dist(v)} is final for every target.
+     */
+    static void dijkstraToTargets(CsrGraph g, WeightOverlay.Resolved ov, int s, boolean[] isTarget, int targetCount,
+                                  SearchWorkspace ws) {
+        IndexedMinHeap heap = ws.heap;
+        ws.set(s, 0, -1);
+        heap.insertOrDecrease(s, 0);
+        int remaining = targetCount;
+
+        while (!heap.isEmpty()) {
+            int node = heap.poll();
+            if (isTarget[node] && --remaining == 0) return;
+            int cost = ws.dist(node);
+
+            for (int arc = g.offsets[node], end = g.offsets[node + 1]; arc < end; arc++) {
+                int next = g.targets[arc];
+                int w = weight(g, ov, arc);
+                if (w < 0) continue;
+                int newDist = cost + w;
+                if (newDist < ws.dist(next)) {
+                    ws.set(next, newDist, node);
+                    heap.insertOrDecrease(next, newDist);
+                }
+            }
+        }
+    }
+
+    /**
+     * A* from s to t. The heuristic is the straight-line distance to t times
+     * {@code scale}, a lower bound on cost per unit length, which keeps it
+     * consistent: no node is settled twice and the result matches Dijkstra.
+     * With an overlay the scale must bound the overlaid weights, see
+     * {@link WeightOverlay.Resolved#heuristicScale}.
+     */
+    static int aStar(CsrGraph g, int s, int t, double scale, SearchWorkspace ws) {
+        return aStar(g, null, s, t, scale, ws);
+    }
+
+    static int aStar(CsrGraph g, WeightOverlay.Resolved ov, int s, int t, double scale, SearchWorkspace ws) {
+        if (scale <= 0) return dijkstra(g, ov, s, t, ws);
+        double[] coords = g.coords;
+        double tx = coords[2 * t], ty = coords[2 * t + 1];
+        IndexedMinHeap heap = ws.heap;
+        ws.set(s, 0, -1);
+        heap.insertOrDecrease(s, scale * Math.hypot(coords[2 * s] - tx, coords[2 * s + 1] - ty));
+        int result = -1, settled = 0, relaxed = 0, improved = 1;
+
+        while (!heap.isEmpty()) {
+            int node = heap.poll();
+            int cost = ws.dist(node);
+            settled++;
+            if (node == t) {
+                result = cost;
+                break;
+            }
+
+            for (int arc = g.offsets[node], end = g.offsets[node + 1]; arc < end; arc++) {
+                int next = g.targets[arc];
+                int w = weight(g, ov, arc);
+                if (w < 0) continue; // closed by the overlay
+                int newDist = cost + w;
+                relaxed++;
+                if (newDist < ws.dist(next)) {
+                    ws.set(next, newDist, node);
+                    double h = scale * Math.hypot(coords[2 * next] - tx, coords[2 * next + 1] - ty);
+                    heap.insertOrDecrease(next, newDist + h);
+                    improved++;
+                }
+            }
+        }
+        if (RoutingMetrics.ENABLED) ws.countHeapSearch(settled, relaxed, improved);
+        return result;
+    }
+
+    /**
+     * Time-dependent Dijkstra, or A* with {@code scale > 0}: labels are arrival
+     * times in seconds, starting at {@code departure} at s, and each arc is
+     * charged its travel time at the moment it is entered. Because every
+     * arc's arrival function is FIFO, the first label settled at t is the
+     * earliest arrival. Returns that time, or -1 if t is unreachable.
+     */
+    static int timeDependent(CsrGraph g, int s, int t, int departure, double scale, SearchWorkspace ws) {
+        double[] coords = g.coords;
+        double tx = scale > 0 ? coords[2 * t] : 0, ty = scale > 0 ? coords[2 * t + 1] : 0;
+        IndexedMinHeap heap = ws.heap;
+        ws.set(s, departure, -1);
+        heap.insertOrDecrease(s, departure + (scale > 0 ? scale * Math.hypot(coords[2 * s] - tx, coords[2 * s + 1] - ty) : 0));
+        int result = -1, settled = 0, relaxed = 0, improved = 1;
+
+        while (!heap.isEmpty()) {
+            int node = heap.poll();
+            int time = ws.dist(node);
+            settled++;
+            if (node == t) {
+                result = time;
+                break;
+            }
+
+            for (int arc = g.offsets[node], end = g.offsets[node + 1]; arc < end; arc++) {
+                int next = g.targets[arc];
+                int arrival = g.arrival(arc, time);
+                relaxed++;
+                if (arrival < ws.dist(next)) {
+                    ws.set(next, arrival, node);
+                    double h = scale > 0 ? scale * Math.hypot(coords[2 * next] - tx, coords[2 * next + 1] - ty) : 0;
+                    heap.insertOrDecrease(next, arrival + h);
+                    improved++;
+                }
+            }
+        }
+        if (RoutingMetrics.ENABLED) ws.countHeapSearch(settled, relaxed, improved);
+        return result;
+    }
+
+    /**
+     * Bidirectional search: forward from s over outgoing arcs and backward from
+     * t over incoming arcs, always expanding the side with the smaller queue key.
+     * With {@code scale > 0} both sides use the average of the two A* potentials,
+     * p(v) = (h_t(v) - h_s(v)) / 2, which keeps reduced costs non-negative in both
+     * directions. The search stops once the two top keys add up to at least the
+     * best s-t cost seen so far; the meeting node is left in {@code fw.meetingNode}.
+     */
+    static int bidirectional(CsrGraph g, int s, int t, double scale,
+                             SearchWorkspace fw, SearchWorkspace bw) {
+        return bidirectional(g, null, s, t, scale, fw, bw);
+    }
+
+    static int bidirectional(CsrGraph g, WeightOverlay.Resolved ov, int s, int t, double scale,
+                             SearchWorkspace fw, SearchWorkspace bw) {
+        if (s == t) {
+            fw.set(s, 0, -1);
+            fw.meetingNode = s;
+            return 0;
+        }
+        IndexedMinHeap forward = fw.heap, backward = bw.heap;
+        fw.set(s, 0, -1);
+        bw.set(t, 0, -1);
+        forward.insertOrDecrease(s, potential(g, s, s, t, scale));
+        backward.insertOrDecrease(t, -potential(g, t, s, t, scale));
+        long best = Long.MAX_VALUE;
+        int meeting = -1;
+        int settledF = 0, relaxedF = 0, improvedF = 1, settledB = 0, relaxedB = 0, improvedB = 1;
+
+        while (true) {
+            double topForward = forward.isEmpty() ? Double.POSITIVE_INFINITY : forward.peekKey();
+            double topBackward = backward.isEmpty() ? Double.POSITIVE_INFINITY : backward.peekKey();
+            if (topForward + topBackward >= best) break;
+
+            if (topForward <= topBackward) {
+                int u = forward.poll();
+                int du = fw.dist(u);
+                settledF++;
+                for (int arc = g.offsets[u], end = g.offsets[u + 1]; arc < end; arc++) {
+                    int v = g.targets[arc];
+                    int w = weight(g, ov, arc);
+                    if (w < 0) continue;
+                    int nd = du + w;
+                    relaxedF++;
+                    if (nd < fw.dist(v)) {
+                        fw.set(v, nd, u);
+                        forward.insertOrDecrease(v, nd + potential(g, v, s, t, scale));
+                        improvedF++;
+                    }
+                    if (bw.reached(v) && (long) nd + bw.dist(v) < best) {
+                        best = (long) nd + bw.dist(v);
+                        meeting = v;
+                    }
+                }
+            } else {
+                int v = backward.poll();
+                int dv = bw.dist(v);
+                settledB++;
+                for (int slot = g.inOffsets[v], end = g.inOffsets[v + 1]; slot < end; slot++) {
+                    int u = g.inSources[slot];
+                    int w = weight(g, ov, g.inArcs[slot]);
+                    if (w < 0) continue;
+                    int nd = dv + w;
+                    relaxedB++;
+                    if (nd < bw.dist(u)) {
+                        bw.set(u, nd, v);
+                        backward.insertOrDecrease(u, nd - potential(g, u, s, t, scale));
+                        improvedB++;
+                    }
+                    if (fw.reached(u) && (long) nd + fw.dist(u) < best) {
+                        best = (long) nd + fw.dist(u);
+                        meeting = u;
+                    }
+                }
+            }
+        }
+        if (RoutingMetrics.ENABLED) {
+            fw.countHeapSearch(settledF, relaxedF, improvedF);
+            bw.countHeapSearch(settledB, relaxedB, improvedB);
+        }
+        if (meeting < 0) return -1;
+
+        // Splice the backward half onto the forward predecessor chain
+        for (int at = meeting; at != t; ) {
+            int next = bw.pred(at);
+            fw.set(next, fw.dist(at) + weight(g, ov, g.findArc(at, next)), at);
+            at = next;
+        }
+        fw.meetingNode = meeting;
+        return (int) best;
+    }
+
+    /**
+     * Dijkstra backward from t over the whole graph. Afterwards dist[v] is the
+     * cost from v to t, or {@link SearchWorkspace#UNREACHED}, and next[v] is
+     * the first arc of such a route, -1 at t and where there is none; next
+     * may be null. Both arrays must hold one entry per node.
+     */
+    static void reverseTree(CsrGraph g, int t, int[] dist, int[] next) {
+        Arrays.fill(dist, 0, g.nodeCount, SearchWorkspace.UNREACHED);
+        if (next != null) Arrays.fill(next, 0, g.nodeCount, -1);
+        IndexedMinHeap heap = new IndexedMinHeap();
+        heap.ensureCapacity(g.nodeCount);
+        dist[t] = 0;
+        heap.insertOrDecrease(t, 0);
+        while (!heap.isEmpty()) {
+            int v = heap.poll();
+            for (int i = g.inOffsets[v], end = g.inOffsets[v + 1]; i < end; i++) {
+                int u = g.inSources[i], arc = g.inArcs[i];
+                int d = dist[v] + g.weights[arc];
+                if (d < dist[u]) {
+                    dist[u] = d;
+                    if (next != null) next[u] = arc;
+                    heap.insertOrDecrease(u, d);
+                }
+            }
+        }
+    }
+
+    private static int weight(CsrGraph g, WeightOverlay.Resolved ov, int arc) {
+        return ov == null ? g.weights[arc] : ov.weight(g, arc);
+    }
+
+    // Forward potential of v for the s-t query; the backward side uses its negation
+    private static double potential(CsrGraph g, int v, int s, int t, double scale) {
+        if (scale <= 0) return 0;
+        double[] c = g.coords;
+        double x = c[2 * v], y = c[2 * v + 1];
+        double toTarget = Math.hypot(c[2 * t] - x, c[2 * t + 1] - y);
+        double fromSource = Math.hypot(c[2 * s] - x, c[2 * s + 1] - y);
+        return scale * (toTarget - fromSource) / 2;
+    }
+
+    /** Walks the predecessor chain back from t and returns external IDs in travel order. */
+    static List<Integer> path(CsrGraph g, SearchWorkspace ws, int t) {
+        List<Integer> path = new ArrayList<>();
+        for (int at = t; at != -1; at = ws.pred(at)) {
+            path.add(g.nodeIds[at]);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+}
@@ -0,0 +1,445 @@
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.transform.Affine;
+
+import java.util.Arrays;
+
+/**
+ * Draws the road network onto one {@link Canvas} instead of a scene-graph
+ * node per road and intersection, so a city with 100k roads costs no more
+ * to lay out than an empty window.
+ * <p>
+ * {@link #refresh()} is cheap enough to call every frame: it does nothing
+ * unless the graph published a new snapshot. After a congestion update only
+ * the roads whose color bucket changed are drawn over; a full repaint,
+ * batched into one path per color and culled to the viewport, happens when
+ * the layout, view, highlights or selection change. Drag to pan and scroll
+ * to zoom. Animations go in {@link #overlay()}, which shares the network's
+ * coordinates.
+ */
+final class RoadCanvas extends Region {
+    interface IntersectionHandler {
+        void clicked(int id);
+    }
+
+    interface BackgroundHandler {
+        void clicked(double x, double y);
+    }
+
+    private static final Color BACKGROUND = Color.WHITE;
+    private static final Color[] BUCKET_COLORS = {Color.GREEN, Color.YELLOW, Color.RED};
+    private static final double[] BUCKET_WIDTHS = {2.5, 3.5, 5.5};
+    private static final double HIGHLIGHT_WIDTH = 4;
+    private static final double NODE_RADIUS = 8;
+    private static final double MIN_PIXELS = 1.5;  // roads and intersections never shrink below this on screen
+    private static final double OUTLINE_PIXELS = 4; // intersections smaller than this on screen are drawn as squares
+    private static final int LABEL_LIMIT = 2000;   // weight labels are drawn only with this few roads in view
+    private static final int BATCH = 4096;         // segments stroked per path
+    private static final double DRAG_SLOP = 3;     // pixels a press may move and still count as a click
+    private static final double MIN_SCALE = 1e-3, MAX_SCALE = 50;
+
+    private final Graph graph;
+    private final RoadLayer layer = new RoadLayer();
+    private final Canvas canvas = new Canvas();
+    private final Pane overlay = new Pane();
+    private final Affine view = new Affine();
+    private final Tooltip tooltip = new Tooltip();
+    private double scale = 1, tx, ty;    // screen = network * scale + translation
+    private boolean stale = true;        // a full repaint is due
+    private int visibleRoads;            // roads in view at the last full repaint
+    private Color dimmed;                // color of every road without a highlight while non-null
+    private Color[] highlights = new Color[0]; // road -> highlight color, or null
+    private double[] highlightWidths = new double[0]; // road -> width, 0 for the bucket's width
+    private int selectedStart = -1, selectedEnd = -1; // dense indices, -1 when not selected
+    private Integer startId, endId;
+    private int hovered = -1;
+    private double pressX, pressY, lastX, lastY;
+    private boolean dragging;
+    private IntersectionHandler onIntersectionClicked = id -> { };
+    private BackgroundHandler onBackgroundClicked = (x, y) -> { };
+
+    RoadCanvas(Graph graph) {
+        this.graph = graph;
+        overlay.setMouseTransparent(true);
+        overlay.getTransforms().add(view);
+        getChildren().addAll(canvas, overlay);
+        Rectangle clip = new Rectangle();
+        clip.widthProperty().bind(widthProperty());
+        clip.heightProperty().bind(heightProperty());
+        setClip(clip);
+
+        setOnMousePressed(e -> {
+            pressX = lastX = e.getX();
+            pressY = lastY = e.getY();
+            dragging = false;
+        });
+        setOnMouseDragged(e -> {
+            if (!dragging && Math.hypot(e.getX() - pressX, e.getY() - pressY) < DRAG_SLOP) return;
+            dragging = true;
+            setView(scale, tx + e.getX() - lastX, ty + e.getY() - lastY);
+            lastX = e.getX();
+            lastY = e.getY();
+        });
+        setOnMouseReleased(e -> {
+            if (dragging || e.getButton() != MouseButton.PRIMARY) return;
+            double x = (e.getX() - tx) / scale, y = (e.getY() - ty) / scale;
+            int u = intersectionAt(x, y);
+            if (u >= 0) onIntersectionClicked.clicked(layer.graph().nodeIds[u]);
+            else onBackgroundClicked.clicked(x, y);
+        });
+        setOnScroll(e -> {
+            double factor = Math.pow(1.002, e.getDeltaY());
+            double s = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+            // Keep the point under the cursor where it is
+            setView(s, e.getX() - (e.getX() - tx) * s / scale, e.getY() - (e.getY() - ty) * s / scale);
+        });
+        setOnMouseMoved(e -> {
+            int u = intersectionAt((e.getX() - tx) / scale, (e.getY() - ty) / scale);
+            if (u == hovered) return;
+            hovered = u;
+            if (u < 0) {
+                Tooltip.uninstall(this, tooltip);
+            } else {
+                tooltip.setText("Intersection " + layer.graph().nodeIds[u]);
+                Tooltip.install(this, tooltip);
+            }
+        });
+    }
+
+    void setOnIntersectionClicked(IntersectionHandler handler) {
+        onIntersectionClicked = handler;
+    }
+
+    /** Clicks away from any intersection, in network coordinates. */
+    void setOnBackgroundClicked(BackgroundHandler handler) {
+        onBackgroundClicked = handler;
+    }
+
+    /** Pane for shapes drawn over the network, positioned in network coordinates. */
+    Pane overlay() {
+        return overlay;
+    }
+
+    /** Draws whatever changed in the graph since the last call. */
+    void refresh() {
+        sync();
+        if (stale) repaintAll();
+    }
+
+    private void sync() {
+        RoadLayer.Change change = layer.sync(graph.snapshot());
+        if (change == RoadLayer.Change.LAYOUT) {
+            // Roads are renumbered, so highlights would land on the wrong ones
+            highlights = new Color[layer.roadCount()];
+            highlightWidths = new double[layer.roadCount()];
+            selectedStart = indexOf(startId);
+            selectedEnd = indexOf(endId);
+            hovered = -1;
+            stale = true;
+        } else if (change == RoadLayer.Change.WEIGHTS && !stale) {
+            // Labels show exact weights, so with labels up any change means a repaint
+            if (visibleRoads <= LABEL_LIMIT) stale = true;
+            else repaintDirty();
+        }
+    }
+
+    /** Marks the two selected intersections; either may be null. */
+    void setSelection(Integer start, Integer end) {
+        sync();
+        startId = start;
+        endId = end;
+        selectedStart = indexOf(start);
+        selectedEnd = indexOf(end);
+        stale = true;
+    }
+
+    private int indexOf(Integer id) {
+        return id == null || layer.graph() == null ? -1 : layer.graph().indexOf(id);
+    }
+
+    /** Draws every road without a highlight in one color until {@link #clearHighlights()}. */
+    void dimRoads(Color color) {
+        dimmed = color;
+        stale = true;
+    }
+
+    /** Draws the road between two intersections in a color of its own; width 0 keeps its usual width. */
+    void highlightRoad(int from, int to, Color color, double width) {
+        sync();
+        int road = layer.roadBetween(from, to);
+        if (road < 0) return;
+        highlights[road] = color;
+        highlightWidths[road] = width;
+        stale = true;
+    }
+
+    void highlightRoad(int from, int to, Color color) {
+        highlightRoad(from, to, color, HIGHLIGHT_WIDTH);
+    }
+
+    /** Goes back to coloring every road by its live weight. */
+    void clearHighlights() {
+        if (dimmed == null && Arrays.stream(highlights).allMatch(c -> c == null)) return;
+        dimmed = null;
+        Arrays.fill(highlights, null);
+        Arrays.fill(highlightWidths, 0);
+        stale = true;
+    }
+
+    /**
+     * Colors each road by how its live weight compares with the same road in
+     * {@code before}: dark red if slower or new, dark green if faster, gray if unchanged.
+     */
+    void highlightChangesSince(CsrGraph before) {
+        sync();
+        CsrGraph g = layer.graph();
+        for (int r = 0; r < layer.roadCount(); r++) {
+            int arc = before.arcBetween(g.nodeIds[layer.source(r)], g.nodeIds[layer.target(r)]);
+            int was = arc < 0 ? -1 : before.weights[arc], now = layer.liveWeight(r);
+            highlights[r] = now > was ? Color.DARKRED : now < was ? Color.DARKGREEN : Color.GRAY;
+            highlightWidths[r] = 0;
+        }
+        stale = true;
+    }
+
+    /**
+     * Colors the roads a scenario overlay changes, leaving the rest as they
+     * are: heavy-congestion red where it raises the weight in either
+     * direction, light green where it lowers it, black where it closes it.
+     */
+    void highlightOverlay(WeightOverlay overlay) {
+        sync();
+        CsrGraph g = layer.graph();
+        for (int r = 0; r < layer.roadCount(); r++) {
+            int from = g.nodeIds[layer.source(r)], to = g.nodeIds[layer.target(r)], live = layer.liveWeight(r);
+            int there = overlay.weight(from, to, live), back = overlay.weight(to, from, live);
+            if (there < 0 || back < 0) highlights[r] = Color.BLACK;
+            else if (there > live || back > live) highlights[r] = BUCKET_COLORS[BUCKET_COLORS.length - 1];
+            else if (there < live || back < live) highlights[r] = BUCKET_COLORS[0];
+            else continue;
+            highlightWidths[r] = 0;
+        }
+        stale = true;
+    }
+
+    /**
+     * Colors each road by how many shortest routes use it, from light gray
+     * for none to dark red for the busiest road. The square root spreads out
+     * the many lightly used roads, since a few arterials carry most routes.
+     */
+    void highlightBetweenness(Betweenness scores) {
+        sync();
+        CsrGraph g = layer.graph();
+        double max = scores.roadCount() == 0 ? 0 : scores.getScore(0);
+        for (int r = 0; r < layer.roadCount(); r++) {
+            double score = scores.getRoadScore(g.nodeIds[layer.source(r)], g.nodeIds[layer.target(r)]);
+            highlights[r] = Color.LIGHTGRAY.interpolate(Color.DARKRED, max > 0 && score > 0 ? Math.sqrt(score / max) : 0);
+            highlightWidths[r] = 0;
+        }
+        stale = true;
+    }
+
+    // Dense index of the intersection drawn at (x, y), or -1
+    private int intersectionAt(double x, double y) {
+        CsrGraph g = layer.graph();
+        return g == null ? -1 : g.spatialIndex().nearest(x, y, nodeRadius());
+    }
+
+    private void setView(double scale, double tx, double ty) {
+        this.scale = scale;
+        this.tx = tx;
+        this.ty = ty;
+        view.setToTransform(scale, 0, tx, 0, scale, ty);
+        stale = true;
+        refresh();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        if (canvas.getWidth() != getWidth() || canvas.getHeight() != getHeight()) {
+            canvas.setWidth(getWidth());
+            canvas.setHeight(getHeight());
+            stale = true;
+            refresh();
+        }
+    }
+
+    private double nodeRadius() {
+        return Math.max(NODE_RADIUS, MIN_PIXELS / scale);
+    }
+
+    private double roadWidth(double width) {
+        return Math.max(width, MIN_PIXELS / scale);
+    }
+
+    private void repaintAll() {
+        stale = false;
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setTransform(1, 0, 0, 1, 0, 0);
+        gc.setFill(BACKGROUND);
+        gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        CsrGraph g = layer.graph();
+        if (g == null) return;
+        gc.setTransform(scale, 0, 0, scale, tx, ty);
+        gc.setLineCap(StrokeLineCap.BUTT);
+
+        int[] roads = new int[layer.roadCount()];
+        int visible = 0;
+        for (int r = 0; r < roads.length; r++) {
+            if (inView(g, r)) roads[visible++] = r;
+        }
+        visibleRoads = visible;
+
+        // One path per color rather than one stroke per road
+        if (dimmed != null) {
+            strokeRoads(gc, g, roads, visible, -1, dimmed, roadWidth(2));
+        } else {
+            for (int b = 0; b < BUCKET_COLORS.length; b++) {
+                strokeRoads(gc, g, roads, visible, b, BUCKET_COLORS[b], roadWidth(BUCKET_WIDTHS[b]));
+            }
+        }
+        for (int i = 0; i < visible; i++) {
+            int r = roads[i];
+            if (highlights[r] == null) continue;
+            double width = highlightWidths[r] > 0 ? highlightWidths[r] : BUCKET_WIDTHS[layer.bucket(r)];
+            gc.setStroke(highlights[r]);
+            gc.setLineWidth(roadWidth(width));
+            int u = layer.source(r), v = layer.target(r);
+            gc.strokeLine(g.coords[2 * u], g.coords[2 * u + 1], g.coords[2 * v], g.coords[2 * v + 1]);
+        }
+
+        if (visible <= LABEL_LIMIT) {
+            gc.setFill(Color.BLACK);
+            for (int i = 0; i < visible; i++) {
+                int r = roads[i], u = layer.source(r), v = layer.target(r);
+                double mx = (g.coords[2 * u] + g.coords[2 * v]) / 2, my = (g.coords[2 * u + 1] + g.coords[2 * v + 1]) / 2;
+                gc.fillText(String.valueOf(layer.liveWeight(r)), mx + 5, my - 5); // slight offset
+            }
+        }
+
+        int[] nodes = new int[g.nodeCount];
+        double pad = nodeRadius();
+        int shown = g.spatialIndex().range(-tx / scale - pad, -ty / scale - pad,
+                (canvas.getWidth() - tx) / scale + pad, (canvas.getHeight() - ty) / scale + pad, nodes);
+        drawIntersections(gc, g, nodes, shown);
+    }
+
+    // Whether any of the road is on screen, allowing a node radius so partly visible ends still count
+    private boolean inView(CsrGraph g, int r) {
+        int u = layer.source(r), v = layer.target(r);
+        double x1 = g.coords[2 * u], y1 = g.coords[2 * u + 1], x2 = g.coords[2 * v], y2 = g.coords[2 * v + 1];
+        if (Double.isNaN(x1 + y1 + x2 + y2)) return false; // an end without a position
+        double pad = nodeRadius();
+        return Math.max(x1, x2) >= -tx / scale - pad && Math.min(x1, x2) <= (canvas.getWidth() - tx) / scale + pad
+                && Math.max(y1, y2) >= -ty / scale - pad && Math.min(y1, y2) <= (canvas.getHeight() - ty) / scale + pad;
+    }
+
+    // Strokes the listed roads of one bucket (-1 for all) that carry no highlight, in batches
+    private void strokeRoads(GraphicsContext gc, CsrGraph g, int[] roads, int count, int bucket,
+                             Color color, double width) {
+        gc.setStroke(color);
+        gc.setLineWidth(width);
+        gc.beginPath();
+        int batched = 0;
+        for (int i = 0; i < count; i++) {
+            int r = roads[i];
+            if (highlights[r] != null || (bucket >= 0 && layer.bucket(r) != bucket)) continue;
+            int u = layer.source(r), v = layer.target(r);
+            gc.moveTo(g.coords[2 * u], g.coords[2 * u + 1]);
+            gc.lineTo(g.coords[2 * v], g.coords[2 * v + 1]);
+            if (++batched == BATCH) {
+                gc.stroke();
+                gc.beginPath();
+                batched = 0;
+            }
+        }
+        if (batched > 0) gc.stroke();
+    }
+
+    /**
+     * Draws over the roads that changed bucket since the last frame: they are
+     * wiped with the background, slightly wider than any road, and drawn
+     * again, and the intersections at their ends are redrawn over the wiped
+     * corners. Falls back to a full repaint when that would be cheaper.
+     */
+    private void repaintDirty() {
+        if (dimmed != null) return; // dimmed roads all look alike whatever their weight
+        CsrGraph g = layer.graph();
+        int[] roads = new int[layer.dirtyCount()];
+        int count = 0;
+        for (int i = 0; i < roads.length; i++) {
+            int r = layer.dirtyRoad(i);
+            if (highlights[r] == null && inView(g, r)) roads[count++] = r;
+        }
+        if (count == 0) return;
+        if (count > visibleRoads / 2) { // each dirty road is drawn twice
+            repaintAll();
+            return;
+        }
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setTransform(scale, 0, 0, scale, tx, ty);
+        gc.setLineCap(StrokeLineCap.BUTT);
+        strokeRoads(gc, g, roads, count, -1, BACKGROUND, roadWidth(BUCKET_WIDTHS[RoadLayer.HEAVY]) + 1 / scale);
+        for (int b = 0; b < BUCKET_COLORS.length; b++) {
+            strokeRoads(gc, g, roads, count, b, BUCKET_COLORS[b], roadWidth(BUCKET_WIDTHS[b]));
+        }
+        int[] ends = new int[2 * count];
+        int n = 0;
+        boolean[] listed = new boolean[g.nodeCount];
+        for (int i = 0; i < count; i++) {
+            int u = layer.source(roads[i]), v = layer.target(roads[i]);
+            if (!listed[u]) listed[ends[n++] = u] = true;
+            if (!listed[v]) listed[ends[n++] = v] = true;
+        }
+        drawIntersections(gc, g, ends, n);
+    }
+
+    // Draws the listed intersections, batched into paths like the roads; the selected two go last
+    private void drawIntersections(GraphicsContext gc, CsrGraph g, int[] nodes, int count) {
+        double radius = nodeRadius();
+        // Zoomed out, plain intersections become unoutlined squares, which are far cheaper to fill than circles
+        boolean outlined = radius * scale >= OUTLINE_PIXELS;
+        double outline = Math.min(1, radius / NODE_RADIUS);
+        gc.setFill(Color.BLUE);
+        gc.setStroke(Color.BLACK);
+        gc.setLineWidth(outline);
+        gc.beginPath();
+        int batched = 0;
+        for (int i = 0; i < count; i++) {
+            int u = nodes[i];
+            if (u == selectedStart || u == selectedEnd) continue;
+            double x = g.coords[2 * u], y = g.coords[2 * u + 1];
+            if (outlined) {
+                gc.moveTo(x + radius, y);
+                gc.arc(x, y, radius, radius, 0, 360);
+            } else {
+                gc.rect(x - radius, y - radius, 2 * radius, 2 * radius);
+            }
+            if (++batched == BATCH) {
+                gc.fill();
+                if (outlined) gc.stroke();
+                gc.beginPath();
+                batched = 0;
+            }
+        }
+        if (batched > 0) {
+            gc.fill();
+            if (outlined) gc.stroke();
+        }
+        gc.setLineWidth(3 * outline);
+        for (int u : new int[]{selectedStart, selectedEnd}) {
+            if (u < 0) continue;
+            double x = g.coords[2 * u], y = g.coords[2 * u + 1];
+            gc.setFill(u == selectedStart ? Color.ORANGE : Color.RED);
+            gc.fillOval(x - radius, y - radius, 2 * radius, 2 * radius);
+            gc.strokeOval(x - radius, y - radius, 2 * radius, 2 * radius);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import java.util.Arrays;
+
+/**
+ * Render model for drawing the network: one entry per road, with two-way
+ * roads drawn once, and the congestion bucket each road was last drawn in.
+ * <p>
+ * {@link #sync} compares the graph's newest snapshot with the one last drawn.
+ * Snapshots share their arrays when nothing changed, so an idle frame costs a
+ * reference comparison, and a congestion tick costs one pass over the live
+ * weights that collects just the roads whose bucket moved.
+ */
+final class RoadLayer {
+    enum Change {
+        NONE,     // nothing to redraw
+        WEIGHTS,  // same roads in the same places; the dirty roads changed bucket
+        LAYOUT    // roads or positions changed; redraw everything
+    }
+
+    static final byte LIGHT = 0, MODERATE = 1, HEAVY = 2;
+
+    private CsrGraph graph;  // snapshot last synced; null before the first sync
+    private int roadCount;
+    private int[] roadArcs = new int[0];   // road -> representative arc
+    private int[] roadSources = new int[0]; // road -> dense index of the arc's source
+    private int[] arcRoads = new int[0];   // arc -> road, for both directions of a two-way road
+    private byte[] buckets = new byte[0];
+    private int[] dirty = new int[16];
+    private int dirtyCount;
+
+    /** Catches up with {@code g}, reporting what has to be redrawn since the previous call. */
+    Change sync(CsrGraph g) {
+        CsrGraph last = graph;
+        graph = g;
+        dirtyCount = 0;
+        if (last == g) return Change.NONE;
+        if (last == null || last.targets != g.targets || last.coords != g.coords) {
+            rebuild(g);
+            return Change.LAYOUT;
+        }
+        if (last.weights == g.weights) return Change.NONE;
+        int[] weights = g.weights, lastWeights = last.weights;
+        for (int r = 0; r < roadCount; r++) {
+            int arc = roadArcs[r];
+            if (weights[arc] == lastWeights[arc]) continue;
+            byte bucket = bucketOf(weights[arc]);
+            if (bucket != buckets[r]) {
+                buckets[r] = bucket;
+                if (dirtyCount == dirty.length) dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+                dirty[dirtyCount++] = r;
+            }
+        }
+        return Change.WEIGHTS;
+    }
+
+    private void rebuild(CsrGraph g) {
+        int m = g.arcCount();
+        arcRoads = new int[m];
+        roadArcs = new int[m];
+        roadSources = new int[m];
+        int count = 0;
+        for (int u = 0; u < g.nodeCount; u++) {
+            for (int a = g.offsets[u]; a < g.offsets[u + 1]; a++) {
+                int reverse = g.reverseArcs[a];
+                if (reverse >= 0 && g.targets[a] < u) continue; // drawn from the other end
+                roadArcs[count] = a;
+                roadSources[count] = u;
+                arcRoads[a] = count;
+                if (reverse >= 0) arcRoads[reverse] = count;
+                count++;
+            }
+        }
+        roadCount = count;
+        buckets = new byte[count];
+        for (int r = 0; r < count; r++) buckets[r] = bucketOf(g.weights[roadArcs[r]]);
+    }
+
+    // Same thresholds the road colors have always used
+    static byte bucketOf(int weight) {
+        if (weight <= 8) return LIGHT;
+        if (weight <= 15) return MODERATE;
+        return HEAVY;
+    }
+
+    CsrGraph graph() {
+        return graph;
+    }
+
+    int roadCount() {
+        return roadCount;
+    }
+
+    int arc(int road) {
+        return roadArcs[road];
+    }
+
+    // Dense indices of the road's ends
+    int source(int road) {
+        return roadSources[road];
+    }
+
+    int target(int road) {
+        return graph.targets[roadArcs[road]];
+    }
+
+    int bucket(int road) {
+        return buckets[road];
+    }
+
+    int liveWeight(int road) {
+        return graph.weights[roadArcs[road]];
+    }
+
+    /** Road between two intersection IDs, in either direction, or -1. */
+    int roadBetween(int fromId, int toId) {
+        int arc = graph == null ? -1 : graph.arcBetween(fromId, toId);
+        return arc < 0 ? -1 : arcRoads[arc];
+    }
+
+    int dirtyCount() {
+        return dirtyCount;
+    }
+
+    int dirtyRoad(int i) {
+        return dirty[i];
+    }
+}
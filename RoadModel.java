@@ -0,0 +1,10 @@
+/**
+ * A {@link CongestionModel} that reads per-road data keyed by intersection
+ * IDs. The arc numbers handed to {@link #factor} only mean something for one
+ * snapshot, so {@link CongestionEngine} resolves the model against the
+ * snapshot it steps before the tick.
+ */
+interface RoadModel extends CongestionModel {
+    /** This model for the arcs of {@code g}, taken once per tick before any {@link #factor} call. */
+    CongestionModel on(CsrGraph g);
+}
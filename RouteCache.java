@@ -0,0 +1,183 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of routes in front of a {@link Graph}, keyed on
+ * (start, end, mode). A cached route outlives graph updates as long as the
+ * topology is unchanged, no live weight anywhere has gone down, and every
+ * road on the route still has the weight it was computed with; the first
+ * lookup that finds otherwise drops it. A congestion tick almost always
+ * lowers some weight and so retires everything, while an edit that only
+ * slows down roads off a route keeps it.
+ */
+public final class RouteCache {
+    private final Graph graph;
+    private final int capacity;
+    private final LinkedHashMap<Key, Route> routes; // access-ordered; guarded by itself
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public RouteCache(Graph graph, int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.graph = graph;
+        this.capacity = capacity;
+        this.routes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Route> eldest) {
+                if (size() <= RouteCache.this.capacity) return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    public List<Integer> findShortestPath(int start, int end) {
+        return findShortestPath(start, end, RouteMode.DIJKSTRA);
+    }
+
+    public List<Integer> findShortestPath(int start, int end, RouteMode mode) {
+        return route(start, end, mode).getPath();
+    }
+
+    /** The cached route if it is still shortest on the current graph, otherwise a freshly computed one. */
+    public Route route(int start, int end, RouteMode mode) {
+        CsrGraph g = graph.snapshot();
+        Key key = new Key(start, end, mode);
+        Route cached;
+        synchronized (routes) {
+            cached = routes.get(key);
+        }
+        if (cached != null) {
+            if (cached.validOn(g)) {
+                hits.increment();
+                return cached;
+            }
+            invalidations.increment();
+            synchronized (routes) {
+                routes.remove(key, cached);
+            }
+        }
+        misses.increment();
+        // Searched outside the lock so concurrent misses don't queue behind each other
+        Route route = new Route(g, graph.findShortestPath(g, start, end, mode));
+        synchronized (routes) {
+            routes.put(key, route);
+        }
+        return route;
+    }
+
+    public void clear() {
+        synchronized (routes) {
+            routes.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (routes) {
+            return routes.size();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** Lookups that found an entry but had to drop it because the graph changed under it. */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RouteCache[size=%d/%d hits=%d misses=%d evictions=%d invalidations=%d]",
+                size(), capacity, getHits(), getMisses(), getEvictions(), getInvalidations());
+    }
+
+    /** A path with its travel time, and enough of the graph version it came from to revalidate it. */
+    public static final class Route {
+        public static final int UNREACHABLE = -1;
+
+        private final List<Integer> path;
+        private final int cost;
+        private final long version;
+        private final int[] topology;   // targets array of the snapshot, compared by identity
+        private final int[] arcs;
+        private final int[] arcWeights;
+
+        private Route(CsrGraph g, List<Integer> path) {
+            this.path = Collections.unmodifiableList(path);
+            this.version = g.version;
+            this.topology = g.targets;
+            int hops = Math.max(0, path.size() - 1);
+            this.arcs = new int[hops];
+            this.arcWeights = new int[hops];
+            int total = 0;
+            for (int i = 0; i < hops; i++) {
+                arcs[i] = g.arcBetween(path.get(i), path.get(i + 1));
+                arcWeights[i] = g.weight(arcs[i]);
+                total += arcWeights[i];
+            }
+            this.cost = path.isEmpty() ? UNREACHABLE : total;
+        }
+
+        public List<Integer> getPath() {
+            return path;
+        }
+
+        /** Total live travel time along the path when it was computed, or {@link #UNREACHABLE}. */
+        public int getCost() {
+            return cost;
+        }
+
+        boolean validOn(CsrGraph g) {
+            if (g.version == version) return true;
+            if (g.targets != topology) return false;
+            if (arcs.length == 0) return true; // reachability depends on topology alone
+            if (g.decreaseEpoch > version) return false;
+            for (int i = 0; i < arcs.length; i++) {
+                if (g.weight(arcs[i]) != arcWeights[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class Key {
+        final int start, end;
+        final RouteMode mode;
+
+        Key(int start, int end, RouteMode mode) {
+            this.start = start;
+            this.end = end;
+            this.mode = mode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return start == k.start && end == k.end && mode == k.mode;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * start + end) * 31 + mode.ordinal();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Search strategy used by {@link Graph#findShortestPath(int, int, RouteMode)}.
+ * Every mode returns a shortest path; they differ only in how much of the
+ * graph they explore to find it.
+ */
+public enum RouteMode {
+    /** Plain Dijkstra from the start intersection. */
+    DIJKSTRA,
+    /** A* guided by straight-line distance to the destination. */
+    A_STAR,
+    /** Dijkstra run from both ends at once; suited to long point-to-point routes. */
+    BIDIRECTIONAL,
+    /** Bidirectional search with A* potentials on both sides. */
+    BIDIRECTIONAL_A_STAR,
+    /** Upward search in the contraction hierarchy; built on first use. */
+    CONTRACTION_HIERARCHY
+}
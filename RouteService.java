@@ -0,0 +1,97 @@
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs route queries off the calling thread, for callers such as the GUI that
+ * must never block on a search. Queries go through a {@link RouteCache} on a
+ * fixed pool of daemon threads and complete their futures on a delivery
+ * executor, e.g. {@code Platform::runLater}, so dependent actions run there.
+ * <p>
+ * Only the latest query matters: submitting one cancels the one before it,
+ * and a cancelled query that has not started yet never runs, so a burst of
+ * clicks costs one search. A search that is already running is not
+ * interrupted, but its result is dropped.
+ */
+public final class RouteService implements AutoCloseable {
+    private final RouteCache cache;
+    private final Executor delivery;
+    private final ExecutorService workers;
+    private CompletableFuture<?> latest; // guarded by this
+
+    public RouteService(RouteCache cache, int threads, Executor delivery) {
+        if (threads <= 0) throw new IllegalArgumentException("threads must be positive: " + threads);
+        this.cache = cache;
+        this.delivery = delivery;
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread worker = new Thread(task, "route-service-" + count.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        });
+    }
+
+    public CompletableFuture<List<Integer>> findShortestPath(int start, int end) {
+        return findShortestPath(start, end, RouteMode.DIJKSTRA);
+    }
+
+    /**
+     * Queues a query, superseding any earlier one. The future completes on the
+     * delivery executor with the path, empty if there is none, unless it is
+     * cancelled first by a newer query or {@link #cancel()}, or exceptionally
+     * if the search throws.
+     */
+    public CompletableFuture<List<Integer>> findShortestPath(int start, int end, RouteMode mode) {
+        return submit(() -> cache.findShortestPath(start, end, mode));
+    }
+
+    /**
+     * Queues any other query on the graph, such as alternative routes, under
+     * the same rules: it supersedes the pending query of either kind and is
+     * superseded by the next one.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> query) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<?> previous;
+        synchronized (this) {
+            previous = latest;
+            latest = future;
+        }
+        if (previous != null) previous.cancel(false);
+        workers.execute(() -> {
+            if (future.isDone()) return; // superseded while queued
+            T result;
+            try {
+                result = query.get();
+            } catch (Throwable e) {
+                // Errors too, so the caller never waits forever; the worker then dies of them
+                delivery.execute(() -> future.completeExceptionally(e));
+                if (e instanceof Error) throw (Error) e;
+                return;
+            }
+            delivery.execute(() -> future.complete(result)); // a no-op if cancelled meanwhile
+        });
+        return future;
+    }
+
+    /** Cancels the pending query, if any; its future never delivers a result. */
+    public void cancel() {
+        CompletableFuture<?> previous;
+        synchronized (this) {
+            previous = latest;
+            latest = null;
+        }
+        if (previous != null) previous.cancel(false);
+    }
+
+    /** Cancels the pending query and stops the workers. */
+    @Override
+    public void close() {
+        cancel();
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Keeps the routes of vehicles already under way current as traffic changes,
+ * without planning them again from scratch. Each tracked trip holds a
+ * {@link DynamicRoute}; {@link #refresh} compares the graph's newest snapshot
+ * with the one the routes last saw, once for all of them, and hands each
+ * route the changed roads. A route whose searched region no changed road
+ * touches costs nothing, and the rest repair only the part of their search
+ * that the changes affect, so many vehicles can be rerouted every tick.
+ * <p>
+ * Topology edits, or congestion that makes some road cheaper than free flow,
+ * invalidate the searches, and a network-wide congestion tick changes too
+ * much for repair to pay; routes are then planned again on that refresh.
+ * A tracker is driven by one thread at a time; refreshes repair routes in
+ * parallel on the given pool.
+ */
+public final class RouteTracker {
+    private static final int PARALLEL_THRESHOLD = 64;
+    private static final int REPLAN_FRACTION = 8; // replan outright once 1/8 of the roads change in one refresh
+
+    private final Graph graph;
+    private CsrGraph current;     // snapshot every route reflects
+    private double scale;         // heuristic scale the routes were planned with
+    private DynamicRoute[] routes = new DynamicRoute[16]; // by ID; null once released
+    private int[] destinations = new int[16];             // external IDs, for replanning
+    private int count;
+    private int[] freeIds = new int[16]; // released IDs, handed to the next trips
+    private int freeCount;
+    private int[] changedArcs = new int[0], changedSources = new int[0];
+
+    public RouteTracker(Graph graph) {
+        this.graph = graph;
+        this.current = graph.snapshot();
+        this.scale = scaleFor(current);
+    }
+
+    // A lower bound on cost per unit length that survives congestion ticks: factors are normally at least 1
+    private static double scaleFor(CsrGraph g) {
+        return Math.min(g.heuristicScale(), g.freeFlowScale());
+    }
+
+    /** Starts tracking a trip and returns its ID, or -1 if either intersection is unknown. */
+    public int track(int from, int to) {
+        int s = current.indexOf(from), t = current.indexOf(to);
+        if (s < 0 || t < 0) return -1;
+        if (freeCount == 0 && count == routes.length) {
+            routes = Arrays.copyOf(routes, count * 2);
+            destinations = Arrays.copyOf(destinations, count * 2);
+        }
+        int id = freeCount > 0 ? freeIds[--freeCount] : count++;
+        routes[id] = new DynamicRoute(current, s, t, scale);
+        destinations[id] = to;
+        return id;
+    }
+
+    /**
+     * Stops tracking a trip, typically on arrival; its ID may go to the next
+     * trip. A trip already released, by a refresh for instance, is ignored.
+     */
+    public void release(int id) {
+        if (id < 0 || id >= count || routes[id] == null) return;
+        routes[id] = null;
+        if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        freeIds[freeCount++] = id;
+    }
+
+    /** Tells the tracker the vehicle has reached {@code node}, whether or not it is on the route. */
+    public void advance(int id, int node) {
+        int u = current.indexOf(node);
+        if (u < 0) throw new IllegalArgumentException("Unknown intersection " + node);
+        route(id).moveTo(u);
+    }
+
+    /** The remaining route as intersection IDs from the vehicle's position, or empty if unreachable. */
+    public List<Integer> getRoute(int id) {
+        DynamicRoute route = route(id);
+        int[] arcs = route.arcs();
+        if (arcs == null) return Collections.emptyList();
+        List<Integer> path = new ArrayList<>(arcs.length + 1);
+        path.add(current.nodeIds[route.start()]);
+        for (int arc : arcs) path.add(current.nodeIds[current.targets[arc]]);
+        return path;
+    }
+
+    /** Travel time from the vehicle's position to its destination, or -1 if unreachable. */
+    public int getRemainingCost(int id) {
+        return route(id).cost();
+    }
+
+    public int getTrackedCount() {
+        return count - freeCount;
+    }
+
+    public int refresh() {
+        return refresh(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Brings every route up to date with the graph's newest snapshot and
+     * returns how many of them the changes touched. Their remaining cost and
+     * route may have changed; the others are exactly as before. Trips whose
+     * position or destination was removed from the graph are released.
+     */
+    public int refresh(ForkJoinPool pool) {
+        CsrGraph next = graph.snapshot();
+        if (next == current || next.weights == current.weights && next.targets == current.targets) {
+            current = next;
+            return 0;
+        }
+        if (next.targets != current.targets || scaleFor(next) < scale) return replanAll(next, pool);
+
+        int changes = 0;
+        int[] before = current.weights, after = next.weights;
+        for (int u = 0; u < next.nodeCount; u++) {
+            for (int a = next.offsets[u]; a < next.offsets[u + 1]; a++) {
+                if (before[a] == after[a]) continue;
+                if (changes == changedArcs.length) {
+                    changedArcs = Arrays.copyOf(changedArcs, Math.max(64, changes * 2));
+                    changedSources = Arrays.copyOf(changedSources, changedArcs.length);
+                }
+                changedArcs[changes] = a;
+                changedSources[changes++] = u;
+            }
+        }
+        if (changes > next.arcCount() / REPLAN_FRACTION) return replanAll(next, pool);
+        current = next;
+        int changed = changes;
+        int[] arcs = changedArcs, sources = changedSources;
+        return forEachRoute(pool, id -> routes[id] != null && routes[id].update(next, arcs, sources, changed));
+    }
+
+    // New topology, a heuristic that is no longer a lower bound, or changes too widespread to repair
+    // incrementally: plan every route again from where it is
+    private int replanAll(CsrGraph next, ForkJoinPool pool) {
+        CsrGraph previous = current;
+        current = next;
+        scale = scaleFor(next);
+        int replanned = forEachRoute(pool, id -> {
+            DynamicRoute route = routes[id];
+            if (route == null) return false;
+            int s = next.indexOf(previous.nodeIds[route.start()]), t = next.indexOf(destinations[id]);
+            routes[id] = s < 0 || t < 0 ? null : new DynamicRoute(next, s, t, scale);
+            return true;
+        });
+        // Trips dropped above are released too; the list is rebuilt rather than shared by the parallel pass
+        freeCount = 0;
+        for (int id = count - 1; id >= 0; id--) {
+            if (routes[id] != null) continue;
+            if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+            freeIds[freeCount++] = id;
+        }
+        return replanned;
+    }
+
+    // Runs the action on every route ID, in parallel for large fleets; returns how many it returned true for
+    private int forEachRoute(ForkJoinPool pool, IntPredicate action) {
+        if (count < PARALLEL_THRESHOLD) {
+            int n = 0;
+            for (int id = 0; id < count; id++) if (action.test(id)) n++;
+            return n;
+        }
+        int routeCount = count;
+        return pool.submit(() -> IntStream.range(0, routeCount).parallel().map(id -> action.test(id) ? 1 : 0).sum()).join();
+    }
+
+    private DynamicRoute route(int id) {
+        DynamicRoute route = id >= 0 && id < count ? routes[id] : null;
+        if (route == null) throw new IllegalArgumentException("Not a tracked trip: " + id);
+        return route;
+    }
+}
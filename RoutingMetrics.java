@@ -0,0 +1,203 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for route queries and simulation ticks,
+ * available through {@link #snapshot()} and as MXBeans under
+ * {@code traffic:type=RouteSearch,mode=...} and {@code traffic:type=Tick,name=...}.
+ * <p>
+ * Off by default; start the JVM with {@code -Dtraffic.metrics=true} to turn it
+ * on. {@link #ENABLED} is a compile-time-style constant to the JIT, so when it
+ * is false every guarded timing call and counter update is removed from the
+ * compiled search loops.
+ */
+public final class RoutingMetrics {
+    public static final boolean ENABLED = Boolean.getBoolean("traffic.metrics");
+
+    private static final Map<RouteMode, SearchRecorder> SEARCHES = new EnumMap<>(RouteMode.class);
+    private static final LatencyRecorder TRAFFIC_UPDATES = new LatencyRecorder();
+    private static final LatencyRecorder REDISTRIBUTIONS = new LatencyRecorder();
+
+    static {
+        for (RouteMode mode : RouteMode.values()) SEARCHES.put(mode, new SearchRecorder());
+        if (ENABLED) registerMBeans();
+    }
+
+    private RoutingMetrics() {
+    }
+
+    public interface LatencyMXBean {
+        long getCount();
+
+        double getMeanMicros();
+
+        double getP50Micros();
+
+        double getP90Micros();
+
+        double getP99Micros();
+
+        double getP999Micros();
+
+        double getMaxMicros();
+
+        void reset();
+    }
+
+    public interface RouteSearchMXBean extends LatencyMXBean {
+        long getNodesSettled();
+
+        long getEdgesRelaxed();
+
+        long getHeapPushes();
+
+        long getDecreaseKeys();
+    }
+
+    public static MetricsSnapshot snapshot() {
+        Map<RouteMode, MetricsSnapshot.Search> searches = new EnumMap<>(RouteMode.class);
+        SEARCHES.forEach((mode, recorder) -> searches.put(mode, recorder.snapshot()));
+        return new MetricsSnapshot(searches, TRAFFIC_UPDATES.snapshot(), REDISTRIBUTIONS.snapshot());
+    }
+
+    public static void reset() {
+        SEARCHES.values().forEach(SearchRecorder::reset);
+        TRAFFIC_UPDATES.reset();
+        REDISTRIBUTIONS.reset();
+    }
+
+    // bw is null for one-directional searches
+    static void recordSearch(RouteMode mode, long nanos, SearchWorkspace fw, SearchWorkspace bw) {
+        SearchRecorder recorder = SEARCHES.get(mode);
+        recorder.latency.record(nanos);
+        recorder.add(fw);
+        if (bw != null) recorder.add(bw);
+    }
+
+    static void recordTrafficUpdate(long nanos) {
+        TRAFFIC_UPDATES.latency.record(nanos);
+    }
+
+    static void recordRedistribution(long nanos) {
+        REDISTRIBUTIONS.latency.record(nanos);
+    }
+
+    private static void registerMBeans() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (Map.Entry<RouteMode, SearchRecorder> entry : SEARCHES.entrySet()) {
+                server.registerMBean(new StandardMBean(entry.getValue(), RouteSearchMXBean.class, true),
+                        new ObjectName("traffic:type=RouteSearch,mode=" + entry.getKey()));
+            }
+            server.registerMBean(new StandardMBean(TRAFFIC_UPDATES, LatencyMXBean.class, true),
+                    new ObjectName("traffic:type=Tick,name=updateTrafficConditions"));
+            server.registerMBean(new StandardMBean(REDISTRIBUTIONS, LatencyMXBean.class, true),
+                    new ObjectName("traffic:type=Tick,name=redistributeTraffic"));
+        } catch (JMException e) {
+            // Already registered by another class loader; the snapshot API still works
+        }
+    }
+
+    private static class LatencyRecorder implements LatencyMXBean {
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        MetricsSnapshot.Latency snapshot() {
+            return new MetricsSnapshot.Latency(latency.buckets());
+        }
+
+        @Override
+        public long getCount() {
+            return snapshot().getCount();
+        }
+
+        @Override
+        public double getMeanMicros() {
+            return snapshot().getMeanMicros();
+        }
+
+        @Override
+        public double getP50Micros() {
+            return snapshot().getP50Micros();
+        }
+
+        @Override
+        public double getP90Micros() {
+            return snapshot().getP90Micros();
+        }
+
+        @Override
+        public double getP99Micros() {
+            return snapshot().getP99Micros();
+        }
+
+        @Override
+        public double getP999Micros() {
+            return snapshot().getP999Micros();
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return snapshot().getMaxMicros();
+        }
+
+        @Override
+        public void reset() {
+            latency.reset();
+        }
+    }
+
+    private static final class SearchRecorder extends LatencyRecorder implements RouteSearchMXBean {
+        private final LongAdder settled = new LongAdder();
+        private final LongAdder relaxed = new LongAdder();
+        private final LongAdder pushes = new LongAdder();
+        private final LongAdder decreases = new LongAdder();
+
+        void add(SearchWorkspace ws) {
+            settled.add(ws.settled);
+            relaxed.add(ws.relaxed);
+            pushes.add(ws.pushes);
+            decreases.add(ws.decreases);
+        }
+
+        @Override
+        MetricsSnapshot.Search snapshot() {
+            return new MetricsSnapshot.Search(latency.buckets(), settled.sum(), relaxed.sum(),
+                    pushes.sum(), decreases.sum());
+        }
+
+        @Override
+        public long getNodesSettled() {
+            return settled.sum();
+        }
+
+        @Override
+        public long getEdgesRelaxed() {
+            return relaxed.sum();
+        }
+
+        @Override
+        public long getHeapPushes() {
+            return pushes.sum();
+        }
+
+        @Override
+        public long getDecreaseKeys() {
+            return decreases.sum();
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            settled.reset();
+            relaxed.reset();
+            pushes.reset();
+            decreases.reset();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.Arrays;
+
+/**
+ * Reusable per-query state for a single search direction. Distances are
+ * invalidated by bumping a generation stamp instead of clearing the arrays,
+ * so starting a new query costs O(1) no matter how large the graph is.
+ */
+final class SearchWorkspace {
+    static final int UNREACHED = Integer.MAX_VALUE;
+
+    private static final ThreadLocal<SearchWorkspace> FORWARD = ThreadLocal.withInitial(SearchWorkspace::new);
+    private static final ThreadLocal<SearchWorkspace> BACKWARD = ThreadLocal.withInitial(SearchWorkspace::new);
+
+    final IndexedMinHeap heap = new IndexedMinHeap();
+    int meetingNode = -1; // set by bidirectional searches on the forward workspace
+    // Effort of the last search in this direction; only maintained when RoutingMetrics.ENABLED
+    int settled, relaxed, pushes, decreases;
+    private int[] dist = new int[0];
+    private int[] pred = new int[0];
+    private int[] stamp = new int[0];
+    private int generation;
+
+    /** The calling thread's workspace, reset for a graph of {@code nodeCount} nodes. */
+    static SearchWorkspace forward(int nodeCount) {
+        return FORWARD.get().reset(nodeCount);
+    }
+
+    /** The calling thread's second workspace, used by the backward half of bidirectional searches. */
+    static SearchWorkspace backward(int nodeCount) {
+        return BACKWARD.get().reset(nodeCount);
+    }
+
+    SearchWorkspace reset(int nodeCount) {
+        meetingNode = -1;
+        if (RoutingMetrics.ENABLED) settled = relaxed = pushes = decreases = 0;
+        if (stamp.length < nodeCount) {
+            int capacity = Math.max(nodeCount, stamp.length + (stamp.length >> 1));
+            dist = new int[capacity];
+            pred = new int[capacity];
+            stamp = new int[capacity];
+            generation = 0;
+        }
+        heap.ensureCapacity(nodeCount);
+        heap.clear();
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        return this;
+    }
+
+    boolean reached(int v) {
+        return stamp[v] == generation;
+    }
+
+    int dist(int v) {
+        return stamp[v] == generation ? dist[v] : UNREACHED;
+    }
+
+    int pred(int v) {
+        return pred[v];
+    }
+
+    /**
+     * Records the effort of a heap-based search. Every node that was improved
+     * was either pushed or had its key decreased, and every pushed node was
+     * either settled or is still queued.
+     */
+    void countHeapSearch(int settled, int relaxed, int improved) {
+        this.settled = settled;
+        this.relaxed = relaxed;
+        this.pushes = settled + heap.size();
+        this.decreases = improved - pushes;
+    }
+
+    void set(int v, int d, int predecessor) {
+        stamp[v] = generation;
+        dist[v] = d;
+        pred[v] = predecessor;
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ * Receives periodic samples from a {@link TrafficSimulation}. Called on the
+ * simulation's own thread, so implementations that drive a UI should only
+ * hand the sample over and render it on their own schedule.
+ */
+@FunctionalInterface
+public interface SimulationObserver {
+    void onSample(SimulationSample sample);
+}
@@ -0,0 +1,42 @@
+/** Immutable picture of a {@link TrafficSimulation} at one instant of simulated time. */
+public final class SimulationSample {
+    private final CsrGraph graph;
+    private final int[] occupancy;
+    private final long time;
+    private final int activeVehicles;
+    private final int completedTrips;
+    private final long eventsProcessed;
+
+    SimulationSample(CsrGraph graph, int[] occupancy, long time, int activeVehicles, int completedTrips,
+                     long eventsProcessed) {
+        this.graph = graph;
+        this.occupancy = occupancy;
+        this.time = time;
+        this.activeVehicles = activeVehicles;
+        this.completedTrips = completedTrips;
+        this.eventsProcessed = eventsProcessed;
+    }
+
+    /** Simulated seconds since the start of the run. */
+    public long getTime() {
+        return time;
+    }
+
+    public int getActiveVehicles() {
+        return activeVehicles;
+    }
+
+    public int getCompletedTrips() {
+        return completedTrips;
+    }
+
+    public long getEventsProcessed() {
+        return eventsProcessed;
+    }
+
+    /** Vehicles on the road from -> to when the sample was taken, or 0 if there is no such road. */
+    public int getOccupancy(int from, int to) {
+        int arc = graph.arcBetween(from, to);
+        return arc < 0 ? 0 : occupancy[arc];
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.Arrays;
+
+/**
+ * Uniform grid over intersection coordinates for radius, nearest-neighbour
+ * and rectangle queries. Cells are sized for about two intersections each
+ * and stored CSR-style: the dense indices in cell c occupy
+ * {@code nodes[cellStart[c]..cellStart[c+1]-1]}. Intersections without a
+ * position are left out.
+ * <p>
+ * An index is built once per coordinate array and is immutable, so
+ * {@link CsrGraph} caches it and snapshots that share coordinates share it.
+ */
+final class SpatialIndex {
+    private static final int NODES_PER_CELL = 2;
+
+    private final double[] coords;
+    private final double minX, minY, cellSize;
+    private final int columns, rows;
+    private final int[] cellStart;
+    private final int[] nodes;
+
+    private SpatialIndex(double[] coords, double minX, double minY, double cellSize, int columns, int rows,
+                         int[] cellStart, int[] nodes) {
+        this.coords = coords;
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        this.columns = columns;
+        this.rows = rows;
+        this.cellStart = cellStart;
+        this.nodes = nodes;
+    }
+
+    static SpatialIndex build(double[] coords, int nodeCount) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        int placed = 0;
+        for (int u = 0; u < nodeCount; u++) {
+            double x = coords[2 * u], y = coords[2 * u + 1];
+            if (Double.isNaN(x) || Double.isNaN(y)) continue;
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+            placed++;
+        }
+        if (placed == 0) return new SpatialIndex(coords, 0, 0, 1, 1, 1, new int[2], new int[0]);
+
+        double width = maxX - minX, height = maxY - minY;
+        double cellSize = Math.sqrt(width * height * NODES_PER_CELL / placed);
+        // Long thin layouts would get more cells than intersections along their length
+        cellSize = Math.max(cellSize, Math.max(width, height) / placed);
+        if (!(cellSize > 0)) cellSize = 1; // every intersection in one spot
+        int columns = (int) (width / cellSize) + 1;
+        int rows = (int) (height / cellSize) + 1;
+
+        int[] cellStart = new int[columns * rows + 1];
+        int[] cellOf = new int[nodeCount];
+        for (int u = 0; u < nodeCount; u++) {
+            double x = coords[2 * u], y = coords[2 * u + 1];
+            if (Double.isNaN(x) || Double.isNaN(y)) {
+                cellOf[u] = -1;
+                continue;
+            }
+            int cx = Math.min(columns - 1, (int) ((x - minX) / cellSize));
+            int cy = Math.min(rows - 1, (int) ((y - minY) / cellSize));
+            cellOf[u] = cy * columns + cx;
+            cellStart[cellOf[u] + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) cellStart[c + 1] += cellStart[c];
+        int[] fill = Arrays.copyOf(cellStart, columns * rows);
+        int[] nodes = new int[placed];
+        for (int u = 0; u < nodeCount; u++) {
+            if (cellOf[u] >= 0) nodes[fill[cellOf[u]]++] = u;
+        }
+        return new SpatialIndex(coords, minX, minY, cellSize, columns, rows, cellStart, nodes);
+    }
+
+    private int column(double x) {
+        return (int) Math.max(0, Math.min(columns - 1, Math.floor((x - minX) / cellSize)));
+    }
+
+    private int row(double y) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floor((y - minY) / cellSize)));
+    }
+
+    private double distanceSquared(int u, double x, double y) {
+        double dx = coords[2 * u] - x, dy = coords[2 * u + 1] - y;
+        return dx * dx + dy * dy;
+    }
+
+    /** Dense index of the intersection nearest to (x, y), or -1 if none lies within {@code maxDistance}. */
+    int nearest(double x, double y, double maxDistance) {
+        if (nodes.length == 0) return -1;
+        int cx = column(x), cy = row(y);
+        double best = maxDistance * maxDistance;
+        int found = -1;
+        // Rings of cells around (cx, cy); points outside the grid start from the nearest edge cell
+        double outside = Math.max(Math.max(minX - x, x - (minX + columns * cellSize)),
+                Math.max(minY - y, y - (minY + rows * cellSize)));
+        int maxRing = Math.max(columns, rows);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Nothing in this ring or beyond can be closer than this
+            double bound = Math.max(outside, (ring - 1) * cellSize);
+            if (found >= 0 && bound * bound > best) break;
+            if (bound > maxDistance) break;
+            for (int gy = cy - ring; gy <= cy + ring; gy++) {
+                if (gy < 0 || gy >= rows) continue;
+                boolean edgeRow = gy == cy - ring || gy == cy + ring;
+                for (int gx = cx - ring; gx <= cx + ring; gx += edgeRow ? 1 : 2 * ring) {
+                    if (gx >= 0 && gx < columns) {
+                        int c = gy * columns + gx;
+                        for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                            double d = distanceSquared(nodes[i], x, y);
+                            if (d <= best) {
+                                best = d;
+                                found = nodes[i];
+                            }
+                        }
+                    }
+                    if (ring == 0) break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Whether some intersection lies strictly within {@code radius} of (x, y). */
+    boolean anyWithin(double x, double y, double radius) {
+        double limit = radius * radius;
+        for (int gy = row(y - radius), y1 = row(y + radius); gy <= y1; gy++) {
+            for (int gx = column(x - radius), x1 = column(x + radius); gx <= x1; gx++) {
+                int c = gy * columns + gx;
+                for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                    if (distanceSquared(nodes[i], x, y) < limit) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Dense indices of the intersections within {@code radius} of (x, y), in no particular order. */
+    int[] within(double x, double y, double radius) {
+        double limit = radius * radius;
+        int[] out = new int[8];
+        int count = 0;
+        for (int gy = row(y - radius), y1 = row(y + radius); gy <= y1; gy++) {
+            for (int gx = column(x - radius), x1 = column(x + radius); gx <= x1; gx++) {
+                int c = gy * columns + gx;
+                for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                    if (distanceSquared(nodes[i], x, y) > limit) continue;
+                    if (count == out.length) out = Arrays.copyOf(out, count * 2);
+                    out[count++] = nodes[i];
+                }
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    /**
+     * Writes the dense indices of the intersections inside the rectangle to
+     * {@code out}, which must have room for all of them, and returns how many.
+     */
+    int range(double minX, double minY, double maxX, double maxY, int[] out) {
+        int count = 0;
+        if (maxX < minX || maxY < minY) return 0;
+        for (int gy = row(minY), y1 = row(maxY); gy <= y1; gy++) {
+            for (int gx = column(minX), x1 = column(maxX); gx <= x1; gx++) {
+                int c = gy * columns + gx;
+                for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                    int u = nodes[i];
+                    double x = coords[2 * u], y = coords[2 * u + 1];
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY) out[count++] = u;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a time-dependent route query: the intersections in travel order
+ * and the time, in seconds, at which each one is reached.
+ */
+public final class TimedRoute {
+    static final TimedRoute NONE = new TimedRoute(new int[0], new int[0]);
+
+    private final int[] nodes;
+    private final int[] times;
+
+    private TimedRoute(int[] nodes, int[] times) {
+        this.nodes = nodes;
+        this.times = times;
+    }
+
+    // Reads the route ending at t from the predecessor chain of a time-dependent search
+    static TimedRoute of(CsrGraph g, SearchWorkspace ws, int t) {
+        int length = 0;
+        for (int at = t; at != -1; at = ws.pred(at)) length++;
+        int[] nodes = new int[length];
+        int[] times = new int[length];
+        for (int at = t; at != -1; at = ws.pred(at)) {
+            nodes[--length] = g.nodeIds[at];
+            times[length] = ws.dist(at);
+        }
+        return new TimedRoute(nodes, times);
+    }
+
+    public boolean isEmpty() {
+        return nodes.length == 0;
+    }
+
+    public List<Integer> getPath() {
+        List<Integer> path = new ArrayList<>(nodes.length);
+        for (int id : nodes) path.add(id);
+        return Collections.unmodifiableList(path);
+    }
+
+    /** Seconds at which the i-th intersection of the path is reached. */
+    public int getArrivalTime(int i) {
+        return times[i];
+    }
+
+    public int getDepartureTime() {
+        return times.length == 0 ? -1 : times[0];
+    }
+
+    /** Arrival at the destination, or -1 when no route exists. */
+    public int getArrivalTime() {
+        return times.length == 0 ? -1 : times[times.length - 1];
+    }
+
+    public int getTravelTime() {
+        return times.length == 0 ? -1 : times[times.length - 1] - times[0];
+    }
+}
@@ -0,0 +1,354 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Static user-equilibrium traffic assignment by the Frank-Wolfe method. Road
+ * travel times follow the BPR volume-delay function
+ * t(v) = t0 * (1 + 0.15 * (v / capacity)^4), with the base weight as the
+ * free-flow time t0. Each iteration loads every origin's demand all-or-nothing
+ * onto its shortest-path tree under the current times, then moves the flows
+ * toward that loading by the step that minimises the Beckmann objective. The
+ * target is made conjugate to the previous one (Mitradjieva and Lindberg's
+ * conjugate Frank-Wolfe), which avoids the zig-zagging that slows the plain
+ * method near equilibrium. It stops once the relative gap, (total travel time - shortest-path travel time)
+ * / total travel time, reaches the target.
+ * <p>
+ * Origins are claimed dynamically by one loader per worker thread. Each loader
+ * accumulates into its own flow array, and the arrays are summed per arc range
+ * afterwards, so no two threads ever write the same slot.
+ */
+public final class TrafficAssignment {
+    private static final double ALPHA = 0.15; // BPR parameters; the exponent is fixed at 4
+    private static final int PARALLEL_THRESHOLD = 16_384;
+    private static final int LINE_SEARCH_STEPS = 40;
+    private static final double CONJUGATE_MARGIN = 0.01;
+
+    private final CsrGraph graph;
+    private final double[] flows;
+    private final double[] times;
+    private final double[] capacity;
+    private final int iterations;
+    private final double relativeGap;
+    private final double unassignedTrips;
+
+    private TrafficAssignment(CsrGraph graph, double[] flows, double[] times, double[] capacity,
+                              int iterations, double relativeGap, double unassignedTrips) {
+        this.graph = graph;
+        this.flows = flows;
+        this.times = times;
+        this.capacity = capacity;
+        this.iterations = iterations;
+        this.relativeGap = relativeGap;
+        this.unassignedTrips = unassignedTrips;
+    }
+
+    /**
+     * @param trips row-major origins x destinations demand; unknown intersections are ignored
+     */
+    static TrafficAssignment solve(CsrGraph g, int[] origins, int[] destinations, double[] trips,
+                                   double roadCapacity, double gapTarget, int maxIterations, ForkJoinPool pool) {
+        if (trips.length != origins.length * destinations.length) {
+            throw new IllegalArgumentException("Demand must have one entry per origin-destination pair");
+        }
+        if (!(roadCapacity > 0)) throw new IllegalArgumentException("Road capacity must be positive: " + roadCapacity);
+        Demand demand = new Demand(g, origins, destinations, trips);
+        int m = g.arcCount();
+        double[] capacity = new double[m];
+        Arrays.fill(capacity, roadCapacity);
+
+        double[] x = new double[m];
+        double[] y = new double[m];
+        double[] t = new double[m];
+        double[] target = new double[m]; // flows the current step moves toward
+        int workers = Math.max(1, Math.min(pool.getParallelism(), demand.origins.length));
+        Loader[] loaders = new Loader[workers];
+        for (int i = 0; i < workers; i++) loaders[i] = new Loader(g.nodeCount, m);
+
+        // Free-flow all-or-nothing loading is the starting point
+        times(g, x, capacity, t);
+        double unassigned = allOrNothing(g, demand, t, loaders, x, pool);
+        int iteration = 0;
+        double gap = Double.POSITIVE_INFINITY;
+        while (iteration < maxIterations) {
+            times(g, x, capacity, t);
+            allOrNothing(g, demand, t, loaders, y, pool);
+            double total = sum(pool, m, a -> x[a] * t[a]);
+            double shortest = sum(pool, m, a -> y[a] * t[a]);
+            gap = total > 0 ? (total - shortest) / total : 0;
+            iteration++;
+            if (gap <= gapTarget) break;
+
+            // Conjugate direction: mix the previous target into y so successive steps don't zig-zag
+            if (iteration > 1) {
+                double n = sum(pool, m, a -> (target[a] - x[a]) * slope(g, a, x[a], capacity[a]) * (y[a] - x[a]));
+                double d = sum(pool, m, a -> (target[a] - x[a]) * slope(g, a, x[a], capacity[a]) * (y[a] - target[a]));
+                double mix = d != 0 ? Math.min(Math.max(n / d, 0), 1 - CONJUGATE_MARGIN) : 0;
+                parallel(pool, m, a -> target[a] = mix * target[a] + (1 - mix) * y[a]);
+            } else {
+                System.arraycopy(y, 0, target, 0, m);
+            }
+            double step = lineSearch(pool, g, x, target, capacity);
+            parallel(pool, m, a -> x[a] += step * (target[a] - x[a]));
+        }
+        times(g, x, capacity, t);
+        return new TrafficAssignment(g, x, t, capacity, iteration, gap, unassigned);
+    }
+
+    // Step in [0, 1] along y - x where the Beckmann objective stops decreasing, by bisection on its derivative
+    private static double lineSearch(ForkJoinPool pool, CsrGraph g, double[] x, double[] y, double[] capacity) {
+        double lo = 0, hi = 1;
+        if (derivative(pool, g, x, y, capacity, 1) <= 0) return 1;
+        for (int i = 0; i < LINE_SEARCH_STEPS; i++) {
+            double mid = (lo + hi) / 2;
+            if (derivative(pool, g, x, y, capacity, mid) > 0) hi = mid;
+            else lo = mid;
+        }
+        return (lo + hi) / 2;
+    }
+
+    private static double derivative(ForkJoinPool pool, CsrGraph g, double[] x, double[] y, double[] capacity,
+                                     double step) {
+        return sum(pool, x.length, a -> {
+            double d = y[a] - x[a];
+            return d == 0 ? 0 : d * g.baseWeights[a] * delay(x[a] + step * d, capacity[a]);
+        });
+    }
+
+    // d t / d v of the arc's travel time at the given volume
+    private static double slope(CsrGraph g, int a, double volume, double capacity) {
+        double ratio = volume / capacity;
+        return g.baseWeights[a] * 4 * ALPHA * ratio * ratio * ratio / capacity;
+    }
+
+    private static double delay(double volume, double capacity) {
+        double ratio = volume / capacity;
+        return 1 + ALPHA * ratio * ratio * ratio * ratio;
+    }
+
+    private static void times(CsrGraph g, double[] flow, double[] capacity, double[] t) {
+        for (int a = 0; a < t.length; a++) t[a] = g.baseWeights[a] * delay(flow[a], capacity[a]);
+    }
+
+    /** Loads all demand onto shortest paths under times t into {@code into}; returns the trips that have no route. */
+    private static double allOrNothing(CsrGraph g, Demand demand, double[] t, Loader[] loaders, double[] into,
+                                       ForkJoinPool pool) {
+        AtomicInteger next = new AtomicInteger();
+        Runnable load = () -> IntStream.range(0, loaders.length).parallel().forEach(w -> {
+            Loader loader = loaders[w];
+            for (int i = next.getAndIncrement(); i < demand.origins.length; i = next.getAndIncrement()) {
+                loader.load(g, demand, i, t);
+            }
+        });
+        pool.submit(load).join();
+
+        parallel(pool, into.length, a -> {
+            double total = 0;
+            for (Loader loader : loaders) {
+                total += loader.flow[a];
+                loader.flow[a] = 0;
+            }
+            into[a] = total;
+        });
+        double unassigned = 0;
+        for (Loader loader : loaders) {
+            unassigned += loader.unassigned;
+            loader.unassigned = 0;
+        }
+        return unassigned;
+    }
+
+    private static double sum(ForkJoinPool pool, int n, IntToDoubleFunction term) {
+        if (n < PARALLEL_THRESHOLD) {
+            double s = 0;
+            for (int i = 0; i < n; i++) s += term.applyAsDouble(i);
+            return s;
+        }
+        return pool.submit(() -> IntStream.range(0, n).parallel().mapToDouble(term).sum()).join();
+    }
+
+    private static void parallel(ForkJoinPool pool, int n, IntConsumer action) {
+        if (n < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < n; i++) action.accept(i);
+        } else {
+            pool.submit(() -> IntStream.range(0, n).parallel().forEach(action)).join();
+        }
+    }
+
+    /** Demand by dense origin, as a CSR list of (destination, trips). */
+    private static final class Demand {
+        final int[] origins;
+        final int[] offsets;
+        final int[] destinations;
+        final double[] trips;
+
+        Demand(CsrGraph g, int[] originIds, int[] destinationIds, double[] matrix) {
+            int[] rows = new int[originIds.length];
+            int[] count = new int[originIds.length];
+            int origins = 0, entries = 0;
+            for (int i = 0; i < originIds.length; i++) {
+                if (g.indexOf(originIds[i]) < 0) continue;
+                for (int j = 0; j < destinationIds.length; j++) {
+                    double trips = matrix[i * destinationIds.length + j];
+                    if (trips > 0 && g.indexOf(destinationIds[j]) >= 0 && originIds[i] != destinationIds[j]) count[i]++;
+                }
+                if (count[i] > 0) {
+                    rows[origins++] = i;
+                    entries += count[i];
+                }
+            }
+            this.origins = new int[origins];
+            this.offsets = new int[origins + 1];
+            this.destinations = new int[entries];
+            this.trips = new double[entries];
+            int k = 0;
+            for (int o = 0; o < origins; o++) {
+                int i = rows[o];
+                this.origins[o] = g.indexOf(originIds[i]);
+                for (int j = 0; j < destinationIds.length; j++) {
+                    double trips = matrix[i * destinationIds.length + j];
+                    if (trips > 0 && g.indexOf(destinationIds[j]) >= 0 && originIds[i] != destinationIds[j]) {
+                        this.destinations[k] = g.indexOf(destinationIds[j]);
+                        this.trips[k++] = trips;
+                    }
+                }
+                this.offsets[o + 1] = k;
+            }
+        }
+    }
+
+    /** One worker's shortest-path tree state and private flow accumulator. */
+    private static final class Loader {
+        final IndexedMinHeap heap = new IndexedMinHeap();
+        final double[] dist;    // valid where reached[v] == generation; unreached elsewhere
+        final int[] reached;
+        int generation;
+        final int[] predArc;
+        final int[] predNode;
+        final int[] order;     // nodes in settling order
+        final double[] pending; // trips still to be pushed up the tree, per node
+        final boolean[] wanted;
+        final double[] flow;
+        double unassigned;
+
+        Loader(int n, int m) {
+            heap.ensureCapacity(n);
+            dist = new double[n];
+            reached = new int[n];
+            predArc = new int[n];
+            predNode = new int[n];
+            order = new int[n];
+            pending = new double[n];
+            wanted = new boolean[n];
+            flow = new double[m];
+        }
+
+        void load(CsrGraph g, Demand demand, int row, double[] t) {
+            int s = demand.origins[row];
+            int from = demand.offsets[row], to = demand.offsets[row + 1];
+            int remaining = 0;
+            for (int k = from; k < to; k++) {
+                int d = demand.destinations[k];
+                if (!wanted[d]) remaining++;
+                wanted[d] = true;
+                pending[d] += demand.trips[k];
+            }
+
+            // Dijkstra until every destination of this origin is settled; a new generation forgets
+            // the last origin's distances without touching the nodes it never reached
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(reached, 0);
+                generation = 1;
+            }
+            heap.clear();
+            reached[s] = generation;
+            dist[s] = 0;
+            predArc[s] = -1;
+            heap.insertOrDecrease(s, 0);
+            int settled = 0;
+            while (!heap.isEmpty() && remaining > 0) {
+                int u = heap.poll();
+                order[settled++] = u;
+                if (wanted[u]) remaining--;
+                double du = dist[u];
+                for (int a = g.offsets[u], end = g.offsets[u + 1]; a < end; a++) {
+                    int v = g.targets[a];
+                    double nd = du + t[a];
+                    if (nd < (reached[v] == generation ? dist[v] : Double.POSITIVE_INFINITY)) {
+                        reached[v] = generation;
+                        dist[v] = nd;
+                        predArc[v] = a;
+                        predNode[v] = u;
+                        heap.insertOrDecrease(v, nd);
+                    }
+                }
+            }
+            for (int k = from; k < to; k++) {
+                int d = demand.destinations[k];
+                wanted[d] = false;
+                if (reached[d] != generation || heap.contains(d)) {
+                    unassigned += pending[d];
+                    pending[d] = 0;
+                }
+            }
+
+            // Push each node's trips onto the arc it was reached by, children before parents
+            for (int i = settled - 1; i > 0; i--) {
+                int u = order[i];
+                double p = pending[u];
+                if (p == 0) continue;
+                pending[u] = 0;
+                flow[predArc[u]] += p;
+                pending[predNode[u]] += p;
+            }
+            pending[s] = 0;
+        }
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /** Relative gap reached: 0 at exact equilibrium. */
+    public double getRelativeGap() {
+        return relativeGap;
+    }
+
+    /** Trips whose destination cannot be reached from their origin. */
+    public double getUnassignedTrips() {
+        return unassignedTrips;
+    }
+
+    /** Sum over roads of flow times travel time at equilibrium. */
+    public double getTotalTravelTime() {
+        double total = 0;
+        for (int a = 0; a < flows.length; a++) total += flows[a] * times[a];
+        return total;
+    }
+
+    /** Equilibrium flow on the road from -> to, or 0 if there is none. */
+    public double getFlow(int from, int to) {
+        int arc = graph.arcBetween(from, to);
+        return arc < 0 ? 0 : flows[arc];
+    }
+
+    /** Equilibrium travel time of the road from -> to, or -1 if there is none. */
+    public double getTravelTime(int from, int to) {
+        int arc = graph.arcBetween(from, to);
+        return arc < 0 ? -1 : times[arc];
+    }
+
+    // Congestion factor per arc of the assigned snapshot, for publishing to the graph
+    double[] congestionFactors() {
+        double[] factors = new double[flows.length];
+        for (int a = 0; a < factors.length; a++) factors[a] = delay(flows[a], capacity[a]);
+        return factors;
+    }
+
+    int[] topology() {
+        return graph.targets;
+    }
+}
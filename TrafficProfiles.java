@@ -0,0 +1,221 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pool of daily congestion profiles shared by every road that uses them. A
+ * profile is a cyclic piecewise-linear congestion factor over the 24h day,
+ * quantised to whole minutes and 1/1024 of a factor, so a breakpoint takes 4
+ * bytes and identical curves are stored once. Roads refer to profiles by ID,
+ * which adds 4 bytes per arc; profile 0 is the flat factor 1.0.
+ * <p>
+ * An instance is an immutable view of the first {@code count} profiles.
+ * Adding a profile to the newest view of a set of arrays writes past their
+ * end and returns a new view, so snapshots holding an older view are never
+ * disturbed. Adding one to any other view, such as {@link #FLAT} or a view a
+ * graph has since moved past, copies the arrays first, so views that branch
+ * from a common one never overwrite each other's profiles.
+ */
+final class TrafficProfiles {
+    static final int DAY = 86_400;      // seconds
+    static final int MINUTES = 1440;
+    static final int SCALE = 1024;      // factor quantum
+    static final int NONE = 0;
+
+    // Shared by every graph, so it never owns its arrays and each graph's first profile copies them
+    static final TrafficProfiles FLAT = detached(new TrafficProfiles().with(Curve.of(new int[]{0}, new double[]{1.0})));
+
+    final int count;
+    final int[] offsets;                // breakpoints of profile p: offsets[p]..offsets[p+1]-1
+    final char[] minutes;               // minute of day, increasing within a profile
+    final char[] factors;               // factor * SCALE
+    final char[] minFactor;             // lowest factor * SCALE of each profile
+    final double[] steepestDrop;        // largest decrease of the factor per second, per profile
+    private final Map<Curve, Integer> ids; // this view's curves; copied on write
+    private final AtomicReference<TrafficProfiles> tail; // newest view sharing these arrays, null while claimed
+
+    private TrafficProfiles() {
+        count = 0;
+        offsets = new int[]{0, 0};
+        minutes = new char[0];
+        factors = new char[0];
+        minFactor = new char[0];
+        steepestDrop = new double[0];
+        ids = new HashMap<>();
+        tail = new AtomicReference<>(this);
+    }
+
+    private TrafficProfiles(TrafficProfiles base, int[] offsets, char[] minutes, char[] factors,
+                            char[] minFactor, double[] steepestDrop, Map<Curve, Integer> ids,
+                            AtomicReference<TrafficProfiles> tail) {
+        this.count = base.count + 1;
+        this.offsets = offsets;
+        this.minutes = minutes;
+        this.factors = factors;
+        this.minFactor = minFactor;
+        this.steepestDrop = steepestDrop;
+        this.ids = ids;
+        this.tail = tail;
+    }
+
+    private static TrafficProfiles detached(TrafficProfiles view) {
+        view.tail.set(null);
+        return view;
+    }
+
+    /** ID of an identical stored curve, or -1. */
+    int idOf(Curve curve) {
+        Integer id = ids.get(curve);
+        return id == null ? -1 : id;
+    }
+
+    /** This view with the curve added, or this view if an identical curve is already stored. */
+    TrafficProfiles with(Curve curve) {
+        if (idOf(curve) >= 0) return this;
+        // Only the newest view may append in place: older views never read past their own count,
+        // but a view something was already appended to would have that profile overwritten
+        int start = offsets[count], end = start + curve.minutes.length;
+        boolean owner = tail.compareAndSet(this, null);
+        boolean inPlace = owner && minutes.length >= end && offsets.length > count + 1 && minFactor.length > count;
+        if (owner && !inPlace) tail.set(this); // copying leaves this view's arrays alone, so it keeps them
+        int capacity = Math.max(end, 2 * minutes.length), profiles = Math.max(4, 2 * (count + 1));
+        char[] m = inPlace ? minutes : Arrays.copyOf(minutes, capacity);
+        char[] f = inPlace ? factors : Arrays.copyOf(factors, capacity);
+        int[] o = inPlace ? offsets : Arrays.copyOf(offsets, profiles + 1);
+        char[] lo = inPlace ? minFactor : Arrays.copyOf(minFactor, profiles);
+        double[] drop = inPlace ? steepestDrop : Arrays.copyOf(steepestDrop, profiles);
+        System.arraycopy(curve.minutes, 0, m, start, curve.minutes.length);
+        System.arraycopy(curve.factors, 0, f, start, curve.factors.length);
+        o[count + 1] = end;
+        lo[count] = curve.min();
+        drop[count] = curve.steepestDrop();
+        Map<Curve, Integer> nextIds = new HashMap<>(ids);
+        nextIds.put(curve, count);
+        // Claimed arrays pass to the new view; copied ones start a lineage of their own
+        AtomicReference<TrafficProfiles> nextTail = inPlace ? tail : new AtomicReference<>();
+        TrafficProfiles view = new TrafficProfiles(this, o, m, f, lo, drop, nextIds, nextTail);
+        nextTail.set(view);
+        return view;
+    }
+
+    /** Congestion factor of profile p at {@code second} seconds after midnight (0 <= second < DAY). */
+    double factorAt(int p, int second) {
+        int from = offsets[p], to = offsets[p + 1];
+        if (to - from == 1) return factors[from] / (double) SCALE;
+        double minute = second / 60.0;
+        int lo = from, hi = to - 1, i = from - 1; // last breakpoint at or before the minute
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (minutes[mid] <= minute) {
+                i = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        int j;
+        double start, end;
+        if (i < from || i == to - 1) {
+            // Segment from the last breakpoint across midnight to the first
+            i = to - 1;
+            j = from;
+            start = minutes[i] <= minute ? minutes[i] : minutes[i] - MINUTES;
+            end = start + (minutes[j] + MINUTES - minutes[i]);
+        } else {
+            j = i + 1;
+            start = minutes[i];
+            end = minutes[j];
+        }
+        double frac = (minute - start) / (end - start);
+        return (factors[i] + (factors[j] - factors[i]) * frac) / SCALE;
+    }
+
+    /**
+     * Arrival time at the end of a road with free-flow time {@code baseWeight}
+     * and profile p, entered at {@code time} (seconds, non-negative). The result
+     * never decreases as {@code time} grows (FIFO): where the profile falls
+     * faster than the road can be driven, the earliest arrival is reached by
+     * waiting at the start of the road for a later breakpoint.
+     */
+    int arrival(int p, int baseWeight, int time) {
+        int second = time % DAY;
+        double best = time + baseWeight * factorAt(p, second);
+        if (baseWeight * steepestDrop[p] > 1) {
+            int midnight = time - second;
+            for (int b = offsets[p]; b < offsets[p + 1]; b++) {
+                int at = midnight + minutes[b] * 60;
+                if (at <= time) at += DAY;
+                best = Math.min(best, at + baseWeight * (factors[b] / (double) SCALE));
+            }
+        }
+        return (int) Math.round(best);
+    }
+
+    /** A validated, quantised profile, compared by content for deduplication. */
+    static final class Curve {
+        final char[] minutes;
+        final char[] factors;
+
+        private Curve(char[] minutes, char[] factors) {
+            this.minutes = minutes;
+            this.factors = factors;
+        }
+
+        /**
+         * @param minuteOfDay breakpoints in minutes after midnight, strictly increasing, within 0..1439
+         * @param factor      congestion factor at each breakpoint, at least 1/1024 and below 64
+         */
+        static Curve of(int[] minuteOfDay, double[] factor) {
+            if (minuteOfDay.length == 0 || minuteOfDay.length != factor.length) {
+                throw new IllegalArgumentException("A profile needs one factor per breakpoint and at least one breakpoint");
+            }
+            char[] m = new char[minuteOfDay.length];
+            char[] f = new char[factor.length];
+            for (int i = 0; i < m.length; i++) {
+                if (minuteOfDay[i] < 0 || minuteOfDay[i] >= MINUTES || (i > 0 && minuteOfDay[i] <= minuteOfDay[i - 1])) {
+                    throw new IllegalArgumentException("Breakpoints must be increasing minutes of the day: "
+                            + Arrays.toString(minuteOfDay));
+                }
+                long q = Math.round(factor[i] * SCALE);
+                if (q < 1 || q > Character.MAX_VALUE) {
+                    throw new IllegalArgumentException("Congestion factor out of range: " + factor[i]);
+                }
+                m[i] = (char) minuteOfDay[i];
+                f[i] = (char) q;
+            }
+            // A constant curve is the same profile whatever its breakpoints
+            boolean constant = true;
+            for (char q : f) constant &= q == f[0];
+            return constant ? new Curve(new char[]{0}, new char[]{f[0]}) : new Curve(m, f);
+        }
+
+        char min() {
+            char min = Character.MAX_VALUE;
+            for (char q : factors) min = (char) Math.min(min, q);
+            return min;
+        }
+
+        // Steepest fall of the factor per second, including the segment wrapping past midnight
+        double steepestDrop() {
+            double drop = 0;
+            for (int i = 0; i < minutes.length && minutes.length > 1; i++) {
+                int j = (i + 1) % minutes.length;
+                int span = j == 0 ? minutes[0] + MINUTES - minutes[i] : minutes[j] - minutes[i];
+                drop = Math.max(drop, (factors[i] - factors[j]) / (double) SCALE / (span * 60.0));
+            }
+            return drop;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Curve && Arrays.equals(minutes, ((Curve) o).minutes)
+                    && Arrays.equals(factors, ((Curve) o).factors);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(minutes) + Arrays.hashCode(factors);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Headless discrete-event traffic simulation over a {@link Graph}. Vehicles
+ * are routed when they depart, then advance one road per event: entering a
+ * road schedules the vehicle's arrival at its end after the road's travel time
+ * under the current occupancy. Occupancy slows roads through a BPR
+ * volume-delay function, 1 + alpha * (vehicles / capacity)^beta, and every
+ * {@link #setCongestionInterval congestion interval} the same factors are
+ * published to the graph as its congestion, so later departures route around
+ * the jams.
+ * <p>
+ * Time is simulated seconds and runs as fast as events can be processed;
+ * nothing here depends on a display. Vehicle state is kept in primitive
+ * arrays and events in a primitive heap. A simulation is driven by one
+ * thread at a time; observers are called on that thread.
+ */
+public final class TrafficSimulation {
+    private final Graph graph;
+    private final CsrGraph topology;    // pinned: arc numbering of occupancy and routes
+    private final int[] occupancy;
+    private final double[] capacity;
+    private final EventQueue events = new EventQueue();
+    private final List<SimulationObserver> observers = new CopyOnWriteArrayList<>();
+
+    // Vehicle agents, indexed by vehicle ID; IDs of finished trips are reused
+    private int vehicleCount;           // IDs handed out so far
+    private int[] freeIds = new int[64];
+    private int freeCount;
+    private long tripsAdded;
+    private int[] origin = new int[64];
+    private int[] destination = new int[64];
+    private long[] departure = new long[64];
+    private int[][] route = new int[64][];  // arcs to drive; null before departure and after arrival
+    private int[] hop = new int[64];        // index in route of the road being driven
+
+    private RouteMode routeMode = RouteMode.A_STAR;
+    private double alpha = 0.15, beta = 4;
+    private long congestionInterval = 60, sampleInterval = 60;
+    private long nextCongestion = 60, nextSample = 60;
+    private long time;
+    private long eventsProcessed;
+    private int activeVehicles, completedTrips, unroutableTrips;
+    private long totalTripTime;
+
+    /** A simulation over the graph's current topology, with one vehicle per unit of free-flow time as capacity. */
+    public TrafficSimulation(Graph graph) {
+        this.graph = graph;
+        this.topology = graph.snapshot();
+        this.occupancy = new int[topology.arcCount()];
+        this.capacity = new double[topology.arcCount()];
+        setCapacityPerWeightUnit(1.0);
+    }
+
+    /** Road capacity in vehicles per unit of base weight, so longer roads hold more vehicles. */
+    public void setCapacityPerWeightUnit(double vehicles) {
+        for (int a = 0; a < capacity.length; a++) capacity[a] = Math.max(1.0, topology.baseWeights[a] * vehicles);
+    }
+
+    public void setVolumeDelay(double alpha, double beta) {
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    public void setRouteMode(RouteMode mode) {
+        this.routeMode = mode;
+    }
+
+    /** Seconds between congestion updates pushed to the graph; 0 keeps the graph untouched. */
+    public void setCongestionInterval(long seconds) {
+        congestionInterval = seconds;
+        nextCongestion = seconds > 0 ? time + seconds : Long.MAX_VALUE;
+    }
+
+    /** Seconds of simulated time between observer samples. */
+    public void setSampleInterval(long seconds) {
+        if (seconds <= 0) throw new IllegalArgumentException("Sample interval must be positive: " + seconds);
+        sampleInterval = seconds;
+        nextSample = time + seconds;
+    }
+
+    public void addObserver(SimulationObserver observer) {
+        observers.add(observer);
+    }
+
+    public void removeObserver(SimulationObserver observer) {
+        observers.remove(observer);
+    }
+
+    /**
+     * Schedules a trip from {@code from} to {@code to} leaving at
+     * {@code departureTime}. The route is chosen on departure. Returns the
+     * vehicle ID, or -1 if either intersection is not in the simulated graph.
+     * The ID is handed to a later trip once this one arrives or turns out
+     * to be unroutable.
+     *
+     * @throws IllegalStateException if more trips are under way than the event queue can address
+     */
+    public int addVehicle(int from, int to, long departureTime) {
+        int s = topology.indexOf(from), t = topology.indexOf(to);
+        if (s < 0 || t < 0) return -1;
+        if (departureTime < time || departureTime > EventQueue.MAX_TIME) {
+            throw new IllegalArgumentException("Departure outside the simulated future: " + departureTime);
+        }
+        if (freeCount == 0 && vehicleCount > EventQueue.MAX_PAYLOAD) {
+            throw new IllegalStateException("Too many vehicles under way: " + vehicleCount);
+        }
+        if (freeCount == 0 && vehicleCount == origin.length) {
+            int n = vehicleCount * 2;
+            origin = Arrays.copyOf(origin, n);
+            destination = Arrays.copyOf(destination, n);
+            departure = Arrays.copyOf(departure, n);
+            route = Arrays.copyOf(route, n);
+            hop = Arrays.copyOf(hop, n);
+        }
+        int v = freeCount > 0 ? freeIds[--freeCount] : vehicleCount++;
+        tripsAdded++;
+        origin[v] = s;
+        destination[v] = t;
+        departure[v] = departureTime;
+        hop[v] = -1;
+        events.add(EventQueue.event(departureTime, v));
+        return v;
+    }
+
+    /** Processes every pending event; returns the number processed. */
+    public long run() {
+        return runUntil(Long.MAX_VALUE);
+    }
+
+    /**
+     * Processes events up to and including {@code endTime}, publishing
+     * congestion and notifying observers at their intervals along the way.
+     * Returns the number of vehicle events processed.
+     */
+    public long runUntil(long endTime) {
+        long processed = 0;
+        while (true) {
+            long next = events.isEmpty() ? Long.MAX_VALUE : EventQueue.timeOf(events.peek());
+            long boundary = Math.min(nextCongestion, nextSample);
+            if (events.isEmpty() && endTime == Long.MAX_VALUE) break;
+            if (boundary <= next && boundary <= endTime) {
+                time = boundary;
+                if (boundary == nextCongestion) publishCongestion();
+                if (boundary == nextSample) sample();
+                continue;
+            }
+            if (next > endTime) break;
+            time = next;
+            advance(EventQueue.payloadOf(events.poll()));
+            processed++;
+            eventsProcessed++;
+        }
+        if (endTime != Long.MAX_VALUE) time = Math.max(time, endTime);
+        return processed;
+    }
+
+    // Vehicle v has reached the end of its current road, or is departing
+    private void advance(int v) {
+        int[] arcs = route[v];
+        if (arcs == null) {
+            arcs = route[v] = plan(origin[v], destination[v]);
+            if (arcs == null) {
+                unroutableTrips++;
+                release(v);
+                return;
+            }
+            activeVehicles++;
+        } else {
+            occupancy[arcs[hop[v]]]--;
+        }
+        int h = ++hop[v];
+        if (h == arcs.length) {
+            route[v] = null;
+            activeVehicles--;
+            completedTrips++;
+            totalTripTime += time - departure[v];
+            release(v);
+            return;
+        }
+        int arc = arcs[h];
+        int vehicles = ++occupancy[arc];
+        events.add(EventQueue.event(time + travelTime(arc, vehicles), v));
+    }
+
+    // Vehicle v has no events left, so its ID can go to the next trip
+    private void release(int v) {
+        if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        freeIds[freeCount++] = v;
+    }
+
+    private long travelTime(int arc, int vehicles) {
+        return Math.round(topology.baseWeights[arc] * delayFactor(vehicles, capacity[arc]));
+    }
+
+    private double delayFactor(int vehicles, double capacity) {
+        return vehicles == 0 ? 1.0 : 1 + alpha * Math.pow(vehicles / capacity, beta);
+    }
+
+    // Route on the latest weights, as arcs of the pinned topology; null if unreachable
+    private int[] plan(int s, int t) {
+        CsrGraph g = graph.snapshot();
+        if (g.targets != topology.targets) g = topology; // topology edited mid-run: keep the original
+        List<Integer> path = graph.findShortestPath(g, g.nodeIds[s], g.nodeIds[t], routeMode);
+        if (path.isEmpty()) return null;
+        int[] arcs = new int[path.size() - 1];
+        for (int i = 0; i < arcs.length; i++) arcs[i] = g.arcBetween(path.get(i), path.get(i + 1));
+        return arcs;
+    }
+
+    private void publishCongestion() {
+        double[] factors = new double[occupancy.length];
+        for (int a = 0; a < factors.length; a++) factors[a] = delayFactor(occupancy[a], capacity[a]);
+        graph.applyCongestion(topology.targets, factors);
+        nextCongestion += congestionInterval;
+    }
+
+    private void sample() {
+        if (!observers.isEmpty()) {
+            SimulationSample sample = new SimulationSample(topology, occupancy.clone(), time, activeVehicles,
+                    completedTrips, eventsProcessed);
+            for (SimulationObserver observer : observers) observer.onSample(sample);
+        }
+        nextSample += sampleInterval;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /** Trips added so far, including finished ones. */
+    public long getVehicleCount() {
+        return tripsAdded;
+    }
+
+    /** Trips added but not yet arrived or found unroutable. */
+    public int getPendingTrips() {
+        return vehicleCount - freeCount;
+    }
+
+    public int getActiveVehicles() {
+        return activeVehicles;
+    }
+
+    public int getCompletedTrips() {
+        return completedTrips;
+    }
+
+    public int getUnroutableTrips() {
+        return unroutableTrips;
+    }
+
+    public int getPendingEvents() {
+        return events.size();
+    }
+
+    public long getEventsProcessed() {
+        return eventsProcessed;
+    }
+
+    /** Mean door-to-door time of the trips completed so far, in seconds. */
+    public double getMeanTripTime() {
+        return completedTrips == 0 ? 0 : (double) totalTripTime / completedTrips;
+    }
+
+    /** Vehicles currently on the road from -> to. */
+    public int getOccupancy(int from, int to) {
+        int arc = topology.arcBetween(from, to);
+        return arc < 0 ? 0 : occupancy[arc];
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Origin x destination travel times, stored row-major in one primitive array.
+ * Each origin row comes from a single one-to-many search that stops once
+ * every destination is settled; rows are computed in parallel.
+ */
+public final class TravelTimeMatrix {
+    public static final int UNREACHABLE = -1;
+
+    private final int[] origins;
+    private final int[] destinations;
+    private final int[] costs;
+    private final int[][] paths; // row-major like costs; null unless paths were requested
+
+    private TravelTimeMatrix(int[] origins, int[] destinations, boolean withPaths) {
+        this.origins = origins.clone();
+        this.destinations = destinations.clone();
+        this.costs = new int[origins.length * destinations.length];
+        this.paths = withPaths ? new int[costs.length][] : null;
+    }
+
+    static TravelTimeMatrix compute(CsrGraph g, WeightOverlay overlay, int[] origins, int[] destinations,
+                                    boolean withPaths, ForkJoinPool pool) {
+        WeightOverlay.Resolved ov = overlay == null || overlay.isEmpty() ? null : overlay.resolve(g);
+        TravelTimeMatrix matrix = new TravelTimeMatrix(origins, destinations, withPaths);
+        int columns = destinations.length;
+
+        // Dense index of each destination; unknown intersections stay unreachable
+        int[] targets = new int[columns];
+        boolean[] isTarget = new boolean[g.nodeCount];
+        int distinct = 0;
+        for (int j = 0; j < columns; j++) {
+            targets[j] = g.indexOf(destinations[j]);
+            if (targets[j] >= 0 && !isTarget[targets[j]]) {
+                isTarget[targets[j]] = true;
+                distinct++;
+            }
+        }
+        int targetCount = distinct;
+
+        Runnable rows = () -> IntStream.range(0, origins.length).parallel().forEach(i -> {
+            int row = i * columns;
+            int s = g.indexOf(origins[i]);
+            if (s < 0 || targetCount == 0) {
+                Arrays.fill(matrix.costs, row, row + columns, UNREACHABLE);
+                return;
+            }
+            SearchWorkspace ws = SearchWorkspace.forward(g.nodeCount);
+            PathSearch.dijkstraToTargets(g, ov, s, isTarget, targetCount, ws);
+            for (int j = 0; j < columns; j++) {
+                int t = targets[j];
+                boolean reached = t >= 0 && ws.reached(t);
+                matrix.costs[row + j] = reached ? ws.dist(t) : UNREACHABLE;
+                if (withPaths && reached) matrix.paths[row + j] = treePath(g, ws, t);
+            }
+        });
+        pool.submit(rows).join();
+        return matrix;
+    }
+
+    private static int[] treePath(CsrGraph g, SearchWorkspace ws, int t) {
+        int length = 0;
+        for (int at = t; at != -1; at = ws.pred(at)) length++;
+        int[] path = new int[length];
+        for (int at = t; at != -1; at = ws.pred(at)) path[--length] = g.nodeIds[at];
+        return path;
+    }
+
+    public int rows() {
+        return origins.length;
+    }
+
+    public int columns() {
+        return destinations.length;
+    }
+
+    public int getOrigin(int row) {
+        return origins[row];
+    }
+
+    public int getDestination(int column) {
+        return destinations[column];
+    }
+
+    /** Travel time from origin {@code row} to destination {@code column}, or {@link #UNREACHABLE}. */
+    public int getCost(int row, int column) {
+        return costs[row * destinations.length + column];
+    }
+
+    public boolean hasPaths() {
+        return paths != null;
+    }
+
+    /** Intersections along the route, or an empty list if unreachable or paths were not requested. */
+    public List<Integer> getPath(int row, int column) {
+        if (paths == null) return Collections.emptyList();
+        int[] path = paths[row * destinations.length + column];
+        if (path == null) return Collections.emptyList();
+        List<Integer> result = new ArrayList<>(path.length);
+        for (int id : path) result.add(id);
+        return result;
+    }
+}
@@ -0,0 +1,205 @@
+import java.util.Arrays;
+
+/**
+ * A what-if scenario layered over the live weights without touching them:
+ * a sparse set of roads, each with a multiplier, an additive delta, or a
+ * closure. The effective weight of a road is {@code max(0, live * m + d)},
+ * and closed roads are not traversed at all. Routing and cost calls take an
+ * overlay as an optional argument, so any number of scenarios can be
+ * evaluated at once against the same snapshot.
+ * <p>
+ * Overlays are immutable and keyed by external intersection IDs, so one
+ * overlay stays valid across topology edits; roads that do not exist in a
+ * snapshot are ignored. Layers combine with {@link #then}.
+ */
+public final class WeightOverlay {
+    public static final WeightOverlay EMPTY = new Builder().build();
+
+    // Large enough for any real road, small enough that path sums cannot overflow
+    static final int MAX_WEIGHT = Integer.MAX_VALUE >> 4;
+
+    private final LongIntHashMap slots;  // packed (from, to) -> slot
+    private final long[] roads;          // slot -> packed (from, to)
+    private final double[] multipliers;  // slot -> factor; NaN when the road is closed
+    private final double[] deltas;
+    private final int size;
+    private volatile Resolved resolved;  // for the topology last routed on
+
+    private WeightOverlay(LongIntHashMap slots, long[] roads, double[] multipliers, double[] deltas, int size) {
+        this.slots = slots;
+        this.roads = roads;
+        this.multipliers = multipliers;
+        this.deltas = deltas;
+        this.size = size;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Number of roads this overlay changes. */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isClosed(int from, int to) {
+        int slot = slots.get(LongIntHashMap.pack(from, to));
+        return slot >= 0 && Double.isNaN(multipliers[slot]);
+    }
+
+    /**
+     * This overlay with {@code next} applied on top: a road in both gets
+     * {@code (live * m1 + d1) * m2 + d2} and stays closed if either closes it.
+     */
+    public WeightOverlay then(WeightOverlay next) {
+        if (next.isEmpty()) return this;
+        if (isEmpty()) return next;
+        Builder b = new Builder(this);
+        for (int i = 0; i < next.size; i++) b.apply(next.roads[i], next.multipliers[i], next.deltas[i]);
+        return b.build();
+    }
+
+    /** Effective weight of a road with the given live weight, or -1 if the overlay closes it. */
+    public int weight(int from, int to, int live) {
+        int slot = slots.get(LongIntHashMap.pack(from, to));
+        return slot < 0 ? live : apply(slot, live);
+    }
+
+    private int apply(int slot, int live) {
+        double m = multipliers[slot];
+        if (Double.isNaN(m)) return -1;
+        return (int) Math.min(MAX_WEIGHT, Math.max(0, live * m + deltas[slot]));
+    }
+
+    /** This overlay mapped onto the arcs of {@code g}; cached while the topology stays the same. */
+    Resolved resolve(CsrGraph g) {
+        Resolved r = resolved;
+        if (r == null || r.arcIndex != g.arcIndex) resolved = r = new Resolved(g);
+        return r;
+    }
+
+    /** The overlay as arc slot -> overlay slot for one topology, as the search kernels use it. */
+    final class Resolved {
+        private final LongIntHashMap arcIndex;
+        private final IntIntHashMap arcSlots;
+        private final int[] arcs;    // arcs the overlay touches
+        private final int[] sources; // dense index of each one's source
+        private final int arcCount;
+
+        private Resolved(CsrGraph g) {
+            arcIndex = g.arcIndex;
+            arcSlots = new IntIntHashMap(size);
+            arcs = new int[size];
+            sources = new int[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                int arc = g.arcIndex.get(roads[i]);
+                if (arc < 0) continue; // not a road in this snapshot
+                arcSlots.put(arc, i);
+                arcs[count] = arc;
+                sources[count++] = g.indexOf((int) (roads[i] >>> 32));
+            }
+            arcCount = count;
+        }
+
+        /** Weight of the arc in {@code g} under the overlay, or -1 if it is closed. */
+        int weight(CsrGraph g, int arc) {
+            int slot = arcSlots.get(arc);
+            return slot < 0 ? g.weights[arc] : apply(slot, g.weights[arc]);
+        }
+
+        /**
+         * A* heuristic scale for {@code g} under the overlay: the snapshot's own
+         * bound, lowered where the overlay makes a road cheaper per unit length.
+         */
+        double heuristicScale(CsrGraph g) {
+            double scale = g.heuristicScale();
+            double[] c = g.coords;
+            for (int i = 0; i < arcCount && scale > 0; i++) {
+                int arc = arcs[i];
+                int w = weight(g, arc);
+                if (w < 0) continue;
+                int u = sources[i], v = g.targets[arc];
+                double length = Math.hypot(c[2 * v] - c[2 * u], c[2 * v + 1] - c[2 * u + 1]);
+                if (length > 0) scale = Math.min(scale, w / length * (1 - 1e-9));
+            }
+            return scale;
+        }
+    }
+
+    public static final class Builder {
+        private LongIntHashMap slots = new LongIntHashMap();
+        private long[] roads = new long[8];
+        private double[] multipliers = new double[8];
+        private double[] deltas = new double[8];
+        private int size;
+
+        private Builder() {
+        }
+
+        private Builder(WeightOverlay base) {
+            slots = new LongIntHashMap(Math.max(16, base.size));
+            roads = Arrays.copyOf(base.roads, Math.max(8, base.size));
+            multipliers = Arrays.copyOf(base.multipliers, roads.length);
+            deltas = Arrays.copyOf(base.deltas, roads.length);
+            size = base.size;
+            for (int i = 0; i < size; i++) slots.put(roads[i], i);
+        }
+
+        /** Multiplies the weight of the road from -> to; repeated calls compound. */
+        public Builder scale(int from, int to, double factor) {
+            if (!(factor >= 0) || Double.isInfinite(factor)) {
+                throw new IllegalArgumentException("factor must be finite and non-negative: " + factor);
+            }
+            apply(LongIntHashMap.pack(from, to), factor, 0);
+            return this;
+        }
+
+        /** Adds {@code delta}, possibly negative, to the weight of the road from -> to. */
+        public Builder add(int from, int to, int delta) {
+            apply(LongIntHashMap.pack(from, to), 1, delta);
+            return this;
+        }
+
+        /** Closes the road from -> to. */
+        public Builder close(int from, int to) {
+            apply(LongIntHashMap.pack(from, to), Double.NaN, 0);
+            return this;
+        }
+
+        /** Closes both directions of the road between a and b. */
+        public Builder closeRoad(int a, int b) {
+            return close(a, b).close(b, a);
+        }
+
+        // Composes (m, d) after whatever the road already has; NaN stays NaN
+        private void apply(long road, double m, double d) {
+            int slot = slots.get(road);
+            if (slot < 0) {
+                if (size == roads.length) {
+                    roads = Arrays.copyOf(roads, size * 2);
+                    multipliers = Arrays.copyOf(multipliers, size * 2);
+                    deltas = Arrays.copyOf(deltas, size * 2);
+                }
+                slot = size++;
+                slots.put(road, slot);
+                roads[slot] = road;
+                multipliers[slot] = 1;
+                deltas[slot] = 0;
+            }
+            multipliers[slot] *= m;
+            deltas[slot] = deltas[slot] * m + d;
+        }
+
+        public WeightOverlay build() {
+            LongIntHashMap index = new LongIntHashMap(Math.max(16, size));
+            for (int i = 0; i < size; i++) index.put(roads[i], i);
+            return new WeightOverlay(index, Arrays.copyOf(roads, size), Arrays.copyOf(multipliers, size),
+                    Arrays.copyOf(deltas, size), size);
+        }
+    }
+}
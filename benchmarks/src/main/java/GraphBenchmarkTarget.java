@@ -0,0 +1,50 @@
+import traffic.bench.BenchmarkTarget;
+
+import java.util.List;
+import java.util.Map;
+
+// Bridges the packaged JMH benchmarks to Graph, which lives in the unnamed package
+public class GraphBenchmarkTarget implements BenchmarkTarget {
+    private final Graph graph = new Graph();
+    private RouteMode mode = RouteMode.DIJKSTRA;
+
+    @Override
+    public void loadCityLayout(Map<Integer, double[]> positions, List<int[]> connections) {
+        graph.loadCityLayout(positions, connections);
+    }
+
+    @Override
+    public void addRoad(int src, int dest, int weight) {
+        graph.addRoad(src, dest, weight);
+    }
+
+    @Override
+    public void useRouteMode(String mode) {
+        this.mode = RouteMode.valueOf(mode);
+    }
+
+    @Override
+    public List<Integer> findShortestPath(int start, int end) {
+        return graph.findShortestPath(start, end, mode);
+    }
+
+    @Override
+    public void updateTrafficConditions() {
+        graph.updateTrafficConditions();
+    }
+
+    @Override
+    public void redistributeTraffic() {
+        graph.redistributeTraffic();
+    }
+
+    @Override
+    public int getLiveWeightBetween(int from, int to) {
+        return graph.getLiveWeightBetween(from, to);
+    }
+
+    @Override
+    public void setCongestionSeed(long seed) {
+        graph.setCongestionSeed(seed);
+    }
+}
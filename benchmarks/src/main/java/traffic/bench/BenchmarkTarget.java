@@ -0,0 +1,38 @@
+package traffic.bench;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the benchmarks drive. The simulation classes live in the unnamed
+ * package, which JMH benchmark classes cannot import, so
+ * {@code GraphBenchmarkTarget} (also unnamed) implements this interface.
+ * It is loaded reflectively once per trial, and each call after that is an
+ * ordinary monomorphic interface call that the JIT inlines.
+ */
+public interface BenchmarkTarget {
+    static BenchmarkTarget create() {
+        try {
+            return (BenchmarkTarget) Class.forName("GraphBenchmarkTarget").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("GraphBenchmarkTarget is missing from the classpath", e);
+        }
+    }
+
+    void loadCityLayout(Map<Integer, double[]> positions, List<int[]> connections);
+
+    void addRoad(int src, int dest, int weight);
+
+    /** Selects the RouteMode constant used by {@link #findShortestPath}. */
+    void useRouteMode(String mode);
+
+    List<Integer> findShortestPath(int start, int end);
+
+    void updateTrafficConditions();
+
+    void redistributeTraffic();
+
+    int getLiveWeightBetween(int from, int to);
+
+    void setCongestionSeed(long seed);
+}
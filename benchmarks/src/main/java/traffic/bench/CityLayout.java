@@ -0,0 +1,89 @@
+package traffic.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic inputs in the shape {@code Graph.loadCityLayout} expects.
+ * Layouts are seeded so every fork measures the same city.
+ */
+final class CityLayout {
+    final Map<Integer, double[]> positions = new HashMap<>();
+    final List<int[]> connections = new ArrayList<>();
+    final int nodeCount;
+
+    private CityLayout(int nodeCount) {
+        this.nodeCount = nodeCount;
+    }
+
+    /** Parses a "rows x cols" size and builds the named layout ("grid" or "geometric"). */
+    static CityLayout create(String layout, String size, long seed) {
+        String[] dims = size.split("x");
+        int rows = Integer.parseInt(dims[0]), cols = Integer.parseInt(dims[1]);
+        return switch (layout) {
+            case "grid" -> grid(rows, cols, seed);
+            case "geometric" -> geometric(rows * cols, seed);
+            default -> throw new IllegalArgumentException("Unknown layout: " + layout);
+        };
+    }
+
+    /** Same construction as MainGUI.placeIntersectionsAndRoads: 100px spacing, weights 5-14. */
+    static CityLayout grid(int rows, int cols, long seed) {
+        CityLayout city = new CityLayout(rows * cols);
+        Random rand = new Random(seed);
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                int id = r * cols + c + 1;
+                city.positions.put(id, new double[]{50 + c * 100, 100 + r * 100});
+                if (c < cols - 1) city.connections.add(new int[]{id, id + 1, rand.nextInt(10) + 5});
+                if (r < rows - 1) city.connections.add(new int[]{id, id + cols, rand.nextInt(10) + 5});
+            }
+        }
+        return city;
+    }
+
+    /**
+     * Random geometric graph: n intersections scattered at the grid's density
+     * (one per 100x100 cell), with a road between every pair closer than 130px,
+     * which gives about five roads per intersection. Travel time grows with length.
+     */
+    static CityLayout geometric(int n, long seed) {
+        CityLayout city = new CityLayout(n);
+        Random rand = new Random(seed);
+        double radius = 130;
+        double side = Math.sqrt(n) * 100;
+        int cells = Math.max(1, (int) (side / radius));
+        List<List<Integer>> buckets = new ArrayList<>(cells * cells);
+        for (int i = 0; i < cells * cells; i++) buckets.add(new ArrayList<>());
+
+        double[][] points = new double[n + 1][];
+        for (int id = 1; id <= n; id++) {
+            double x = rand.nextDouble() * side, y = rand.nextDouble() * side;
+            points[id] = new double[]{x, y};
+            city.positions.put(id, points[id]);
+            buckets.get(cell(x, side, cells) * cells + cell(y, side, cells)).add(id);
+        }
+        for (int id = 1; id <= n; id++) {
+            int cx = cell(points[id][0], side, cells), cy = cell(points[id][1], side, cells);
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    int x = cx + dx, y = cy + dy;
+                    if (x < 0 || y < 0 || x >= cells || y >= cells) continue;
+                    for (int other : buckets.get(x * cells + y)) {
+                        if (other <= id) continue;
+                        double d = Math.hypot(points[id][0] - points[other][0], points[id][1] - points[other][1]);
+                        if (d < radius) city.connections.add(new int[]{id, other, 5 + (int) (d / 13)});
+                    }
+                }
+            }
+        }
+        return city;
+    }
+
+    private static int cell(double v, double side, int cells) {
+        return Math.min(cells - 1, (int) (v / side * cells));
+    }
+}
@@ -0,0 +1,44 @@
+package traffic.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a city from scratch: loadCityLayout on its own, and bulk addRoad
+ * calls followed by the first query, which compacts the pending edits.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class LoadBenchmark {
+    @Param({"5x10", "100x100", "500x500", "2000x2000"})
+    public String size;
+
+    @Param({"grid", "geometric"})
+    public String layout;
+
+    private CityLayout city;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        city = CityLayout.create(layout, size, 42);
+    }
+
+    @Benchmark
+    public BenchmarkTarget loadCityLayout() {
+        BenchmarkTarget graph = BenchmarkTarget.create();
+        graph.loadCityLayout(city.positions, city.connections);
+        return graph;
+    }
+
+    @Benchmark
+    public int addRoadBulk() {
+        BenchmarkTarget graph = BenchmarkTarget.create();
+        for (int[] road : city.connections) graph.addRoad(road[0], road[1], road[2]);
+        return graph.getLiveWeightBetween(city.connections.get(0)[0], city.connections.get(0)[1]);
+    }
+}
@@ -0,0 +1,59 @@
+package traffic.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point-to-point routing on each city size, layout and route mode. Every
+ * invocation routes the next pair from a fixed, seeded list of random pairs.
+ * SampleTime mode reports latency percentiles. Run with {@code -prof gc}
+ * for allocation rates.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class RoutingBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"5x10", "100x100", "500x500", "2000x2000"})
+    public String size;
+
+    @Param({"grid", "geometric"})
+    public String layout;
+
+    @Param({"DIJKSTRA", "A_STAR", "BIDIRECTIONAL", "BIDIRECTIONAL_A_STAR", "CONTRACTION_HIERARCHY"})
+    public String mode;
+
+    private BenchmarkTarget graph;
+    private final int[] starts = new int[QUERIES];
+    private final int[] ends = new int[QUERIES];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CityLayout city = CityLayout.create(layout, size, 42);
+        graph = BenchmarkTarget.create();
+        graph.loadCityLayout(city.positions, city.connections);
+        graph.setCongestionSeed(7);
+        graph.updateTrafficConditions();
+        graph.useRouteMode(mode);
+        Random rand = new Random(1);
+        for (int i = 0; i < QUERIES; i++) {
+            starts[i] = 1 + rand.nextInt(city.nodeCount);
+            ends[i] = 1 + rand.nextInt(city.nodeCount);
+        }
+        graph.findShortestPath(starts[0], ends[0]); // builds the hierarchy outside the measurement
+    }
+
+    @Benchmark
+    public List<Integer> findShortestPath() {
+        int i = next++ & (QUERIES - 1);
+        return graph.findShortestPath(starts[i], ends[i]);
+    }
+}
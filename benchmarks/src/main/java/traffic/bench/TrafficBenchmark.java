@@ -0,0 +1,59 @@
+package traffic.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Congestion ticks, redistribution and live weight lookups on a loaded city. */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class TrafficBenchmark {
+    private static final int LOOKUPS = 4096;
+
+    @Param({"5x10", "100x100", "500x500", "2000x2000"})
+    public String size;
+
+    @Param({"grid", "geometric"})
+    public String layout;
+
+    private BenchmarkTarget graph;
+    private final int[] from = new int[LOOKUPS];
+    private final int[] to = new int[LOOKUPS];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CityLayout city = CityLayout.create(layout, size, 42);
+        graph = BenchmarkTarget.create();
+        graph.loadCityLayout(city.positions, city.connections);
+        graph.setCongestionSeed(7);
+        Random rand = new Random(1);
+        for (int i = 0; i < LOOKUPS; i++) {
+            int[] road = city.connections.get(rand.nextInt(city.connections.size()));
+            from[i] = road[0];
+            to[i] = road[1];
+        }
+    }
+
+    @Benchmark
+    public void updateTrafficConditions() {
+        graph.updateTrafficConditions();
+    }
+
+    @Benchmark
+    public void redistributeTraffic() {
+        graph.redistributeTraffic();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getLiveWeightBetween(Blackhole bh) {
+        for (int i = 0; i < LOOKUPS; i++) bh.consume(graph.getLiveWeightBetween(from[i], to[i]));
+    }
+}
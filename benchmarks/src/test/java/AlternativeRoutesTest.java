@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AlternativeRoutesTest {
+    @Test
+    void matchesEnumeratingEverySimplePath() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int seed = 0; seed < 200; seed++) {
+                Random random = new Random(seed);
+                int n = 6 + random.nextInt(6);
+                Graph g = randomGraph(n, random);
+                int s = random.nextInt(n), t = random.nextInt(n);
+                if (s == t) continue;
+                List<Integer> costs = new ArrayList<>();
+                enumerate(g, s, t, new ArrayList<>(List.of(s)), 0, costs);
+                costs.sort(null);
+
+                // k past the number of simple paths must return them all
+                for (int k : new int[]{1, 3, 10, costs.size() + 5}) {
+                    AlternativeRoutes routes = g.findAlternativeRoutes(s, t, k, pool);
+                    String at = "seed " + seed + ", k " + k;
+                    assertEquals(Math.min(k, costs.size()), routes.size(), at);
+                    Set<List<Integer>> seen = new HashSet<>();
+                    for (int rank = 0; rank < routes.size(); rank++) {
+                        List<Integer> route = routes.getRoute(rank);
+                        // With ties, which of the equally cheap routes comes back may differ, but not its cost
+                        assertEquals(costs.get(rank), routes.getCost(rank), at + ", rank " + rank);
+                        assertEquals(routes.getCost(rank), cost(g, route), at + ", rank " + rank);
+                        assertEquals(s, route.get(0));
+                        assertEquals(t, route.get(route.size() - 1));
+                        assertEquals(route.size(), new HashSet<>(route).size(), at + ": route has a loop");
+                        assertTrue(seen.add(route), at + ": route found twice");
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void unreachableDestinationHasNoRoutes() {
+        Graph g = new Graph();
+        g.addRoad(1, 2, 5);
+        g.addRoad(3, 4, 5);
+        assertEquals(0, g.findAlternativeRoutes(1, 4, 3).size());
+        assertEquals(0, g.findAlternativeRoutes(1, 99, 3).size());
+    }
+
+    // Dense enough for many simple paths; weights from a short range, so costs tie often
+    private static Graph randomGraph(int n, Random random) {
+        Graph g = new Graph();
+        for (int u = 1; u < n; u++) g.addRoad(random.nextInt(u), u, 1 + random.nextInt(4));
+        for (int i = 0; i < n; i++) {
+            int u = random.nextInt(n), v = random.nextInt(n);
+            if (u != v && !g.roadExists(u, v)) g.addRoad(u, v, 1 + random.nextInt(4));
+        }
+        return g;
+    }
+
+    private static void enumerate(Graph g, int at, int t, List<Integer> path, int cost, List<Integer> costs) {
+        if (at == t) {
+            costs.add(cost);
+            return;
+        }
+        for (int v : g.getNeighbors(at)) {
+            if (path.contains(v)) continue;
+            path.add(v);
+            enumerate(g, v, t, path, cost + g.getLiveWeightBetween(at, v), costs);
+            path.remove(path.size() - 1);
+        }
+    }
+
+    private static int cost(Graph g, List<Integer> route) {
+        int cost = 0;
+        for (int i = 1; i < route.size(); i++) cost += g.getLiveWeightBetween(route.get(i - 1), route.get(i));
+        return cost;
+    }
+}
@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClosureImpactTest {
+    @Test
+    void matchesClosingEachRoadAndSearchingAgain() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int seed = 0; seed < 20; seed++) {
+                Random random = new Random(seed);
+                int n = 30 + random.nextInt(30);
+                Graph g = sparseGraph(n, random);
+                int[] origins = sample(n, 8, random), destinations = sample(n, 10, random);
+                ClosureImpact impact = g.analyzeClosures(origins, destinations, 0, pool);
+
+                double cutAnywhere = 0;
+                for (int rank = 0; rank < impact.roadCount(); rank++) {
+                    int a = impact.getFrom(rank), b = impact.getTo(rank);
+                    long added = 0, cut = 0;
+                    for (int o : origins) {
+                        Map<Integer, Long> open = dijkstra(g, o, -1, -1), closed = dijkstra(g, o, a, b);
+                        for (int d : destinations) {
+                            if (d == o || !open.containsKey(d)) continue;
+                            if (!closed.containsKey(d)) cut++;
+                            else added += closed.get(d) - open.get(d);
+                        }
+                    }
+                    String road = "seed " + seed + ", road " + a + "-" + b;
+                    assertEquals(cut, impact.getDisconnectedPairs(rank), 0, road);
+                    assertEquals(added, impact.getAddedTravelTime(rank), 0, road);
+                    cutAnywhere += cut;
+                }
+                assertTrue(cutAnywhere > 0, "seed " + seed + " should have bridges");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // A random spanning tree, so some roads are bridges, plus a few extra roads; small weights so routes tie
+    private static Graph sparseGraph(int n, Random random) {
+        Graph g = new Graph();
+        for (int u = 1; u < n; u++) g.addRoad(random.nextInt(u), u, 1 + random.nextInt(5));
+        for (int i = 0; i < n / 3; i++) {
+            int u = random.nextInt(n), v = random.nextInt(n);
+            if (u != v && !g.roadExists(u, v)) g.addRoad(u, v, 1 + random.nextInt(5));
+        }
+        return g;
+    }
+
+    private static int[] sample(int n, int count, Random random) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) ids[i] = random.nextInt(n);
+        return ids;
+    }
+
+    // Live travel times from s with the road between a and b closed in both directions
+    private static Map<Integer, Long> dijkstra(Graph g, int s, int a, int b) {
+        Map<Integer, Long> dist = new HashMap<>();
+        PriorityQueue<long[]> queue = new PriorityQueue<>((x, y) -> Long.compare(x[0], y[0]));
+        dist.put(s, 0L);
+        queue.add(new long[]{0, s});
+        while (!queue.isEmpty()) {
+            long[] top = queue.poll();
+            int u = (int) top[1];
+            if (top[0] > dist.get(u)) continue;
+            for (int v : g.getNeighbors(u)) {
+                if (u == a && v == b || u == b && v == a) continue;
+                long d = top[0] + g.getLiveWeightBetween(u, v);
+                if (d < dist.getOrDefault(v, Long.MAX_VALUE)) {
+                    dist.put(v, d);
+                    queue.add(new long[]{d, v});
+                }
+            }
+        }
+        return dist;
+    }
+}
@@ -0,0 +1,36 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CongestionModelTest {
+    @Test
+    void bprFollowsItsRoadsThroughEdits() {
+        Graph g = new Graph();
+        g.addRoad(1, 2, 10);
+        g.addRoad(2, 3, 10);
+        double[] volume = {200};
+        g.setCongestionModel(CongestionModel.bpr((from, to) -> from == 1 && to == 2 ? volume[0] : 0,
+                (from, to) -> 100, 0.15, 4));
+        g.updateTrafficConditions();
+        assertEquals(34, g.getLiveWeightBetween(1, 2)); // 10 * (1 + 0.15 * 2^4)
+        assertEquals(34, g.getLiveWeightBetween(2, 1)); // the busier direction sets both
+        assertEquals(10, g.getLiveWeightBetween(2, 3));
+
+        // New roads renumber the arcs; the volume stays with road 1-2
+        g.addRoad(0, 1, 10);
+        g.addRoad(3, 4, 10);
+        volume[0] = 100;
+        g.updateTrafficConditions();
+        assertEquals(11, g.getLiveWeightBetween(1, 2));
+        assertEquals(10, g.getLiveWeightBetween(0, 1));
+        assertEquals(10, g.getLiveWeightBetween(3, 4));
+    }
+
+    @Test
+    void bprCalledWithoutAGraphKeepsTheCurrentFactor() {
+        CongestionModel model = CongestionModel.bpr((from, to) -> 50, (from, to) -> 100, 0.15, 4);
+        assertEquals(1.7, model.factor(0, -1, 10, 1.7, 0, new SplittableRandom(1)), 0);
+    }
+}
@@ -0,0 +1,144 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GraphJournalTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopeningRecoversEveryEdit() throws IOException {
+        Graph g = new Graph();
+        try (GraphJournal journal = GraphJournal.open(dir, g)) {
+            firstEdits(g);
+            journal.checkpoint();
+            secondEdits(g);
+        }
+        assertEquals(describe(g), describe(reopen()));
+    }
+
+    @Test
+    void removingAMissingRoadIsNotLogged() throws IOException {
+        Graph g = new Graph();
+        try (GraphJournal journal = GraphJournal.open(dir, g)) {
+            firstEdits(g);
+            journal.sync();
+            long size = Files.size(dir.resolve("journal-1.log"));
+            g.removeRoad(1, 5);
+            g.removeRoad(42, 43);
+            journal.sync();
+            assertEquals(size, Files.size(dir.resolve("journal-1.log")));
+        }
+    }
+
+    @Test
+    void tornFinalRecordIsCutOff() throws IOException {
+        Graph g = new Graph();
+        try (GraphJournal journal = GraphJournal.open(dir, g)) {
+            firstEdits(g);
+        }
+        Path log = dir.resolve("journal-1.log");
+        long size = Files.size(log);
+        // The first bytes of a road record, as a crash in the middle of a write leaves them
+        Files.write(log, new byte[]{2, 7, 0, 0, 0, 9}, StandardOpenOption.APPEND);
+
+        Graph recovered = reopen();
+        assertEquals(describe(g), describe(recovered));
+        assertEquals(size, Files.size(log));
+    }
+
+    @Test
+    void damagedRecordInAnOlderLogIsRejected() throws IOException {
+        crashBetweenRollOverAndCheckpoint();
+        Path older = dir.resolve("journal-1.log");
+        byte[] bytes = Files.readAllBytes(older);
+        bytes[bytes.length / 2] ^= 0x55;
+        Files.write(older, bytes);
+
+        IOException e = assertThrows(IOException.class, () -> GraphJournal.open(dir, new Graph()).close());
+        assertTrue(e.getMessage().contains("journal-1.log"), e.getMessage());
+    }
+
+    @Test
+    void crashBetweenRollOverAndCheckpointStillRecovers() throws IOException {
+        Graph g = crashBetweenRollOverAndCheckpoint();
+        assertEquals(describe(g), describe(reopen()));
+    }
+
+    /**
+     * Leaves the files a crash in checkpoint() between rollOver and
+     * writeCheckpoint would: the old checkpoint and both logs, but no new
+     * checkpoint. Returns a graph with every edit in them applied.
+     */
+    private Graph crashBetweenRollOverAndCheckpoint() throws IOException {
+        Graph g = new Graph();
+        try (GraphJournal journal = GraphJournal.open(dir, g)) {
+            firstEdits(g);
+        }
+        Path checkpoint = dir.resolve("checkpoint-1.graph"), log = dir.resolve("journal-1.log");
+        byte[] savedCheckpoint = Files.readAllBytes(checkpoint), savedLog = Files.readAllBytes(log);
+
+        try (GraphJournal journal = GraphJournal.open(dir, g = new Graph())) {
+            journal.checkpoint();
+            secondEdits(g);
+        }
+        Files.write(checkpoint, savedCheckpoint);
+        Files.write(log, savedLog);
+        Files.delete(dir.resolve("checkpoint-2.graph"));
+        assertTrue(Files.exists(dir.resolve("journal-2.log")));
+        assertFalse(Files.exists(dir.resolve("checkpoint-2.graph")));
+        return g;
+    }
+
+    private Graph reopen() throws IOException {
+        Graph g = new Graph();
+        GraphJournal.open(dir, g).close();
+        return g;
+    }
+
+    private static void firstEdits(Graph g) {
+        for (int id = 1; id <= 6; id++) g.addIntersection(id, id * 10, id % 3 * 20);
+        g.addIntersection(7);
+        g.addRoad(1, 2, 10);
+        g.addRoad(2, 3, 12);
+        g.addRoad(3, 4, 7);
+        g.addRoad(4, 5, 20);
+        g.addRoad(5, 6, 9);
+        g.addRoad(6, 7, 15);
+        g.setRoadWeight(2, 3, 25);
+    }
+
+    private static void secondEdits(Graph g) {
+        g.addIntersection(8, 80, 80);
+        g.addRoad(1, 8, 11);
+        g.removeRoad(4, 5);
+        g.setBaseWeight(1, 2, 30);
+        g.addIntersection(2, 15, 35); // moves an existing intersection
+        g.addIntersection(7, 70, 5);  // places an unplaced one
+    }
+
+    // Intersections with their positions and outgoing roads with base weights, in ID order
+    private static String describe(Graph g) {
+        StringBuilder out = new StringBuilder();
+        int[] ids = g.getIntersections();
+        Arrays.sort(ids);
+        for (int u : ids) {
+            out.append(u).append(Arrays.toString(g.getPosition(u))).append(':');
+            int[] next = g.getNeighbors(u);
+            Arrays.sort(next);
+            for (int v : next) out.append(' ').append(v).append('=').append(g.getBaseWeight(u, v));
+            out.append('\n');
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteModeTest {
+    private static final int NODES = 80;
+
+    @Test
+    void everyModeFindsTheDijkstraCost() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            Graph g = randomGraph(random);
+            compareModes(g, random, "seed " + seed + ", as built");
+
+            // Weight edits and a congestion tick keep the topology, so the hierarchy is only customized
+            for (int i = 0; i < 20; i++) {
+                int u = random.nextInt(NODES);
+                int[] next = g.getNeighbors(u);
+                if (next.length > 0) g.setRoadWeight(u, next[random.nextInt(next.length)], 1 + random.nextInt(30));
+            }
+            compareModes(g, random, "seed " + seed + ", after weight edits");
+            g.updateTrafficConditions();
+            compareModes(g, random, "seed " + seed + ", after a congestion tick");
+
+            // New and removed roads change the topology, so the hierarchy has to be rebuilt
+            for (int i = 0; i < 10; i++) {
+                int u = random.nextInt(NODES), v = random.nextInt(NODES);
+                if (u != v && !g.roadExists(u, v)) g.addRoad(u, v, 1 + random.nextInt(30));
+                int w = random.nextInt(NODES);
+                int[] next = g.getNeighbors(w);
+                if (next.length > 0) g.removeRoad(w, next[random.nextInt(next.length)]);
+            }
+            compareModes(g, random, "seed " + seed + ", after topology edits");
+        }
+    }
+
+    private static void compareModes(Graph g, Random random, String when) {
+        for (int q = 0; q < 40; q++) {
+            int s = random.nextInt(NODES), t = random.nextInt(NODES);
+            long expected = cost(g, g.findShortestPath(s, t, RouteMode.DIJKSTRA));
+            for (RouteMode mode : RouteMode.values()) {
+                List<Integer> path = g.findShortestPath(s, t, mode);
+                String at = when + ", " + mode + " " + s + " -> " + t;
+                assertEquals(expected, cost(g, path), at);
+                if (!path.isEmpty()) {
+                    assertEquals(s, path.get(0), at);
+                    assertEquals(t, path.get(path.size() - 1), at);
+                }
+            }
+        }
+    }
+
+    // A sparse random network with random positions; weights from a short range, so routes tie often
+    private static Graph randomGraph(Random random) {
+        Graph g = new Graph();
+        for (int u = 0; u < NODES; u++) g.addIntersection(u, random.nextDouble() * 500, random.nextDouble() * 500);
+        for (int i = 0; i < NODES * 3 / 2; i++) {
+            int u = random.nextInt(NODES), v = random.nextInt(NODES);
+            if (u != v && !g.roadExists(u, v)) g.addRoad(u, v, 1 + random.nextInt(30));
+        }
+        return g;
+    }
+
+    // Live travel time along the path, -1 if it is empty
+    private static long cost(Graph g, List<Integer> path) {
+        if (path.isEmpty()) return -1;
+        long cost = 0;
+        for (int i = 1; i < path.size(); i++) {
+            assertTrue(g.roadExists(path.get(i - 1), path.get(i)), "missing road " + path.get(i - 1) + " -> " + path.get(i));
+            cost += g.getLiveWeightBetween(path.get(i - 1), path.get(i));
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,35 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RouteServiceTest {
+    @Test
+    void failingQueriesStillComplete() throws Exception {
+        Graph g = new Graph();
+        g.addRoad(1, 2, 5);
+        try (RouteService service = new RouteService(new RouteCache(g, 16), 1, Runnable::run)) {
+            OutOfMemoryError error = new OutOfMemoryError("matrix too large");
+            CompletableFuture<Object> failed = service.submit(() -> {
+                throw error;
+            });
+            ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertSame(error, e.getCause());
+
+            IllegalStateException problem = new IllegalStateException("bad query");
+            CompletableFuture<Object> thrown = service.submit(() -> {
+                throw problem;
+            });
+            e = assertThrows(ExecutionException.class, () -> thrown.get(5, TimeUnit.SECONDS));
+            assertSame(problem, e.getCause());
+
+            // The pool replaces the worker the Error killed
+            assertEquals(2, service.findShortestPath(1, 2).get(5, TimeUnit.SECONDS).size());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteTrackerTest {
+    @Test
+    void releasedIdsGoToTheNextTrips() {
+        Graph g = new Graph();
+        for (int u = 1; u < 10; u++) g.addRoad(u, u + 1, u);
+        RouteTracker tracker = new RouteTracker(g);
+
+        // Trips that arrive before the next departs never need more than a handful of IDs
+        Set<Integer> ids = new HashSet<>();
+        for (int trip = 0; trip < 1000; trip++) {
+            int a = tracker.track(1, 10), b = tracker.track(2, 5);
+            ids.add(a);
+            ids.add(b);
+            tracker.release(a);
+            tracker.release(b);
+            tracker.release(b); // released twice, as after a refresh dropped it
+        }
+        assertEquals(Set.of(0, 1), ids);
+        assertEquals(0, tracker.getTrackedCount());
+
+        int kept = tracker.track(1, 10);
+        int reused = tracker.track(3, 6);
+        assertTrue(reused <= 1, "ID " + reused);
+        assertEquals(2, tracker.getTrackedCount());
+        assertEquals(List.of(3, 4, 5, 6), tracker.getRoute(reused));
+        assertEquals(3 + 4 + 5, tracker.getRemainingCost(reused));
+
+        // A refresh after a topology edit still plans the reused trips from their own endpoints
+        g.addRoad(1, 10, 4);
+        tracker.refresh();
+        assertEquals(List.of(1, 10), tracker.getRoute(kept));
+        assertEquals(List.of(3, 4, 5, 6), tracker.getRoute(reused));
+    }
+}
@@ -0,0 +1,147 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrafficAssignmentTest {
+    private static final double CAPACITY = 100;
+
+    @Test
+    void equalRoutesSplitTheDemandExactly() {
+        Graph g = new Graph();
+        g.addRoad(1, 2, 10);
+        g.addRoad(2, 4, 10);
+        g.addRoad(1, 3, 10);
+        g.addRoad(3, 4, 10);
+        TrafficAssignment ta = g.assignTraffic(new int[]{1}, new int[]{4}, new double[]{300}, CAPACITY, 1e-9, 200);
+
+        assertEquals(150, ta.getFlow(1, 2), 1e-6);
+        assertEquals(150, ta.getFlow(1, 3), 1e-6);
+        assertEquals(ta.getTravelTime(1, 2) + ta.getTravelTime(2, 4),
+                ta.getTravelTime(1, 3) + ta.getTravelTime(3, 4), 1e-9);
+    }
+
+    @Test
+    void unequalRoutesEndUpEquallyFast() {
+        Graph g = new Graph();
+        g.addRoad(1, 2, 10);
+        g.addRoad(2, 4, 10);
+        g.addRoad(1, 3, 15);
+        g.addRoad(3, 4, 15);
+        TrafficAssignment ta = g.assignTraffic(new int[]{1}, new int[]{4}, new double[]{300}, CAPACITY, 1e-9, 500);
+
+        double fast = ta.getTravelTime(1, 2) + ta.getTravelTime(2, 4);
+        double slow = ta.getTravelTime(1, 3) + ta.getTravelTime(3, 4);
+        assertEquals(300, ta.getFlow(1, 2) + ta.getFlow(1, 3), 1e-6);
+        assertTrue(ta.getFlow(1, 3) > 0, "the longer route must take some traffic");
+        assertEquals(fast, slow, 1e-3 * fast);
+    }
+
+    @Test
+    void flowIsConservedAtEveryIntersection() {
+        int side = 60;
+        Graph g = grid(side, new Random(7));
+        int[] zones = new int[20];
+        for (int i = 0; i < zones.length; i++) zones[i] = i * side * side / zones.length + i % side;
+        double[] trips = new double[zones.length * zones.length];
+        Random random = new Random(11);
+        for (int i = 0; i < trips.length; i++) trips[i] = random.nextInt(40);
+        TrafficAssignment ta = g.assignTraffic(zones, zones, trips, CAPACITY, 1e-4, 30);
+
+        double[] net = new double[side * side]; // trips ending minus trips starting
+        for (int i = 0; i < zones.length; i++) {
+            for (int j = 0; j < zones.length; j++) {
+                if (i == j) continue;
+                net[zones[j]] += trips[i * zones.length + j];
+                net[zones[i]] -= trips[i * zones.length + j];
+            }
+        }
+        for (int u = 0; u < side * side; u++) {
+            double balance = 0;
+            for (int v : g.getNeighbors(u)) balance += ta.getFlow(v, u) - ta.getFlow(u, v);
+            assertEquals(net[u], balance, 1e-6, "intersection " + u);
+        }
+    }
+
+    @Test
+    void loadingMatchesDijkstraWithAFullResetPerOrigin() {
+        Random random = new Random(3);
+        Graph g = grid(25, random);
+        for (int id = 1000; id < 1004; id++) g.addRoad(id, id + 1, 1 + random.nextInt(1_000_000)); // unreachable island
+        int[] origins = new int[40], destinations = new int[45];
+        for (int i = 0; i < origins.length; i++) origins[i] = random.nextInt(625);
+        for (int j = 0; j < 40; j++) destinations[j] = random.nextInt(625);
+        for (int j = 40; j < 45; j++) destinations[j] = 1000 + j - 40;
+        double[] trips = new double[origins.length * destinations.length];
+        for (int i = 0; i < trips.length; i++) trips[i] = 1 + random.nextInt(20);
+
+        // No iterations: free-flow all-or-nothing loading, one tree per origin reusing the loaders' arrays
+        TrafficAssignment ta = g.assignTraffic(origins, destinations, trips, CAPACITY, 0, 0);
+
+        Map<Long, Double> expected = new HashMap<>();
+        double unassigned = 0;
+        for (int i = 0; i < origins.length; i++) {
+            Map<Integer, Integer> pred = new HashMap<>();
+            Map<Integer, Long> dist = dijkstra(g, origins[i], pred);
+            for (int j = 0; j < destinations.length; j++) {
+                int d = destinations[j];
+                double t = trips[i * destinations.length + j];
+                if (d == origins[i]) continue;
+                if (!dist.containsKey(d)) {
+                    unassigned += t;
+                    continue;
+                }
+                for (int v = d; v != origins[i]; v = pred.get(v)) expected.merge(road(pred.get(v), v), t, Double::sum);
+            }
+        }
+        assertEquals(unassigned, ta.getUnassignedTrips(), 1e-9);
+        for (int u : g.getIntersections()) {
+            for (int v : g.getNeighbors(u)) {
+                assertEquals(expected.getOrDefault(road(u, v), 0.0), ta.getFlow(u, v), 1e-9, u + " -> " + v);
+            }
+        }
+    }
+
+    // side x side grid with IDs row by row; weights spread widely so shortest paths are unique
+    private static Graph grid(int side, Random random) {
+        Graph g = new Graph();
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                int u = y * side + x;
+                if (x + 1 < side) g.addRoad(u, u + 1, 1 + random.nextInt(1_000_000));
+                if (y + 1 < side) g.addRoad(u, u + side, 1 + random.nextInt(1_000_000));
+            }
+        }
+        return g;
+    }
+
+    private static Map<Integer, Long> dijkstra(Graph g, int s, Map<Integer, Integer> pred) {
+        Map<Integer, Long> dist = new HashMap<>();
+        PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        dist.put(s, 0L);
+        queue.add(new long[]{0, s});
+        while (!queue.isEmpty()) {
+            long[] top = queue.poll();
+            int u = (int) top[1];
+            if (top[0] > dist.get(u)) continue;
+            for (int v : g.getNeighbors(u)) {
+                long d = top[0] + g.getBaseWeight(u, v);
+                if (d < dist.getOrDefault(v, Long.MAX_VALUE)) {
+                    dist.put(v, d);
+                    pred.put(v, u);
+                    queue.add(new long[]{d, v});
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static long road(int from, int to) {
+        return (long) from << 32 | (to & 0xFFFFFFFFL);
+    }
+}
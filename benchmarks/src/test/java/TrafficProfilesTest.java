@@ -0,0 +1,44 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TrafficProfilesTest {
+    private static final int[] RUSH_HOURS = {0, 480, 600, 1020, 1140};
+    private static final double[] MORNING = {1.0, 2.5, 1.0, 1.2, 1.0};
+    private static final double[] EVENING = {1.0, 1.1, 1.0, 3.0, 1.0};
+    private static final double[] WEEKEND = {1.0, 1.5, 1.5, 1.5, 1.0};
+    private static final int EIGHT_AM = 8 * 3600, FIVE_PM = 17 * 3600;
+
+    @Test
+    void graphsDefiningProfilesKeepTheirOwn() {
+        Graph a = new Graph(), b = new Graph();
+        assertEquals(1, a.defineTrafficProfile(RUSH_HOURS, MORNING));
+        assertEquals(1, b.defineTrafficProfile(RUSH_HOURS, EVENING));
+
+        assertEquals(2, a.defineTrafficProfile(RUSH_HOURS, EVENING));
+        assertEquals(1, a.defineTrafficProfile(RUSH_HOURS, MORNING));
+        assertEquals(2, b.defineTrafficProfile(RUSH_HOURS, MORNING));
+
+        TrafficProfiles pa = a.snapshot().profiles, pb = b.snapshot().profiles;
+        assertEquals(2.5, pa.factorAt(1, EIGHT_AM), 1e-3);
+        assertEquals(3.0, pa.factorAt(2, FIVE_PM), 1e-3);
+        assertEquals(3.0, pb.factorAt(1, FIVE_PM), 1e-3);
+        assertEquals(2.5, pb.factorAt(2, EIGHT_AM), 1e-3);
+        assertEquals(pa.steepestDrop[1], pb.steepestDrop[2]);
+        assertEquals(pa.steepestDrop[2], pb.steepestDrop[1]);
+    }
+
+    @Test
+    void addingToAnOlderViewLeavesNewerOnesAlone() {
+        TrafficProfiles base = TrafficProfiles.FLAT.with(TrafficProfiles.Curve.of(RUSH_HOURS, MORNING));
+        TrafficProfiles newer = base.with(TrafficProfiles.Curve.of(RUSH_HOURS, EVENING));
+        TrafficProfiles branch = base.with(TrafficProfiles.Curve.of(RUSH_HOURS, WEEKEND));
+
+        assertEquals(3.0, newer.factorAt(2, FIVE_PM), 1e-3);
+        assertEquals(1.5, branch.factorAt(2, FIVE_PM), 1e-3);
+        assertEquals(-1, base.idOf(TrafficProfiles.Curve.of(RUSH_HOURS, EVENING)));
+        assertEquals(-1, newer.idOf(TrafficProfiles.Curve.of(RUSH_HOURS, WEEKEND)));
+        assertEquals(2, branch.idOf(TrafficProfiles.Curve.of(RUSH_HOURS, WEEKEND)));
+        assertEquals(1, TrafficProfiles.FLAT.count);
+    }
+}